@@ -0,0 +1,128 @@
+package com.yourpackage.service;
+
+/**
+ * Model outputs shaped like what production sees, used as benchmark inputs.
+ */
+final class BenchmarkFixtures {
+
+    static final String MATH_MULTIPLE_CHOICE = """
+            Let \\(f(x) = x^3 - 6x^2 + 9x + 1\\). Consider the behavior of \\(f\\) on the closed interval \\([0, 4]\\).
+            The derivative is \\(f'(x) = 3x^2 - 12x + 9\\), which factors as \\(3(x - 1)(x - 3)\\).
+
+            At which value of \\(x\\) does \\(f\\) attain its absolute maximum on \\([0, 4]\\)?
+
+            A) \\(x = 0\\)
+            B***) \\(x = 1\\) and \\(x = 4\\)
+            C) \\(x = 3\\)
+            D) \\(x = 2\\)
+            """;
+
+    static final String HISTORY_MULTIPLE_CHOICE = """
+            "We hold these truths to be self-evident, that all men are created equal, that they are endowed by \
+            their Creator with certain unalienable Rights, that among these are Life, Liberty and the pursuit of \
+            Happiness. That to secure these rights, Governments are instituted among Men, deriving their just \
+            powers from the consent of the governed."
+            - Declaration of Independence, 1776
+
+            The ideas expressed in the excerpt most directly reflect the influence of which intellectual movement \
+            on colonial leaders during the revolutionary war era?
+
+            A. The Great Awakening's emphasis on personal religious experience
+            B. Mercantilist theories of national wealth and colonial trade
+            C***. Enlightenment political philosophy, particularly the writings of John Locke
+            D. Romanticism's celebration of nature and individual emotion
+            """;
+
+    static final String MARKER_AFTER_PAREN = """
+            Which organelle is the primary site of ATP synthesis during cellular respiration in eukaryotic cells?
+
+            A) Ribosome
+            B) ***Mitochondrion
+            C) Golgi apparatus
+            D) Smooth endoplasmic reticulum
+            """;
+
+    static final String FREE_RESPONSE = """
+            Context:
+            The following excerpt is from a 1933 radio address by President Franklin D. Roosevelt, delivered eight \
+            days after his inauguration, during a nationwide banking crisis that had closed or restricted banks in \
+            most states.
+
+            "I want to talk for a few minutes with the people of the United States about banking... When you deposit \
+            money in a bank the bank does not put the money into a safe deposit vault. It invests your money in many \
+            different forms of credit-bonds, commercial paper, mortgages and many other kinds of loans. In other \
+            words, the bank puts your money to work to keep the wheels of industry and of agriculture turning around."
+
+            A.***** Briefly describe ONE historical development that led to the banking crisis referenced in the excerpt.
+
+            B.***** Briefly explain ONE way in which the New Deal attempted to address the economic conditions of the \
+            Great Depression.
+
+            C.***** Briefly explain ONE way in which the federal government's role in the economy changed as a result \
+            of the New Deal and how that change was contested by critics in the 1930s.
+            """;
+
+    static final String LITERATURE_RESPONSE = """
+            Read the following passage from Shakespeare's Macbeth (Act 5, Scene 5):
+
+            "Tomorrow, and tomorrow, and tomorrow, creeps in this petty pace from day to day, to the last syllable \
+            of recorded time; and all our yesterdays have lighted fools the way to dusty death."
+
+            Which of the following best describes the function of the repetition in the opening line?
+
+            A) It establishes an optimistic tone about the future
+            B***) It conveys Macbeth's weariness and sense of futility
+            C) It introduces a comic interlude before the final battle
+            D) It signals Macbeth's renewed ambition to hold the throne
+            """;
+
+    static final String SCIENCE_RESPONSE = """
+            During photosynthesis, the light-dependent reactions occur in the thylakoid membranes, while the Calvin \
+            cycle takes place in the stroma. A researcher blocks the electron transport chain in isolated chloroplasts.
+
+            Which of the following would most likely decrease first?
+
+            A) The concentration of carbon dioxide in the stroma
+            B***) The rate of NADPH production
+            C) The number of chloroplast ribosomes
+            D) The permeability of the outer chloroplast membrane
+            """;
+
+    static final String COMPUTER_SCIENCE_RESPONSE = """
+            Consider the following Java method, which is intended to return the index of the largest element in a \
+            non-empty array of integers:
+
+            public static int largestIndex(int[] values) {
+                int best = 0;
+                for (int i = 1; i < values.length; i++) {
+                    if (values[i] > values[best]) {
+                        best = i;
+                    }
+                }
+                return best;
+            }
+
+            Which of the following best describes the behavior of largestIndex when the array contains duplicate \
+            maximum values?
+
+            A) It returns the index of the last occurrence of the maximum value
+            B***) It returns the index of the first occurrence of the maximum value
+            C) It throws an ArrayIndexOutOfBoundsException
+            D) It returns the number of times the maximum value appears
+            """;
+
+    static final String EVALUATION_JSON = """
+            {"feedback": "Your response correctly identifies the collapse of stock prices in 1929 as a precipitating \
+            factor and links it to bank runs, which shows a solid grasp of causation. However, the explanation of the \
+            New Deal response is too general; naming a specific program such as the FDIC and explaining how deposit \
+            insurance restored confidence would strengthen it. Part C identifies the expansion of federal regulation \
+            but does not address how critics contested that change. Consider referencing the Liberty League or \
+            Supreme Court challenges. Your writing is clear and well organized. Overall this is a solid response with \
+            room for more specific evidence.", "score": "6", "maxScore": "9", "scoreExplanation": "Part A: 3/3, \
+            Part B: 2/3 for a general but accurate explanation, Part C: 1/3 for identifying the change without \
+            addressing the contestation."}
+            """;
+
+    private BenchmarkFixtures() {
+    }
+}
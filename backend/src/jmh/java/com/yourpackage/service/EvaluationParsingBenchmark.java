@@ -0,0 +1,24 @@
+package com.yourpackage.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yourpackage.model.FreeResponseEvaluation;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluationParsingBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Benchmark
+    public FreeResponseEvaluation parseEvaluation() throws IOException {
+        return objectMapper.readValue(BenchmarkFixtures.EVALUATION_JSON, FreeResponseEvaluation.class);
+    }
+}
@@ -0,0 +1,53 @@
+package com.yourpackage.service;
+
+import com.yourpackage.model.Question;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultipleChoiceShuffleBenchmark {
+
+    @Param({"math", "history", "markerAfterParen", "freeResponse"})
+    public String fixture;
+
+    private String response;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        response = switch (fixture) {
+            case "math" -> BenchmarkFixtures.MATH_MULTIPLE_CHOICE;
+            case "history" -> BenchmarkFixtures.HISTORY_MULTIPLE_CHOICE;
+            case "markerAfterParen" -> BenchmarkFixtures.MARKER_AFTER_PAREN;
+            default -> BenchmarkFixtures.FREE_RESPONSE;
+        };
+        encoded = toQuestion().encode();
+    }
+
+    @Benchmark
+    public MultipleChoiceParser.Parsed parse() {
+        return MultipleChoiceParser.parse(response);
+    }
+
+    @Benchmark
+    public Question toQuestion() {
+        return OpenAIService.toQuestion(Question.MULTIPLE_CHOICE, "Biology", response, "cell",
+                new Question.Metadata("gpt-4o-mini", "QUESTION", 0L));
+    }
+
+    @Benchmark
+    public String toText() {
+        return toQuestion().toText();
+    }
+
+    @Benchmark
+    public Question decode() {
+        return Question.decode(encoded);
+    }
+}
@@ -0,0 +1,56 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.JournalProperties;
+import com.yourpackage.config.TopicMemoryProperties;
+import com.yourpackage.persistence.HistoryJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PromptMemoryBenchmark {
+
+    private static final String USER = "benchmark-user";
+
+    // One subject per branch of extractTopicFromResponse; CompSci falls through to the word-frequency fallback
+    @Param({"lit", "ushistory", "biology", "calculus", "CompSci"})
+    public String subject;
+
+    private PromptMemoryService memoryService;
+    private String response;
+
+    @Setup
+    public void setUp() {
+        JournalProperties journalProperties = new JournalProperties();
+        journalProperties.setEnabled(false);
+        memoryService = new PromptMemoryService(new TopicMemoryProperties(), new HistoryJournal(journalProperties));
+
+        response = switch (subject) {
+            case "lit" -> BenchmarkFixtures.LITERATURE_RESPONSE;
+            case "ushistory" -> BenchmarkFixtures.HISTORY_MULTIPLE_CHOICE;
+            case "biology" -> BenchmarkFixtures.SCIENCE_RESPONSE;
+            case "calculus" -> BenchmarkFixtures.MATH_MULTIPLE_CHOICE;
+            default -> BenchmarkFixtures.COMPUTER_SCIENCE_RESPONSE;
+        };
+
+        // A full recent-topics list, as after a few questions in the same subject
+        for (int i = 0; i < 5; i++) {
+            memoryService.recordTopic(USER, subject, memoryService.extractTopicFromResponse(response, subject) + i);
+        }
+    }
+
+    @Benchmark
+    public String extractTopicFromResponse() {
+        return memoryService.extractTopicFromResponse(response, subject);
+    }
+
+    @Benchmark
+    public String generateDiversePrompt() {
+        return memoryService.generateDiversePrompt(USER, subject, "multiple-choice");
+    }
+}
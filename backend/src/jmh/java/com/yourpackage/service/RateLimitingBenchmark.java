@@ -0,0 +1,51 @@
+package com.yourpackage.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rate limit checks from 8 threads, both hammering a single user's bucket (CAS
+ * contention) and spread over many users (map contention).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class RateLimitingBenchmark {
+
+    private static final int USERS = 10_000;
+
+    private RateLimitingService rateLimitingService;
+    private String[] userIds;
+
+    @Setup
+    public void setUp() {
+        rateLimitingService = new RateLimitingService();
+        userIds = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            userIds[i] = "firebase-uid-" + i;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadCursor {
+        private static final AtomicInteger NEXT = new AtomicInteger();
+        int index = NEXT.getAndIncrement() * 997;
+    }
+
+    @Benchmark
+    public RateLimitingService.Decision sameUser() {
+        return rateLimitingService.checkQuestionRequest(userIds[0]);
+    }
+
+    @Benchmark
+    public RateLimitingService.Decision manyUsers(ThreadCursor cursor) {
+        cursor.index = (cursor.index + 1) % USERS;
+        return rateLimitingService.checkQuestionRequest(userIds[cursor.index]);
+    }
+}
@@ -0,0 +1,284 @@
+package com.yourpackage.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Offline stand-in for the OpenAI chat completions endpoint, for load tests.
+ * Answers {@code POST /v1/chat/completions} with canned content shaped like
+ * what {@code OpenAIService} parses (see {@link FakeResponses}), after a
+ * log-normally distributed delay; streamed requests get one SSE chunk per word
+ * and, when asked for, a final usage chunk. A fraction of requests fail with
+ * 429 or 5xx to exercise retries and the circuit breaker.
+ *
+ * <p>Options ({@code --name=value}):
+ * <pre>
+ *   port                 8089
+ *   latency-median-ms    800    blocking response time, or time to first token for streams
+ *   latency-sigma        0.5    spread of the log-normal latency
+ *   token-delay-ms       8      gap between streamed chunks
+ *   rate-429             0.01   fraction of requests answered with 429
+ *   rate-5xx             0.005  fraction answered with 500 or 503
+ * </pre>
+ * Point the backend at it with {@code helpstudy.openai.base-url=http://localhost:8089}
+ * (the {@code loadtest} Spring profile does) and any non-empty OPENAI_API_KEY.
+ */
+public final class FakeOpenAIServer {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final double latencyMedianMillis;
+    private final double latencySigma;
+    private final long tokenDelayMillis;
+    private final double rate429;
+    private final double rate5xx;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final LongAdder completions = new LongAdder();
+    private final LongAdder streams = new LongAdder();
+    private final LongAdder injected429 = new LongAdder();
+    private final LongAdder injected5xx = new LongAdder();
+
+    FakeOpenAIServer(Map<String, String> options) {
+        this.latencyMedianMillis = Double.parseDouble(options.getOrDefault("latency-median-ms", "800"));
+        this.latencySigma = Double.parseDouble(options.getOrDefault("latency-sigma", "0.5"));
+        this.tokenDelayMillis = Long.parseLong(options.getOrDefault("token-delay-ms", "8"));
+        this.rate429 = Double.parseDouble(options.getOrDefault("rate-429", "0.01"));
+        this.rate5xx = Double.parseDouble(options.getOrDefault("rate-5xx", "0.005"));
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = Options.parse(args);
+        int port = Integer.parseInt(options.getOrDefault("port", "8089"));
+        FakeOpenAIServer fake = new FakeOpenAIServer(options);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 512);
+        // Requests mostly sleep, so a thread each is the simplest faithful model of upstream latency
+        ExecutorService executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/v1/chat/completions", fake::handle);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(0);
+            executor.shutdownNow();
+            System.out.println(fake.summary());
+        }));
+        System.out.printf("Fake OpenAI listening on http://localhost:%d (median %.0f ms, 429 %.3f, 5xx %.3f)%n",
+                port, fake.latencyMedianMillis, fake.rate429, fake.rate5xx);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, error("Method not allowed", "invalid_request_error"));
+                return;
+            }
+            JsonNode request;
+            try (InputStream body = exchange.getRequestBody()) {
+                request = MAPPER.readTree(body);
+            }
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            double roll = random.nextDouble();
+            if (roll < rate429) {
+                injected429.increment();
+                sleep(random.nextLong(5, 50));
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendJson(exchange, 429, error("Rate limit reached for requests", "requests"));
+                return;
+            }
+            if (roll < rate429 + rate5xx) {
+                injected5xx.increment();
+                sleep(sampleLatency(random));
+                sendJson(exchange, random.nextBoolean() ? 500 : 503, error("The server had an error", "server_error"));
+                return;
+            }
+
+            String system = message(request, "system");
+            String user = message(request, "user");
+            String model = request.path("model").asText("gpt-4o-mini");
+            String content = FakeResponses.respond(system, user);
+            int promptTokens = tokens(system) + tokens(user);
+            int completionTokens = tokens(content);
+
+            if (request.path("stream").asBoolean(false)) {
+                streams.increment();
+                boolean includeUsage = request.path("stream_options").path("include_usage").asBoolean(false);
+                stream(exchange, model, content, includeUsage ? usage(promptTokens, completionTokens) : null, random);
+            } else {
+                completions.increment();
+                sleep(sampleLatency(random));
+                sendJson(exchange, 200, completion(model, content, usage(promptTokens, completionTokens)));
+            }
+        } catch (IOException e) {
+            // The client went away (cancelled hedge, closed stream); nothing to report
+        }
+    }
+
+    private void stream(HttpExchange exchange, String model, String content, ObjectNode usage,
+                        ThreadLocalRandom random) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        String id = "chatcmpl-fake-" + ids.incrementAndGet();
+        long created = System.currentTimeMillis() / 1000;
+        try (OutputStream out = exchange.getResponseBody()) {
+            sleep(sampleLatency(random));
+            boolean first = true;
+            for (String piece : words(content)) {
+                ObjectNode delta = MAPPER.createObjectNode();
+                if (first) {
+                    delta.put("role", "assistant");
+                    first = false;
+                }
+                delta.put("content", piece);
+                writeEvent(out, chunk(id, created, model, delta, null));
+                sleep(tokenDelayMillis);
+            }
+            writeEvent(out, chunk(id, created, model, MAPPER.createObjectNode(), "stop"));
+            if (usage != null) {
+                ObjectNode usageChunk = chunkBase(id, created, model);
+                usageChunk.putArray("choices");
+                usageChunk.set("usage", usage);
+                writeEvent(out, usageChunk);
+            }
+            out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    private ObjectNode completion(String model, String content, ObjectNode usage) {
+        ObjectNode response = MAPPER.createObjectNode();
+        response.put("id", "chatcmpl-fake-" + ids.incrementAndGet());
+        response.put("object", "chat.completion");
+        response.put("created", System.currentTimeMillis() / 1000);
+        response.put("model", model);
+        ObjectNode choice = response.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode message = choice.putObject("message");
+        message.put("role", "assistant");
+        message.put("content", content);
+        choice.put("finish_reason", "stop");
+        response.set("usage", usage);
+        return response;
+    }
+
+    private static ObjectNode chunkBase(String id, long created, String model) {
+        ObjectNode chunk = MAPPER.createObjectNode();
+        chunk.put("id", id);
+        chunk.put("object", "chat.completion.chunk");
+        chunk.put("created", created);
+        chunk.put("model", model);
+        return chunk;
+    }
+
+    private static ObjectNode chunk(String id, long created, String model, ObjectNode delta, String finishReason) {
+        ObjectNode chunk = chunkBase(id, created, model);
+        ArrayNode choices = chunk.putArray("choices");
+        ObjectNode choice = choices.addObject();
+        choice.put("index", 0);
+        choice.set("delta", delta);
+        if (finishReason == null) {
+            choice.putNull("finish_reason");
+        } else {
+            choice.put("finish_reason", finishReason);
+        }
+        return chunk;
+    }
+
+    private static ObjectNode usage(int promptTokens, int completionTokens) {
+        ObjectNode usage = MAPPER.createObjectNode();
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", completionTokens);
+        usage.put("total_tokens", promptTokens + completionTokens);
+        return usage;
+    }
+
+    private static ObjectNode error(String message, String type) {
+        ObjectNode body = MAPPER.createObjectNode();
+        ObjectNode error = body.putObject("error");
+        error.put("message", message);
+        error.put("type", type);
+        error.putNull("param");
+        error.putNull("code");
+        return body;
+    }
+
+    private static String message(JsonNode request, String role) {
+        for (JsonNode message : request.path("messages")) {
+            if (role.equals(message.path("role").asText())) {
+                return message.path("content").asText("");
+            }
+        }
+        return "";
+    }
+
+    // Splits after each run of whitespace so the chunks concatenate back to the original text
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= text.length(); i++) {
+            if (i == text.length() || (Character.isWhitespace(text.charAt(i - 1)) && !Character.isWhitespace(text.charAt(i)))) {
+                words.add(text.substring(start, i));
+                start = i;
+            }
+        }
+        return words;
+    }
+
+    private static int tokens(String text) {
+        return (text.length() + 3) / 4;
+    }
+
+    private long sampleLatency(ThreadLocalRandom random) {
+        return Math.round(latencyMedianMillis * Math.exp(latencySigma * random.nextGaussian()));
+    }
+
+    private static void writeEvent(OutputStream out, JsonNode data) throws IOException {
+        out.write(("data: " + MAPPER.writeValueAsString(data) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String summary() {
+        return String.format("Fake OpenAI served %d completions and %d streams; injected %d x 429 and %d x 5xx",
+                completions.sum(), streams.sum(), injected429.sum(), injected5xx.sum());
+    }
+}
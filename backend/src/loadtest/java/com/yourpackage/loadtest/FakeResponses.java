@@ -0,0 +1,128 @@
+package com.yourpackage.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Canned completions for each prompt {@code OpenAIService} sends, recognised by
+ * their system prompts. Content has the shape the service parses (marked
+ * multiple choice options, {@code FINAL ANSWER:} lines, {@code ===} batch
+ * separators, evaluation JSON) and mentions topics from the topic dictionary,
+ * with random numbers mixed in so no two questions are identical.
+ */
+final class FakeResponses {
+
+    private static final Pattern BATCH_COUNT = Pattern.compile("Write exactly (\\d+) different");
+    private static final int MAX_BATCH = 50;
+
+    private static final String[] TOPICS = {
+            "photosynthesis", "mitosis", "the cold war", "the great depression", "macbeth",
+            "the great gatsby", "chemical bonding", "thermodynamics", "the derivative", "probability"
+    };
+
+    private FakeResponses() {
+    }
+
+    static String respond(String system, String user) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (system.startsWith("You are an AP exam scorer")) {
+            return evaluation(random);
+        }
+        if (system.equals("You are a precise mathematics expert.")) {
+            return mathSolution(random);
+        }
+        if (system.startsWith("You are creating multiple choice questions with pre-verified answers")) {
+            return mathQuestion(random);
+        }
+        if (system.startsWith("You are an expert tutor")) {
+            return guide(random);
+        }
+        if (system.startsWith("You are an expert on all AP classes")) {
+            return freeResponse(random);
+        }
+        Matcher batch = BATCH_COUNT.matcher(user);
+        if (batch.find()) {
+            int count = Math.min(MAX_BATCH, Integer.parseInt(batch.group(1)));
+            StringBuilder questions = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    questions.append("\n===\n");
+                }
+                questions.append(multipleChoice(random));
+            }
+            return questions.toString();
+        }
+        // Plain and fallback math multiple choice prompts share the format
+        return multipleChoice(random);
+    }
+
+    private static String multipleChoice(ThreadLocalRandom random) {
+        String topic = TOPICS[random.nextInt(TOPICS.length)];
+        int n = random.nextInt(10, 1000);
+        int correct = random.nextInt(4);
+        StringBuilder question = new StringBuilder()
+                .append("Consider the following scenario about ").append(topic).append(", case ").append(n)
+                .append(". A student reviewing ").append(topic)
+                .append(" notes that several factors interact. Which of the following best explains the outcome?\n");
+        for (int i = 0; i < 4; i++) {
+            question.append((char) ('A' + i)).append(i == correct ? "***) " : ") ")
+                    .append(i == correct ? "The mechanism most directly responsible for " + topic + " in case " + n
+                            : "An unrelated effect observed in case " + (n + i + 1))
+                    .append('\n');
+        }
+        return question.toString().trim();
+    }
+
+    private static String freeResponse(ThreadLocalRandom random) {
+        String topic = TOPICS[random.nextInt(TOPICS.length)];
+        StringBuilder question = new StringBuilder("Context: The following passage discusses ").append(topic)
+                .append(". ");
+        for (int i = 0; i < 12; i++) {
+            question.append("Researchers examining ").append(topic).append(" recorded observation ")
+                    .append(random.nextInt(1000)).append(" and compared it with earlier findings. ");
+        }
+        question.append("\n\nA.***** Identify one factor that shaped ").append(topic).append(".\n")
+                .append("B.***** Explain how that factor affected the outcome described in the passage.\n")
+                .append("C.***** Evaluate the extent to which the evidence supports the researchers' claim.\n");
+        return question.toString();
+    }
+
+    private static String mathSolution(ThreadLocalRandom random) {
+        int a = random.nextInt(2, 12);
+        int b = random.nextInt(1, 20);
+        return "Problem: Find the derivative of \\(f(x) = " + a + "x^2 + " + b + "x\\) at \\(x = 1\\).\n\n"
+                + "Step 1: Differentiate term by term: \\(f'(x) = " + 2 * a + "x + " + b + "\\).\n"
+                + "Step 2: Evaluate at \\(x = 1\\): \\(f'(1) = " + (2 * a + b) + "\\).\n\n"
+                + "FINAL ANSWER: " + (2 * a + b);
+    }
+
+    private static String mathQuestion(ThreadLocalRandom random) {
+        int answer = random.nextInt(5, 40);
+        return "What is the value of the derivative of the given function at \\(x = 1\\)?\n"
+                + "A) " + (answer - 2) + "\n"
+                + "B***) " + answer + "\n"
+                + "C) " + (answer + 3) + "\n"
+                + "D) " + (answer * 2);
+    }
+
+    private static String guide(ThreadLocalRandom random) {
+        String topic = TOPICS[random.nextInt(TOPICS.length)];
+        StringBuilder guide = new StringBuilder("Study guide: ").append(topic).append("\n\n");
+        for (int i = 1; i <= 6; i++) {
+            guide.append(i).append(". Key idea ").append(i).append(" about ").append(topic)
+                    .append(": understand how it connects to the rest of the unit, recall the standard examples, ")
+                    .append("and practise applying it to unfamiliar questions.\n");
+        }
+        return guide.toString();
+    }
+
+    private static String evaluation(ThreadLocalRandom random) {
+        int score = random.nextInt(10);
+        return "{\"feedback\": \"The response identifies the main factor and supports it with evidence from the passage. "
+                + "The explanation is mostly clear. Some claims need more specific support. The evaluation section is brief. "
+                + "Connecting the evidence back to the question would strengthen it. Overall a solid attempt.\", "
+                + "\"score\": " + score + ", \"maxScore\": 9, "
+                + "\"scoreExplanation\": \"Points awarded for identification, explanation and evaluation as described.\"}";
+    }
+}
@@ -0,0 +1,470 @@
+package com.yourpackage.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Load generator for the {@code /api} endpoints. Worker threads pick an
+ * operation by weight from the mix, act as one of many users (through the
+ * {@code X-Dev-User} header, which the {@code loadtest} profile honours while
+ * Firebase is not configured) and record latency per operation; streaming
+ * endpoints are read to the end, with the time to their first event recorded
+ * separately. While running, the backend's heap is sampled from
+ * {@code /actuator/prometheus} on its management port.
+ *
+ * <p>Options ({@code --name=value}):
+ * <pre>
+ *   target           http://localhost:8080
+ *   management       http://localhost:8081   actuator, for heap and GC samples
+ *   duration         60s      measured phase
+ *   warmup           15s      run before measuring, not recorded
+ *   concurrency      32       worker threads (requests in flight)
+ *   rate             0        requests per second across all workers; 0 runs closed loop.
+ *                             Open loop measures from each request's scheduled start,
+ *                             so queueing behind slow requests counts against latency
+ *   think-time       0ms      mean pause between a worker's requests (closed loop only)
+ *   users            5000     distinct users; each gets the per-user rate limits
+ *   subjects         Biology,Chemistry,Calculus,UsHistory,Lit,Statistics
+ *   mix              operation:weight,... (see DEFAULT_MIX)
+ *   eval-repeat      0.3      share of evaluations resubmitting an already seen answer
+ *   request-timeout  180s
+ * </pre>
+ */
+public final class LoadTest {
+
+    private static final String DEFAULT_MIX = "question:30,question-v2:10,free-response:4,question-stream:10,"
+            + "guide:8,guide-stream:4,batch:3,batch-v2:2,evaluate:8,history:11,memory:5,memory-subject:5";
+    private static final Duration HEAP_SAMPLE_INTERVAL = Duration.ofSeconds(5);
+
+    private final HttpClient client;
+    private final String target;
+    private final String management;
+    private final Duration requestTimeout;
+    private final List<String> subjects;
+    private final int users;
+    private final double evalRepeat;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final Map<Operation, LatencyHistogram> firstEvent = new EnumMap<>(Operation.class);
+
+    private volatile boolean measuring;
+
+    private LoadTest(Map<String, String> options) {
+        this.target = options.getOrDefault("target", "http://localhost:8080");
+        this.management = options.getOrDefault("management", "http://localhost:8081");
+        this.requestTimeout = Options.duration(options.getOrDefault("request-timeout", "180s"));
+        this.subjects = List.of(options.getOrDefault("subjects", "Biology,Chemistry,Calculus,UsHistory,Lit,Statistics")
+                .split(","));
+        this.users = Integer.parseInt(options.getOrDefault("users", "5000"));
+        this.evalRepeat = Double.parseDouble(options.getOrDefault("eval-repeat", "0.3"));
+
+        List<Operation> ops = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int sum = 0;
+        for (String entry : options.getOrDefault("mix", DEFAULT_MIX).split(",")) {
+            String[] parts = entry.split(":");
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                sum += weight;
+                ops.add(Operation.byName(parts[0].trim()));
+                weights.add(sum);
+            }
+        }
+        if (ops.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no operation with a positive weight");
+        }
+        this.operations = ops.toArray(new Operation[0]);
+        this.cumulativeWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+        for (Operation op : Operation.values()) {
+            stats.put(op, new OperationStats());
+            firstEvent.put(op, new LatencyHistogram());
+        }
+
+        this.client = HttpClient.newBuilder()
+                // Tomcat speaks plain HTTP/1.1; skip the h2c upgrade attempt on every connection
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Options.parse(args);
+        LoadTest test = new LoadTest(options);
+        Duration warmup = Options.duration(options.getOrDefault("warmup", "15s"));
+        Duration duration = Options.duration(options.getOrDefault("duration", "60s"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        Duration thinkTime = Options.duration(options.getOrDefault("think-time", "0ms"));
+        test.run(warmup, duration, concurrency, rate, thinkTime);
+    }
+
+    private void run(Duration warmup, Duration duration, int concurrency, double rate, Duration thinkTime)
+            throws InterruptedException {
+        System.out.printf("Load test against %s: %d workers, %s, warmup %ds, measuring %ds%n", target, concurrency,
+                rate > 0 ? "open loop at " + rate + " req/s" : "closed loop", warmup.toSeconds(), duration.toSeconds());
+
+        HeapSampler heap = new HeapSampler();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        long start = System.nanoTime();
+        long measureStart = start + warmup.toNanos();
+        long end = measureStart + duration.toNanos();
+        long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        AtomicLong ticket = new AtomicLong();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (true) {
+                    long scheduled;
+                    if (intervalNanos > 0) {
+                        scheduled = start + ticket.getAndIncrement() * intervalNanos;
+                        if (!sleepUntil(scheduled)) {
+                            return;
+                        }
+                    } else {
+                        scheduled = System.nanoTime();
+                    }
+                    if (scheduled >= end || Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    execute(pick(random), random, scheduled, scheduled >= measureStart);
+                    if (intervalNanos == 0 && !thinkTime.isZero()) {
+                        long pause = (long) (-Math.log(1 - random.nextDouble()) * thinkTime.toNanos());
+                        if (!sleepUntil(System.nanoTime() + pause)) {
+                            return;
+                        }
+                    }
+                }
+            });
+        }
+
+        sleepUntil(measureStart);
+        measuring = true;
+        heap.sample();
+        sampler.scheduleAtFixedRate(heap::sample, HEAP_SAMPLE_INTERVAL.toMillis(), HEAP_SAMPLE_INTERVAL.toMillis(),
+                TimeUnit.MILLISECONDS);
+        sleepUntil(end);
+        measuring = false;
+        long measuredNanos = System.nanoTime() - measureStart;
+        sampler.shutdownNow();
+        heap.sample();
+
+        workers.shutdown();
+        // Requests still in flight are not counted; give them a moment to finish quietly
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+        report(measuredNanos / 1e9, heap);
+    }
+
+    private Operation pick(ThreadLocalRandom random) {
+        int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (roll < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void execute(Operation op, ThreadLocalRandom random, long scheduled, boolean record) {
+        String user = "load-user-" + random.nextInt(users);
+        String subject = subjects.get(random.nextInt(subjects.size()));
+        HttpRequest request = request(op, user, subject, random);
+        OperationStats opStats = stats.get(op);
+        try {
+            int status;
+            if (op.streaming) {
+                HttpResponse<Stream<String>> response = client.send(request, HttpResponse.BodyHandlers.ofLines());
+                status = response.statusCode();
+                if (status == 200 && !readEvents(response.body(), op, scheduled, record && measuring)) {
+                    status = -1;
+                }
+            } else {
+                HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                status = response.statusCode();
+            }
+            if (record && measuring) {
+                opStats.record(status, (System.nanoTime() - scheduled) / 1000);
+            }
+        } catch (IOException e) {
+            if (record && measuring) {
+                opStats.failures.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads an SSE response to the end; false if the server sent an error event.
+     */
+    private boolean readEvents(Stream<String> lines, Operation op, long scheduled, boolean record) {
+        boolean first = true;
+        boolean failed = false;
+        try (lines) {
+            Iterator<String> it = lines.iterator();
+            while (it.hasNext()) {
+                String line = it.next();
+                if (!line.startsWith("event:")) {
+                    continue;
+                }
+                if (first && record) {
+                    firstEvent.get(op).record((System.nanoTime() - scheduled) / 1000);
+                }
+                first = false;
+                failed |= line.substring(6).trim().equals("error");
+            }
+        }
+        return !failed;
+    }
+
+    private HttpRequest request(Operation op, String user, String subject, ThreadLocalRandom random) {
+        String encoded = URLEncoder.encode(subject, StandardCharsets.UTF_8);
+        HttpRequest.Builder builder = switch (op) {
+            case QUESTION -> get("/api/question/" + encoded);
+            case QUESTION_V2 -> get("/api/v2/question/" + encoded);
+            case FREE_RESPONSE -> get("/api/question/" + encoded + "?type=free-response");
+            case QUESTION_STREAM -> get("/api/question/" + encoded + "/stream");
+            case GUIDE -> get("/api/guide?subject=" + encoded);
+            case GUIDE_STREAM -> get("/api/guide/stream?subject=" + encoded);
+            case BATCH -> post("/api/questions/batch", batchBody(subject, random));
+            case BATCH_V2 -> post("/api/v2/questions/batch", batchBody(subject, random));
+            case EVALUATE -> post("/api/evaluate", evaluationBody(subject, random));
+            case HISTORY -> get("/api/question-history?limit=20");
+            case MEMORY -> get("/api/memory");
+            case MEMORY_SUBJECT -> get("/api/memory/" + encoded);
+        };
+        return builder.header("X-Dev-User", user).timeout(requestTimeout).build();
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(URI.create(target + path)).GET();
+    }
+
+    private HttpRequest.Builder post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(target + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json));
+    }
+
+    private static String batchBody(String subject, ThreadLocalRandom random) {
+        return "{\"subject\":" + quote(subject) + ",\"count\":" + random.nextInt(3, 11) + "}";
+    }
+
+    private String evaluationBody(String subject, ThreadLocalRandom random) {
+        String question = "Explain the causes and consequences of the topic discussed in the passage about " + subject + ".";
+        String response = random.nextDouble() < evalRepeat
+                ? "The main cause was economic pressure, and the main consequence was lasting political change."
+                : "The main cause was factor " + random.nextInt(1_000_000)
+                        + ", which led to consequences that the passage describes in detail over several paragraphs.";
+        return "{\"subject\":" + quote(subject) + ",\"question\":" + quote(question) + ",\"response\":" + quote(response) + "}";
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private void report(double seconds, HeapSampler heap) {
+        long totalCount = 0;
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%n%-16s %8s %8s %7s %6s %6s %6s %6s %9s %9s %9s %9s%n",
+                "operation", "count", "req/s", "ok%", "429", "503", "error", "failed", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (Operation op : Operation.values()) {
+            OperationStats s = stats.get(op);
+            long count = s.count();
+            if (count == 0) {
+                continue;
+            }
+            totalCount += count;
+            out.append(row(op.label, count, seconds, s, s.latency));
+            LatencyHistogram first = firstEvent.get(op);
+            if (op.streaming && first.count() > 0) {
+                out.append(String.format(Locale.ROOT, "%-16s %8d %8s %7s %6s %6s %6s %6s %9.1f %9.1f %9.1f %9.1f%n",
+                        "  first event", first.count(), "", "", "", "", "", "",
+                        millis(first.percentile(0.5)), millis(first.percentile(0.9)),
+                        millis(first.percentile(0.99)), millis(first.max())));
+            }
+        }
+        out.append(String.format(Locale.ROOT, "%nTotal: %d requests in %.1fs, %.1f req/s%n", totalCount, seconds,
+                totalCount / seconds));
+        out.append(heap.summary());
+        System.out.println(out);
+    }
+
+    private static String row(String label, long count, double seconds, OperationStats s, LatencyHistogram latency) {
+        return String.format(Locale.ROOT, "%-16s %8d %8.1f %7.2f %6d %6d %6d %6d %9.1f %9.1f %9.1f %9.1f%n",
+                label, count, count / seconds, 100.0 * s.ok.sum() / count, s.throttled.sum(), s.unavailable.sum(),
+                s.errors.sum(), s.failures.sum(), millis(latency.percentile(0.5)), millis(latency.percentile(0.9)),
+                millis(latency.percentile(0.99)), millis(latency.max()));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static boolean sleepUntil(long nanoTime) {
+        long remaining = nanoTime - System.nanoTime();
+        if (remaining <= 0) {
+            return true;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private enum Operation {
+        QUESTION("question", false),
+        QUESTION_V2("question-v2", false),
+        FREE_RESPONSE("free-response", false),
+        QUESTION_STREAM("question-stream", true),
+        GUIDE("guide", false),
+        GUIDE_STREAM("guide-stream", true),
+        BATCH("batch", true),
+        BATCH_V2("batch-v2", true),
+        EVALUATE("evaluate", false),
+        HISTORY("history", false),
+        MEMORY("memory", false),
+        MEMORY_SUBJECT("memory-subject", false);
+
+        final String label;
+        final boolean streaming;
+
+        Operation(String label, boolean streaming) {
+            this.label = label;
+            this.streaming = streaming;
+        }
+
+        static Operation byName(String label) {
+            for (Operation op : values()) {
+                if (op.label.equals(label)) {
+                    return op;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation in mix: " + label);
+        }
+    }
+
+    /**
+     * Outcomes and latency of one operation. Latency covers every completed
+     * response, including throttled and failed ones; connection failures and
+     * timeouts are only counted.
+     */
+    private static final class OperationStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder ok = new LongAdder();
+        final LongAdder throttled = new LongAdder();
+        final LongAdder unavailable = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder failures = new LongAdder();
+
+        void record(int status, long micros) {
+            latency.record(micros);
+            if (status >= 200 && status < 300) {
+                ok.increment();
+            } else if (status == 429) {
+                throttled.increment();
+            } else if (status == 503) {
+                unavailable.increment();
+            } else {
+                // Includes streams that ended with an error event (status -1)
+                errors.increment();
+            }
+        }
+
+        long count() {
+            return latency.count() + failures.sum();
+        }
+    }
+
+    /**
+     * Heap in use and cumulative GC pause time of the backend, scraped from the
+     * actuator's Prometheus endpoint.
+     */
+    private final class HeapSampler {
+        private long first = -1;
+        private long last = -1;
+        private long peak;
+        private double firstGcSeconds = -1;
+        private double lastGcSeconds;
+
+        synchronized void sample() {
+            try {
+                HttpResponse<Stream<String>> response = client.send(
+                        HttpRequest.newBuilder(URI.create(management + "/actuator/prometheus"))
+                                .timeout(Duration.ofSeconds(10)).GET().build(),
+                        HttpResponse.BodyHandlers.ofLines());
+                if (response.statusCode() != 200) {
+                    response.body().close();
+                    return;
+                }
+                long heap = 0;
+                double gc = 0;
+                try (Stream<String> lines = response.body()) {
+                    for (Iterator<String> it = lines.iterator(); it.hasNext(); ) {
+                        String line = it.next();
+                        if (line.startsWith("jvm_memory_used_bytes{") && line.contains("area=\"heap\"")) {
+                            heap += (long) value(line);
+                        } else if (line.startsWith("jvm_gc_pause_seconds_sum{")) {
+                            gc += value(line);
+                        }
+                    }
+                }
+                if (first < 0) {
+                    first = heap;
+                    firstGcSeconds = gc;
+                }
+                last = heap;
+                lastGcSeconds = gc;
+                peak = Math.max(peak, heap);
+            } catch (IOException e) {
+                // Metrics are best effort; the run itself is what matters
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized String summary() {
+            if (first < 0) {
+                return "Heap: not available (is /actuator/prometheus exposed on " + management + "?)\n";
+            }
+            return String.format(Locale.ROOT, "Heap used: start %.1f MB, end %.1f MB, peak %.1f MB, growth %+.1f MB%n"
+                            + "GC pause time during the run: %.3fs%n",
+                    mb(first), mb(last), mb(peak), mb(last - first), lastGcSeconds - firstGcSeconds);
+        }
+
+        private static double value(String line) {
+            return Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+        }
+
+        private static double mb(long bytes) {
+            return bytes / (1024.0 * 1024.0);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.yourpackage.config;
+
+import com.yourpackage.tracing.RequestTrace;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class AsyncConfig {
+
+    /**
+     * Drains streamed completions into SSE emitters. Each stream holds a thread
+     * for the length of the completion, so the queue is kept short and callers
+     * get a 503 rather than waiting behind a backlog. Tasks run bound to the
+     * trace of the request that started them.
+     */
+    @Bean(name = "streamingExecutor")
+    public ThreadPoolTaskExecutor streamingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(32);
+        executor.setQueueCapacity(16);
+        executor.setThreadNamePrefix("sse-stream-");
+        executor.setTaskDecorator(RequestTrace::wrap);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,27 @@
+package com.yourpackage.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "helpstudy.auth.token-cache")
+public class AuthTokenCacheProperties {
+
+    private boolean enabled = true;
+
+    private long maxSize = 10_000L;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+}
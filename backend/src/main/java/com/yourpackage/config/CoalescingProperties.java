@@ -0,0 +1,36 @@
+package com.yourpackage.config;
+
+import com.yourpackage.service.CallSite;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "helpstudy.coalescing")
+public class CoalescingProperties {
+
+    private boolean enabled = true;
+
+    // Overrides of CallSite defaults, e.g. helpstudy.coalescing.policies.question=shared
+    private Map<CallSite, CallSite.Policy> policies = new EnumMap<>(CallSite.class);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Map<CallSite, CallSite.Policy> getPolicies() {
+        return policies;
+    }
+
+    public void setPolicies(Map<CallSite, CallSite.Policy> policies) {
+        this.policies = policies;
+    }
+
+    public CallSite.Policy policyFor(CallSite site) {
+        return policies.getOrDefault(site, site.getDefaultPolicy());
+    }
+}
@@ -0,0 +1,24 @@
+package com.yourpackage.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Development-only switches, all off by default. They only take effect while
+ * Firebase is not configured.
+ */
+@ConfigurationProperties(prefix = "helpstudy.dev")
+public class DevModeProperties {
+
+    // Let the X-Dev-User header pick the user id, so a load test can act as many users.
+    // Off by default: without it, a deploy missing its Firebase credentials would let any
+    // client pose as any user and so dodge every per-user limit.
+    private boolean allowUserHeader = false;
+
+    public boolean isAllowUserHeader() {
+        return allowUserHeader;
+    }
+
+    public void setAllowUserHeader(boolean allowUserHeader) {
+        this.allowUserHeader = allowUserHeader;
+    }
+}
@@ -0,0 +1,81 @@
+package com.yourpackage.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "helpstudy.evaluation-cache")
+public class EvaluationCacheProperties {
+
+    private boolean enabled = true;
+
+    // Total cached evaluation text, in characters
+    private long maxWeight = 8_000_000L;
+
+    private Duration ttl = Duration.ofHours(24);
+
+    // Evaluations evicted for size are written here instead of being dropped
+    private boolean spillEnabled = false;
+
+    private String spillDirectory = "data/evaluation-cache";
+
+    private long maxSpillBytes = 256L * 1024 * 1024;
+
+    private Duration spillCleanupInterval = Duration.ofMinutes(30);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public boolean isSpillEnabled() {
+        return spillEnabled;
+    }
+
+    public void setSpillEnabled(boolean spillEnabled) {
+        this.spillEnabled = spillEnabled;
+    }
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public long getMaxSpillBytes() {
+        return maxSpillBytes;
+    }
+
+    public void setMaxSpillBytes(long maxSpillBytes) {
+        this.maxSpillBytes = maxSpillBytes;
+    }
+
+    public Duration getSpillCleanupInterval() {
+        return spillCleanupInterval;
+    }
+
+    public void setSpillCleanupInterval(Duration spillCleanupInterval) {
+        this.spillCleanupInterval = spillCleanupInterval;
+    }
+}
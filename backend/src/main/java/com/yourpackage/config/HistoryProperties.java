@@ -0,0 +1,39 @@
+package com.yourpackage.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "helpstudy.history")
+public class HistoryProperties {
+
+    // Entries kept per user; older ones are overwritten
+    private int perUserCapacity = 200;
+
+    private int maxUsers = 10_000;
+
+    // Global ceiling on stored prompt text, in characters (~2 bytes each)
+    private long maxTotalChars = 16_000_000L;
+
+    public int getPerUserCapacity() {
+        return perUserCapacity;
+    }
+
+    public void setPerUserCapacity(int perUserCapacity) {
+        this.perUserCapacity = perUserCapacity;
+    }
+
+    public int getMaxUsers() {
+        return maxUsers;
+    }
+
+    public void setMaxUsers(int maxUsers) {
+        this.maxUsers = maxUsers;
+    }
+
+    public long getMaxTotalChars() {
+        return maxTotalChars;
+    }
+
+    public void setMaxTotalChars(long maxTotalChars) {
+        this.maxTotalChars = maxTotalChars;
+    }
+}
@@ -0,0 +1,72 @@
+package com.yourpackage.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "helpstudy.journal")
+public class JournalProperties {
+
+    private boolean enabled = true;
+
+    private String directory = "data/journal";
+
+    // Each segment file is pre-allocated and memory-mapped at this size
+    private int segmentSize = 16 * 1024 * 1024;
+
+    // Appends are fsynced together at most this often (group commit)
+    private Duration flushInterval = Duration.ofMillis(50);
+
+    private Duration compactionInterval = Duration.ofMinutes(10);
+
+    // Compaction only runs once at least this many segments have accumulated
+    private int compactionMinSegments = 4;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public Duration getCompactionInterval() {
+        return compactionInterval;
+    }
+
+    public void setCompactionInterval(Duration compactionInterval) {
+        this.compactionInterval = compactionInterval;
+    }
+
+    public int getCompactionMinSegments() {
+        return compactionMinSegments;
+    }
+
+    public void setCompactionMinSegments(int compactionMinSegments) {
+        this.compactionMinSegments = compactionMinSegments;
+    }
+}
@@ -0,0 +1,129 @@
+package com.yourpackage.config;
+
+import com.yourpackage.service.OperationClass;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Bulkhead sizes and adaptive concurrency limits per {@link OperationClass}. A
+ * class without an entry under {@code operations} uses the built-in values
+ * below. The entries are the live settings: changes made at runtime through
+ * the {@code loadshedding} actuator endpoint are written here.
+ */
+@ConfigurationProperties(prefix = "helpstudy.load-shedding")
+public class LoadSheddingProperties {
+
+    private boolean enabled = true;
+
+    private Map<OperationClass, Limits> operations = new EnumMap<>(OperationClass.class);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Map<OperationClass, Limits> getOperations() {
+        return operations;
+    }
+
+    public void setOperations(Map<OperationClass, Limits> operations) {
+        this.operations = operations;
+    }
+
+    public synchronized Limits limitsFor(OperationClass operation) {
+        return operations.computeIfAbsent(operation, key -> new Limits());
+    }
+
+    public static class Limits {
+
+        // Concurrent operations allowed at first; adapted between min and max from there
+        private volatile int initialLimit = 16;
+        private volatile int minLimit = 2;
+        private volatile int maxLimit = 64;
+
+        // Operations waiting for a slot before new ones get 503; 0 refuses as soon as the limit is reached
+        private volatile int maxQueued = 32;
+
+        // Queued operations still waiting after this long get 503 instead of running
+        private volatile Duration maxQueueWait = Duration.ofSeconds(5);
+
+        // Off: the limit stays where it is set
+        private volatile boolean adaptive = true;
+
+        // Operations slower than this (or refused by upstream) shrink the limit; faster ones grow it
+        private volatile Duration latencyThreshold = Duration.ofSeconds(30);
+
+        // Factor the limit is multiplied by on each decrease
+        private volatile double backoffRatio = 0.9;
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public int getMaxQueued() {
+            return maxQueued;
+        }
+
+        public void setMaxQueued(int maxQueued) {
+            this.maxQueued = maxQueued;
+        }
+
+        public Duration getMaxQueueWait() {
+            return maxQueueWait;
+        }
+
+        public void setMaxQueueWait(Duration maxQueueWait) {
+            this.maxQueueWait = maxQueueWait;
+        }
+
+        public boolean isAdaptive() {
+            return adaptive;
+        }
+
+        public void setAdaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
+        public Duration getLatencyThreshold() {
+            return latencyThreshold;
+        }
+
+        public void setLatencyThreshold(Duration latencyThreshold) {
+            this.latencyThreshold = latencyThreshold;
+        }
+
+        public double getBackoffRatio() {
+            return backoffRatio;
+        }
+
+        public void setBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+        }
+    }
+}
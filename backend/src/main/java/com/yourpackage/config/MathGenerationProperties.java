@@ -0,0 +1,53 @@
+package com.yourpackage.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "helpstudy.math")
+public class MathGenerationProperties {
+
+    // Off restores the strictly sequential solve -> format -> fallback path
+    private boolean pipelined = true;
+
+    // Concurrent solve attempts; the first with an extractable FINAL ANSWER is used
+    private int solveAttempts = 2;
+
+    // Start the single-step fallback alongside the solve step instead of after it fails
+    private boolean speculativeFallback = true;
+
+    // How long the verified solve + format path may take before the fallback wins
+    private Duration deadline = Duration.ofSeconds(45);
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public int getSolveAttempts() {
+        return solveAttempts;
+    }
+
+    public void setSolveAttempts(int solveAttempts) {
+        this.solveAttempts = solveAttempts;
+    }
+
+    public boolean isSpeculativeFallback() {
+        return speculativeFallback;
+    }
+
+    public void setSpeculativeFallback(boolean speculativeFallback) {
+        this.speculativeFallback = speculativeFallback;
+    }
+
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(Duration deadline) {
+        this.deadline = deadline;
+    }
+}
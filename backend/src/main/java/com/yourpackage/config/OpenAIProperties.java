@@ -0,0 +1,18 @@
+package com.yourpackage.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "helpstudy.openai")
+public class OpenAIProperties {
+
+    // Point at a local stand-in (see src/loadtest) to run without OpenAI
+    private String baseUrl = "https://api.openai.com";
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+}
@@ -0,0 +1,87 @@
+package com.yourpackage.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Concurrency and connection settings for requests to OpenAI.
+ */
+@ConfigurationProperties(prefix = "helpstudy.outbound")
+public class OutboundProperties {
+
+    // Requests to OpenAI in flight at once, streams included; the rest wait in priority order
+    private int maxInFlight = 32;
+
+    // Waiting interactive requests (questions, guides, evaluations) before new ones are refused
+    private int maxQueued = 256;
+
+    // Waiting background requests (question pool refills) before new ones are refused
+    private int maxBackgroundQueued = 32;
+
+    // Requests still waiting after this long are failed rather than sent
+    private Duration maxQueueWait = Duration.ofSeconds(30);
+
+    // Negotiate HTTP/2 so concurrent requests share connections; false forces HTTP/1.1
+    private boolean http2 = true;
+
+    // Idle keep-alive connections kept open to OpenAI, and for how long
+    private int maxIdleConnections = 16;
+    private Duration keepAlive = Duration.ofMinutes(5);
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    public int getMaxBackgroundQueued() {
+        return maxBackgroundQueued;
+    }
+
+    public void setMaxBackgroundQueued(int maxBackgroundQueued) {
+        this.maxBackgroundQueued = maxBackgroundQueued;
+    }
+
+    public Duration getMaxQueueWait() {
+        return maxQueueWait;
+    }
+
+    public void setMaxQueueWait(Duration maxQueueWait) {
+        this.maxQueueWait = maxQueueWait;
+    }
+
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    public void setHttp2(boolean http2) {
+        this.http2 = http2;
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public void setMaxIdleConnections(int maxIdleConnections) {
+        this.maxIdleConnections = maxIdleConnections;
+    }
+
+    public Duration getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(Duration keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+}
@@ -0,0 +1,120 @@
+package com.yourpackage.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "helpstudy.pool")
+public class QuestionPoolProperties {
+
+    private boolean enabled = true;
+
+    // Questions kept ready per (subject, type) once a key has been requested
+    private int targetDepth = 5;
+
+    // Refill is triggered as soon as a pool drops below this many questions
+    private int lowWaterMark = 2;
+
+    // Maximum number of background generations in flight across all pools
+    private int refillConcurrency = 2;
+
+    // Pooled questions older than this are discarded instead of served
+    private Duration maxAge = Duration.ofHours(6);
+
+    private Duration refillInterval = Duration.ofSeconds(15);
+
+    // Upper bound on distinct (subject, type) keys, since subjects are free text
+    private int maxKeys = 64;
+
+    // Keys nobody has asked for within this window stop being refilled
+    private Duration keyIdleTimeout = Duration.ofMinutes(30);
+
+    // Requests for a key, within its idle timeout, before it is worth pre-generating for;
+    // a one-off spelling of a subject should not cost a pool's worth of completions
+    private int minDemand = 3;
+
+    // Subjects pooled from their first request, e.g. the AP courses the frontend offers
+    private List<String> warmSubjects = new ArrayList<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getTargetDepth() {
+        return targetDepth;
+    }
+
+    public void setTargetDepth(int targetDepth) {
+        this.targetDepth = targetDepth;
+    }
+
+    public int getLowWaterMark() {
+        return lowWaterMark;
+    }
+
+    public void setLowWaterMark(int lowWaterMark) {
+        this.lowWaterMark = lowWaterMark;
+    }
+
+    public int getRefillConcurrency() {
+        return refillConcurrency;
+    }
+
+    public void setRefillConcurrency(int refillConcurrency) {
+        this.refillConcurrency = refillConcurrency;
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    public void setMaxAge(Duration maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public Duration getRefillInterval() {
+        return refillInterval;
+    }
+
+    public void setRefillInterval(Duration refillInterval) {
+        this.refillInterval = refillInterval;
+    }
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    public void setMaxKeys(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    public Duration getKeyIdleTimeout() {
+        return keyIdleTimeout;
+    }
+
+    public void setKeyIdleTimeout(Duration keyIdleTimeout) {
+        this.keyIdleTimeout = keyIdleTimeout;
+    }
+
+    public int getMinDemand() {
+        return minDemand;
+    }
+
+    public void setMinDemand(int minDemand) {
+        this.minDemand = minDemand;
+    }
+
+    public List<String> getWarmSubjects() {
+        return warmSubjects;
+    }
+
+    public void setWarmSubjects(List<String> warmSubjects) {
+        this.warmSubjects = warmSubjects;
+    }
+}
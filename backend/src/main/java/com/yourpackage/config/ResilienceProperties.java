@@ -0,0 +1,180 @@
+package com.yourpackage.config;
+
+import com.yourpackage.service.CallSite;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Deadlines, retries, hedging and circuit breaking for calls to the model.
+ * {@code defaults} applies to every call site without its own entry under
+ * {@code sites}; a site entry starts from the built-in values below, not from
+ * the configured defaults.
+ */
+@ConfigurationProperties(prefix = "helpstudy.resilience")
+public class ResilienceProperties {
+
+    private boolean enabled = true;
+
+    private Policy defaults = new Policy();
+
+    private Map<CallSite, Policy> sites = new EnumMap<>(CallSite.class);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Policy getDefaults() {
+        return defaults;
+    }
+
+    public void setDefaults(Policy defaults) {
+        this.defaults = defaults;
+    }
+
+    public Map<CallSite, Policy> getSites() {
+        return sites;
+    }
+
+    public void setSites(Map<CallSite, Policy> sites) {
+        this.sites = sites;
+    }
+
+    public Policy policyFor(CallSite site) {
+        return sites.getOrDefault(site, defaults);
+    }
+
+    public static class Policy {
+
+        // Overall budget for one logical call, across retries and hedges
+        private Duration deadline = Duration.ofSeconds(60);
+
+        // Total attempts, including the first, for 429/5xx/network failures
+        private int maxAttempts = 3;
+
+        private Duration initialBackoff = Duration.ofMillis(500);
+
+        private Duration maxBackoff = Duration.ofSeconds(8);
+
+        // Fire a duplicate request when the first is slower than this latency percentile
+        private boolean hedge = false;
+
+        private double hedgePercentile = 0.95;
+
+        private Duration hedgeMinDelay = Duration.ofSeconds(1);
+
+        // Circuit breaker: open when this fraction of the last sliding-window-size calls failed
+        private double failureRateThreshold = 0.5;
+
+        private int minimumCalls = 10;
+
+        private int slidingWindowSize = 20;
+
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        // Trial calls allowed while half-open; all must succeed to close again
+        private int halfOpenProbes = 2;
+
+        public Duration getDeadline() {
+            return deadline;
+        }
+
+        public void setDeadline(Duration deadline) {
+            this.deadline = deadline;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+
+        public boolean isHedge() {
+            return hedge;
+        }
+
+        public void setHedge(boolean hedge) {
+            this.hedge = hedge;
+        }
+
+        public double getHedgePercentile() {
+            return hedgePercentile;
+        }
+
+        public void setHedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+        }
+
+        public Duration getHedgeMinDelay() {
+            return hedgeMinDelay;
+        }
+
+        public void setHedgeMinDelay(Duration hedgeMinDelay) {
+            this.hedgeMinDelay = hedgeMinDelay;
+        }
+
+        public double getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public int getSlidingWindowSize() {
+            return slidingWindowSize;
+        }
+
+        public void setSlidingWindowSize(int slidingWindowSize) {
+            this.slidingWindowSize = slidingWindowSize;
+        }
+
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+
+        public int getHalfOpenProbes() {
+            return halfOpenProbes;
+        }
+
+        public void setHalfOpenProbes(int halfOpenProbes) {
+            this.halfOpenProbes = halfOpenProbes;
+        }
+    }
+}
@@ -20,6 +20,8 @@ import java.util.Arrays;
 @EnableMethodSecurity
 public class SecurityConfig {
 
+    public static final String[] PUBLIC_ENDPOINTS = {"/api/health", "/actuator/health", "/livez", "/readyz"};
+
     private final FirebaseAuthenticationFilter firebaseAuthenticationFilter;
 
     public SecurityConfig(FirebaseAuthenticationFilter firebaseAuthenticationFilter) {
@@ -34,8 +36,7 @@ public class SecurityConfig {
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(authz -> authz
                 // Public endpoints
-                .requestMatchers("/api/health").permitAll()
-                .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers(PUBLIC_ENDPOINTS).permitAll()
                 // In development mode, allow all requests
                 .requestMatchers("/api/**").permitAll()
                 .anyRequest().permitAll()
@@ -0,0 +1,137 @@
+package com.yourpackage.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "helpstudy.budget")
+public class TokenBudgetProperties {
+
+    private boolean enabled = true;
+
+    // Budgets are sliding windows of this length, tracked in this many slices
+    private Duration window = Duration.ofHours(1);
+    private int slices = 60;
+
+    // Prompt plus completion tokens per window
+    private long perUserTokens = 200_000L;
+    private long globalTokens = 10_000_000L;
+
+    // Background work (pool refills) stops once the global window is this full
+    private double backgroundShare = 0.8;
+
+    // Users with their own window; anyone beyond shares one overflow window
+    private int maxUsers = 10_000;
+
+    // Estimated tokens per request, reserved at admission until the call completes
+    private long multipleChoiceEstimate = 2_500L;
+    private long mathEstimate = 6_000L;
+    private long freeResponseEstimate = 12_000L;
+    private long batchQuestionEstimate = 1_200L;
+    private long guideEstimate = 1_500L;
+    private long evaluationEstimate = 3_000L;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public void setWindow(Duration window) {
+        this.window = window;
+    }
+
+    public int getSlices() {
+        return slices;
+    }
+
+    public void setSlices(int slices) {
+        this.slices = slices;
+    }
+
+    public long getPerUserTokens() {
+        return perUserTokens;
+    }
+
+    public void setPerUserTokens(long perUserTokens) {
+        this.perUserTokens = perUserTokens;
+    }
+
+    public long getGlobalTokens() {
+        return globalTokens;
+    }
+
+    public void setGlobalTokens(long globalTokens) {
+        this.globalTokens = globalTokens;
+    }
+
+    public double getBackgroundShare() {
+        return backgroundShare;
+    }
+
+    public void setBackgroundShare(double backgroundShare) {
+        this.backgroundShare = backgroundShare;
+    }
+
+    public int getMaxUsers() {
+        return maxUsers;
+    }
+
+    public void setMaxUsers(int maxUsers) {
+        this.maxUsers = maxUsers;
+    }
+
+    public long getMultipleChoiceEstimate() {
+        return multipleChoiceEstimate;
+    }
+
+    public void setMultipleChoiceEstimate(long multipleChoiceEstimate) {
+        this.multipleChoiceEstimate = multipleChoiceEstimate;
+    }
+
+    public long getMathEstimate() {
+        return mathEstimate;
+    }
+
+    public void setMathEstimate(long mathEstimate) {
+        this.mathEstimate = mathEstimate;
+    }
+
+    public long getFreeResponseEstimate() {
+        return freeResponseEstimate;
+    }
+
+    public void setFreeResponseEstimate(long freeResponseEstimate) {
+        this.freeResponseEstimate = freeResponseEstimate;
+    }
+
+    public long getBatchQuestionEstimate() {
+        return batchQuestionEstimate;
+    }
+
+    public void setBatchQuestionEstimate(long batchQuestionEstimate) {
+        this.batchQuestionEstimate = batchQuestionEstimate;
+    }
+
+    public long getGuideEstimate() {
+        return guideEstimate;
+    }
+
+    public void setGuideEstimate(long guideEstimate) {
+        this.guideEstimate = guideEstimate;
+    }
+
+    public long getEvaluationEstimate() {
+        return evaluationEstimate;
+    }
+
+    public void setEvaluationEstimate(long evaluationEstimate) {
+        this.evaluationEstimate = evaluationEstimate;
+    }
+}
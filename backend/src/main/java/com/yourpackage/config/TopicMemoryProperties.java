@@ -0,0 +1,94 @@
+package com.yourpackage.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "helpstudy.memory")
+public class TopicMemoryProperties {
+
+    // Recent topics remembered per (user, subject); older ones are overwritten
+    private int perSubjectCapacity = 5;
+
+    // Least recently used subjects of a user are forgotten beyond this
+    private int maxSubjectsPerUser = 16;
+
+    private int maxUsers = 10_000;
+
+    // Global ceiling on (user, subject) entries, each roughly 250 bytes with its topics
+    private int maxEntries = 50_000;
+
+    // Coverage of a topic counts half as much after this long
+    private Duration coverageHalfLife = Duration.ofDays(7);
+
+    // Bounds on the coverage index; least recently used subjects and least covered topics go first
+    private int coverageMaxSubjects = 256;
+    private int coverageMaxTopicsPerSubject = 512;
+
+    // Under-covered topics suggested in each prompt (0 disables)
+    private int suggestedTopics = 2;
+
+    public int getPerSubjectCapacity() {
+        return perSubjectCapacity;
+    }
+
+    public void setPerSubjectCapacity(int perSubjectCapacity) {
+        this.perSubjectCapacity = perSubjectCapacity;
+    }
+
+    public int getMaxSubjectsPerUser() {
+        return maxSubjectsPerUser;
+    }
+
+    public void setMaxSubjectsPerUser(int maxSubjectsPerUser) {
+        this.maxSubjectsPerUser = maxSubjectsPerUser;
+    }
+
+    public int getMaxUsers() {
+        return maxUsers;
+    }
+
+    public void setMaxUsers(int maxUsers) {
+        this.maxUsers = maxUsers;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public Duration getCoverageHalfLife() {
+        return coverageHalfLife;
+    }
+
+    public void setCoverageHalfLife(Duration coverageHalfLife) {
+        this.coverageHalfLife = coverageHalfLife;
+    }
+
+    public int getCoverageMaxSubjects() {
+        return coverageMaxSubjects;
+    }
+
+    public void setCoverageMaxSubjects(int coverageMaxSubjects) {
+        this.coverageMaxSubjects = coverageMaxSubjects;
+    }
+
+    public int getCoverageMaxTopicsPerSubject() {
+        return coverageMaxTopicsPerSubject;
+    }
+
+    public void setCoverageMaxTopicsPerSubject(int coverageMaxTopicsPerSubject) {
+        this.coverageMaxTopicsPerSubject = coverageMaxTopicsPerSubject;
+    }
+
+    public int getSuggestedTopics() {
+        return suggestedTopics;
+    }
+
+    public void setSuggestedTopics(int suggestedTopics) {
+        this.suggestedTopics = suggestedTopics;
+    }
+}
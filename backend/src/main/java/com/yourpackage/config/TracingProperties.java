@@ -0,0 +1,74 @@
+package com.yourpackage.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "helpstudy.tracing")
+public class TracingProperties {
+
+    private boolean enabled = true;
+
+    // Fraction of requests whose trace (with response details) is logged; failed ones always are
+    private double sampleRate = 0.01;
+
+    // Requests slower than this are logged too, without details
+    private Duration slowThreshold = Duration.ofSeconds(10);
+
+    // Per-stage durations in a Server-Timing response header
+    private boolean serverTiming = true;
+
+    // Spans kept per request; later ones are only counted
+    private int maxSpans = 64;
+
+    // Each detail (e.g. a raw model response) is cut to this many characters in the log
+    private int maxDetailChars = 4000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public Duration getSlowThreshold() {
+        return slowThreshold;
+    }
+
+    public void setSlowThreshold(Duration slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    public boolean isServerTiming() {
+        return serverTiming;
+    }
+
+    public void setServerTiming(boolean serverTiming) {
+        this.serverTiming = serverTiming;
+    }
+
+    public int getMaxSpans() {
+        return maxSpans;
+    }
+
+    public void setMaxSpans(int maxSpans) {
+        this.maxSpans = maxSpans;
+    }
+
+    public int getMaxDetailChars() {
+        return maxDetailChars;
+    }
+
+    public void setMaxDetailChars(int maxDetailChars) {
+        this.maxDetailChars = maxDetailChars;
+    }
+}
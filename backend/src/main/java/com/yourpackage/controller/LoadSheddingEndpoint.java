@@ -0,0 +1,50 @@
+package com.yourpackage.controller;
+
+import com.yourpackage.service.LoadSheddingService;
+import com.yourpackage.service.OperationClass;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Runtime view and tuning of the per-operation bulkheads, e.g.
+ * {@code POST /actuator/loadshedding/evaluation {"maxLimit": 8}}. Not exposed
+ * over HTTP by default, since the API has no admin role to restrict it to; add
+ * it to {@code management.endpoints.web.exposure.include} where the management
+ * port is private.
+ */
+@Component
+@Endpoint(id = "loadshedding")
+public class LoadSheddingEndpoint {
+
+    private final LoadSheddingService loadShedding;
+
+    public LoadSheddingEndpoint(LoadSheddingService loadShedding) {
+        this.loadShedding = loadShedding;
+    }
+
+    @ReadOperation
+    public Map<String, Object> limits() {
+        return loadShedding.stats();
+    }
+
+    @WriteOperation
+    public Map<String, Object> tune(@Selector String operation, @Nullable Integer limit, @Nullable Integer minLimit,
+                                    @Nullable Integer maxLimit, @Nullable Integer maxQueued,
+                                    @Nullable Boolean adaptive, @Nullable Long latencyThresholdMillis) {
+        OperationClass operationClass;
+        try {
+            operationClass = OperationClass.fromTag(operation);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), "unknown operation class");
+        }
+        return loadShedding.tune(operationClass, limit, minLimit, maxLimit, maxQueued, adaptive,
+                latencyThresholdMillis);
+    }
+}
@@ -1,18 +1,43 @@
 package com.yourpackage.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import com.yourpackage.model.HistoryEvaluation;
+import com.yourpackage.dto.HistoryPage;
+import com.yourpackage.dto.BatchQuestionRequest;
 import com.yourpackage.dto.QuestionRequest;
 import com.yourpackage.security.FirebaseUserPrincipal;
 import com.yourpackage.service.RateLimitingService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.security.core.Authentication;
 import com.yourpackage.service.OpenAIService;
 import com.yourpackage.service.PromptMemoryService;
+import com.yourpackage.service.LoadSheddingService;
+import com.yourpackage.service.OperationClass;
+import com.yourpackage.service.OverloadedException;
+import com.yourpackage.service.QuestionHistoryService;
+import com.yourpackage.service.StudyGuideCache;
+import com.yourpackage.service.TokenBudgetService;
+import com.yourpackage.service.UpstreamUnavailableException;
+import com.yourpackage.service.QuestionPoolService;
+import com.yourpackage.tracing.RequestTrace;
 import com.yourpackage.model.FreeResponseEvaluation;
 import com.yourpackage.model.EvaluationRequest;
+import com.yourpackage.model.Question;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
@@ -25,124 +50,392 @@ import org.slf4j.LoggerFactory;
 @Validated
 public class QuestionController {
     private static final Logger logger = LoggerFactory.getLogger(QuestionController.class);
+    private static final long STREAM_TIMEOUT_MILLIS = 180_000L;
     
     private final OpenAIService openAIService;
     private final PromptMemoryService memoryService;
     private final RateLimitingService rateLimitingService;
+    private final QuestionPoolService questionPoolService;
+    private final QuestionHistoryService historyService;
+    private final StudyGuideCache guideCache;
+    private final TokenBudgetService tokenBudget;
+    private final LoadSheddingService loadShedding;
+    private final TaskExecutor streamingExecutor;
 
     public QuestionController(OpenAIService openAIService, PromptMemoryService memoryService, 
-                             RateLimitingService rateLimitingService) {
+                             RateLimitingService rateLimitingService, QuestionPoolService questionPoolService,
+                             QuestionHistoryService historyService, StudyGuideCache guideCache,
+                             TokenBudgetService tokenBudget,
+                             LoadSheddingService loadShedding,
+                             @Qualifier("streamingExecutor") TaskExecutor streamingExecutor) {
         this.openAIService = openAIService;
         this.memoryService = memoryService;
         this.rateLimitingService = rateLimitingService;
+        this.questionPoolService = questionPoolService;
+        this.historyService = historyService;
+        this.guideCache = guideCache;
+        this.tokenBudget = tokenBudget;
+        this.loadShedding = loadShedding;
+        this.streamingExecutor = streamingExecutor;
     }
 
+    /**
+     * Plain text view of {@link #generateQuestionV2}, kept for existing clients:
+     * the stem followed by lettered options, the correct one marked {@code ***}.
+     */
     @GetMapping("/question/{subject}")
-    public ResponseEntity<?> generateQuestion(
+    public CompletableFuture<ResponseEntity<?>> generateQuestion(
             @PathVariable @Size(min = 2, max = 100) @Pattern(regexp = "^.+$") String subject,
             @RequestParam(required = false, defaultValue = "multiple-choice") 
             @Pattern(regexp = "^(multiple-choice|free-response)$") String type,
             Authentication authentication) {
-        
-        logger.info("Received request for subject: '{}' (length: {}) type: '{}'", subject, subject.length(), type);
+        return respondWithQuestion(subject, type, authentication, Question::toText);
+    }
+
+    /**
+     * Returns the question as JSON: stem, options in display order, index of the
+     * correct option, topic, subject and generation metadata.
+     */
+    @GetMapping("/v2/question/{subject}")
+    public CompletableFuture<ResponseEntity<?>> generateQuestionV2(
+            @PathVariable @Size(min = 2, max = 100) @Pattern(regexp = "^.+$") String subject,
+            @RequestParam(required = false, defaultValue = "multiple-choice") 
+            @Pattern(regexp = "^(multiple-choice|free-response)$") String type,
+            Authentication authentication) {
+        return respondWithQuestion(subject, type, authentication, Function.identity());
+    }
+
+    private CompletableFuture<ResponseEntity<?>> respondWithQuestion(String subject, String type,
+                                                                     Authentication authentication,
+                                                                     Function<Question, ?> view) {
+        logger.debug("Received request for subject: '{}' (length: {}) type: '{}'", subject, subject.length(), type);
         
         String userId = getUserId(authentication);
         
         // Rate limiting check
-        if (!rateLimitingService.isQuestionRequestAllowed(userId)) {
-            logger.warn("Rate limit exceeded for user: {}", userId);
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .body(Map.of("error", "Rate limit exceeded. Please try again later."));
+        RateLimitingService.Decision decision = rateLimitingService.checkQuestionRequest(userId);
+        if (!decision.allowed()) {
+            logger.debug("Rate limit exceeded for user: {}", userId);
+            return CompletableFuture.completedFuture(
+                tooManyRequests(decision, "Rate limit exceeded. Please try again later."));
         }
         
-        try {
-            String prompt = getPromptForSubject(subject, type);
-            String question = openAIService.generateQuestion(prompt, type, subject);
-            
-            logger.info("Generated question for user: {} subject: {} type: {}", userId, subject, type);
-            return ResponseEntity.ok(question);
-            
-        } catch (Exception e) {
+        // Serve from the warm pool when possible, otherwise generate without holding this thread
+        Optional<Question> pooled = questionPoolService.take(subject, type);
+        TokenBudgetService.Admission admission = pooled.isPresent()
+                ? TokenBudgetService.Admission.NONE
+                : tokenBudget.admit(userId, tokenBudget.estimateQuestion(type, subject));
+        if (!admission.admitted()) {
+            return CompletableFuture.completedFuture(budgetExceeded(admission, userId));
+        }
+        CompletableFuture<Question> question = pooled.isPresent()
+                ? CompletableFuture.completedFuture(pooled.get())
+                : loadShedding.submit(OperationClass.QUESTION,
+                                () -> openAIService.generateQuestion(userId, getPromptForSubject(subject, type), type, subject))
+                        .whenComplete((generated, error) -> admission.release());
+        
+        return question.<ResponseEntity<?>>thenApply(generated -> {
+            if (pooled.isPresent()) {
+                memoryService.recordTopic(userId, subject, generated.getTopic());
+            }
+            historyService.record(userId, generated.toText(), false);
+            logger.debug("Generated question for user: {} subject: {} type: {} pooled: {}", 
+                       userId, subject, type, pooled.isPresent());
+            return ResponseEntity.ok(view.apply(generated));
+        }).exceptionally(e -> {
             logger.error("Error generating question for user: {} subject: {}", userId, subject, e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(Map.of("error", "Failed to generate question"));
+            return generationFailed(e, "Failed to generate question");
+        });
+    }
+
+    /**
+     * SSE variant of {@link #generateQuestion}. Emits {@code token} events with the
+     * question text as it is generated, an {@code options} event with the shuffled
+     * multiple choice options, and a final {@code done} event with the complete
+     * question (or {@code error} if generation failed).
+     */
+    @GetMapping(value = "/question/{subject}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamQuestion(
+            @PathVariable @Size(min = 2, max = 100) @Pattern(regexp = "^.+$") String subject,
+            @RequestParam(required = false, defaultValue = "multiple-choice") 
+            @Pattern(regexp = "^(multiple-choice|free-response)$") String type,
+            Authentication authentication) {
+        
+        logger.debug("Received streaming request for subject: '{}' type: '{}'", subject, type);
+        
+        String userId = getUserId(authentication);
+        
+        RateLimitingService.Decision decision = rateLimitingService.checkQuestionRequest(userId);
+        if (!decision.allowed()) {
+            logger.debug("Rate limit exceeded for user: {}", userId);
+            throw new RateLimitExceededException(decision, "Rate limit exceeded. Please try again later.");
+        }
+        
+        Optional<Question> pooled = questionPoolService.take(subject, type);
+        TokenBudgetService.Admission admission = pooled.isPresent()
+                ? TokenBudgetService.Admission.NONE
+                : tokenBudget.admit(userId, tokenBudget.estimateQuestion(type, subject));
+        if (!admission.admitted()) {
+            throw budgetExceededException(admission, userId);
+        }
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MILLIS);
+        
+        Runnable stream = () -> {
+            try {
+                Question question = pooled.isPresent()
+                        ? pooled.get()
+                        : openAIService.streamQuestion(userId, type, subject,
+                                token -> sendEvent(emitter, "token", token),
+                                options -> sendEvent(emitter, "options", options));
+                if (pooled.isPresent()) {
+                    memoryService.recordTopic(userId, subject, question.getTopic());
+                }
+                String text = question.toText();
+                historyService.record(userId, text, false);
+                
+                sendEvent(emitter, "done", text);
+                emitter.complete();
+                logger.debug("Streamed question for user: {} subject: {} type: {} pooled: {}", 
+                           userId, subject, type, pooled.isPresent());
+                
+            } catch (Exception e) {
+                logger.error("Error streaming question for user: {} subject: {}", userId, subject, e);
+                failStream(emitter, "Failed to generate question");
+            }
+        };
+        if (pooled.isPresent()) {
+            startStream(emitter, admission, () -> runStream(stream));
+        } else {
+            startStream(emitter, admission, () -> loadShedding.submit(OperationClass.QUESTION, () -> runStream(stream)));
         }
+        return emitter;
     }
 
     @GetMapping("/guide")
-    public ResponseEntity<?> generateGuide(
+    public CompletableFuture<ResponseEntity<?>> generateGuide(
             @RequestParam("subject") @Size(min = 2, max = 100) 
             @Pattern(regexp = "^.+$") String subject,
             Authentication authentication) {
         
-        logger.info("Received guide request for subject: '{}' (length: {})", subject, subject.length());
+        logger.debug("Received guide request for subject: '{}' (length: {})", subject, subject.length());
         
         String userId = getUserId(authentication);
         
         // Use question rate limit for guides as well
-        if (!rateLimitingService.isQuestionRequestAllowed(userId)) {
-            logger.warn("Rate limit exceeded for guide request, user: {}", userId);
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .body(Map.of("error", "Rate limit exceeded. Please try again later."));
+        RateLimitingService.Decision decision = rateLimitingService.checkQuestionRequest(userId);
+        if (!decision.allowed()) {
+            logger.debug("Rate limit exceeded for guide request, user: {}", userId);
+            return CompletableFuture.completedFuture(
+                tooManyRequests(decision, "Rate limit exceeded. Please try again later."));
         }
         
-        try {
-            String prompt = getPromptForGuide(subject);
-            String guide = openAIService.generateGuide(prompt);
-            
-            logger.info("Generated guide for user: {} subject: {}", userId, subject);
-            return ResponseEntity.ok(guide);
-            
-        } catch (Exception e) {
+        // A cached (or already generating) guide costs nothing; only a miss needs budget
+        Optional<CompletableFuture<String>> cached = guideCache.getIfPresent(subject);
+        if (cached.isPresent()) {
+            return respondWithGuide(cached.get(), userId, subject);
+        }
+        TokenBudgetService.Admission admission = tokenBudget.admit(userId, tokenBudget.estimateGuide());
+        if (!admission.admitted()) {
+            return CompletableFuture.completedFuture(budgetExceeded(admission, userId));
+        }
+        CompletableFuture<String> guide = loadShedding.submit(OperationClass.GUIDE, () -> guideCache.get(subject,
+                () -> openAIService.generateGuide(userId, getPromptForGuide(subject))));
+        return respondWithGuide(guide.whenComplete((text, error) -> admission.release()), userId, subject);
+    }
+
+    private CompletableFuture<ResponseEntity<?>> respondWithGuide(CompletableFuture<String> guide,
+                                                                  String userId, String subject) {
+        return guide.<ResponseEntity<?>>thenApply(text -> {
+            logger.debug("Generated guide for user: {} subject: {}", userId, subject);
+            return ResponseEntity.ok(text);
+        }).exceptionally(e -> {
             logger.error("Error generating guide for user: {} subject: {}", userId, subject, e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(Map.of("error", "Failed to generate guide"));
+            return generationFailed(e, "Failed to generate guide");
+        });
+    }
+
+    /**
+     * SSE variant of {@link #generateGuide}. Emits {@code token} events as the guide
+     * is generated and a final {@code done} event with the full text.
+     */
+    @GetMapping(value = "/guide/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamGuide(
+            @RequestParam("subject") @Size(min = 2, max = 100) 
+            @Pattern(regexp = "^.+$") String subject,
+            Authentication authentication) {
+        
+        logger.debug("Received streaming guide request for subject: '{}'", subject);
+        
+        String userId = getUserId(authentication);
+        
+        RateLimitingService.Decision decision = rateLimitingService.checkQuestionRequest(userId);
+        if (!decision.allowed()) {
+            logger.debug("Rate limit exceeded for guide request, user: {}", userId);
+            throw new RateLimitExceededException(decision, "Rate limit exceeded. Please try again later.");
+        }
+        
+        // A cached (or already generating) guide is sent whole instead of streamed again
+        Optional<CompletableFuture<String>> cached = guideCache.getIfPresent(subject);
+        TokenBudgetService.Admission admission = cached.isPresent()
+                ? TokenBudgetService.Admission.NONE
+                : tokenBudget.admit(userId, tokenBudget.estimateGuide());
+        if (!admission.admitted()) {
+            throw budgetExceededException(admission, userId);
+        }
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MILLIS);
+        
+        Runnable stream = () -> {
+            try {
+                String guide;
+                if (cached.isPresent()) {
+                    guide = cached.get().join();
+                } else {
+                    guide = openAIService.streamGuide(userId, getPromptForGuide(subject),
+                            token -> sendEvent(emitter, "token", token));
+                    guideCache.put(subject, guide);
+                }
+                
+                sendEvent(emitter, "done", guide);
+                emitter.complete();
+                logger.debug("Streamed guide for user: {} subject: {}", userId, subject);
+                
+            } catch (Exception e) {
+                logger.error("Error streaming guide for user: {} subject: {}", userId, subject, e);
+                failStream(emitter, "Failed to generate guide");
+            }
+        };
+        if (cached.isPresent()) {
+            startStream(emitter, admission, () -> runStream(stream));
+        } else {
+            startStream(emitter, admission, () -> loadShedding.submit(OperationClass.GUIDE, () -> runStream(stream)));
+        }
+        return emitter;
+    }
+
+    /**
+     * Generates a practice set of multiple choice questions with one model call.
+     * Emits a {@code question} event per question as soon as it has been parsed,
+     * validated and shuffled, then {@code done} with the number delivered. The
+     * rate limit is charged for every question requested.
+     */
+    @PostMapping(value = "/questions/batch", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamQuestionBatch(@Valid @RequestBody BatchQuestionRequest request,
+                                          Authentication authentication) {
+        return streamBatch(request, authentication, Question::toText);
+    }
+
+    /**
+     * Same as {@link #streamQuestionBatch} but each {@code question} event carries
+     * the question as JSON, as returned by {@link #generateQuestionV2}.
+     */
+    @PostMapping(value = "/v2/questions/batch", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamQuestionBatchV2(@Valid @RequestBody BatchQuestionRequest request,
+                                            Authentication authentication) {
+        return streamBatch(request, authentication, Function.identity());
+    }
+
+    private SseEmitter streamBatch(BatchQuestionRequest request, Authentication authentication,
+                                   Function<Question, ?> view) {
+        String subject = request.getSubject();
+        int count = request.getCount();
+        logger.debug("Received batch request for subject: '{}' count: {}", subject, count);
+        
+        String userId = getUserId(authentication);
+        
+        RateLimitingService.Decision decision = rateLimitingService.checkQuestionRequest(userId, count);
+        if (!decision.allowed()) {
+            logger.debug("Rate limit exceeded for batch request, user: {}", userId);
+            throw new RateLimitExceededException(decision, "Rate limit exceeded. Please try again later.");
+        }
+        
+        TokenBudgetService.Admission admission = tokenBudget.admit(userId, tokenBudget.estimateBatch(count));
+        if (!admission.admitted()) {
+            throw budgetExceededException(admission, userId);
         }
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MILLIS);
+        
+        Runnable stream = () -> {
+            try {
+                List<Question> questions = openAIService.streamQuestionBatch(userId, subject, count, question -> {
+                    historyService.record(userId, question.toText(), false);
+                    sendEvent(emitter, "question", view.apply(question));
+                });
+                
+                sendEvent(emitter, "done", String.valueOf(questions.size()));
+                emitter.complete();
+                logger.debug("Streamed batch of {} questions for user: {} subject: {}", questions.size(), userId, subject);
+                
+            } catch (Exception e) {
+                logger.error("Error streaming batch for user: {} subject: {}", userId, subject, e);
+                failStream(emitter, "Failed to generate questions");
+            }
+        };
+        startStream(emitter, admission, () -> loadShedding.submit(OperationClass.BATCH, () -> runStream(stream)));
+        return emitter;
     }
 
     @GetMapping("/question-history")
-    public List<HistoryEvaluation> getQuestionHistory() {
-        return HistoryEvaluation.getTotal();
+    public ResponseEntity<HistoryPage> getQuestionHistory(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(required = false, defaultValue = "20") int limit,
+            Authentication authentication) {
+        
+        String userId = getUserId(authentication);
+        return ResponseEntity.ok(shed(OperationClass.USER_DATA, () -> historyService.page(userId, cursor, limit)));
     }
 
     @PostMapping("/submit-evaluation")
     public ResponseEntity<HistoryEvaluation> submitEvaluation(
             @RequestParam("prompt") String prompt,
-            @RequestParam("correct") boolean correct
+            @RequestParam("correct") boolean correct,
+            Authentication authentication
     ) {
-        HistoryEvaluation evaluation = new HistoryEvaluation(prompt, correct);
+        String userId = getUserId(authentication);
+        HistoryEvaluation evaluation = shed(OperationClass.USER_DATA, () -> historyService.record(userId, prompt, correct));
         return ResponseEntity.ok(evaluation);
     }
 
     @PostMapping("/evaluate")
-    public ResponseEntity<?> evaluateResponse(@Valid @RequestBody EvaluationRequest request,
+    public CompletableFuture<ResponseEntity<?>> evaluateResponse(@Valid @RequestBody EvaluationRequest request,
                                              Authentication authentication) {
         
         String userId = getUserId(authentication);
         
+        // Resubmissions of an already evaluated answer are served from cache: they cost nothing upstream,
+        // so they skip the rate limit, the token budget and the evaluation bulkhead
+        CompletableFuture<FreeResponseEvaluation> cached = openAIService.cachedEvaluation(
+                request.getSubject(), request.getQuestion(), request.getResponse());
+        if (cached != null) {
+            return cached.<ResponseEntity<?>>thenApply(ResponseEntity::ok);
+        }
+        
         // Rate limiting check for evaluations
-        if (!rateLimitingService.isEvaluationRequestAllowed(userId)) {
-            logger.warn("Evaluation rate limit exceeded for user: {}", userId);
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .body(Map.of("error", "Evaluation rate limit exceeded. Please try again later."));
+        RateLimitingService.Decision decision = rateLimitingService.checkEvaluationRequest(userId);
+        if (!decision.allowed()) {
+            logger.debug("Evaluation rate limit exceeded for user: {}", userId);
+            return CompletableFuture.completedFuture(
+                tooManyRequests(decision, "Evaluation rate limit exceeded. Please try again later."));
+        }
+        TokenBudgetService.Admission reserved = tokenBudget.admit(userId, tokenBudget.estimateEvaluation());
+        if (!reserved.admitted()) {
+            return CompletableFuture.completedFuture(budgetExceeded(reserved, userId));
         }
         
-        try {
-            FreeResponseEvaluation evaluation = openAIService.evaluateFreeResponse(
-                    request.getSubject(),
-                    request.getQuestion(),
-                    request.getResponse()
-            );
-            
-            logger.info("Evaluated response for user: {} subject: {}", userId, request.getSubject());
-            return ResponseEntity.ok(evaluation);
-            
-        } catch (Exception e) {
+        CompletableFuture<FreeResponseEvaluation> evaluation = loadShedding.submit(OperationClass.EVALUATION,
+                () -> openAIService.evaluateFreeResponse(
+                        userId,
+                        request.getSubject(),
+                        request.getQuestion(),
+                        request.getResponse()
+                ));
+        return evaluation.whenComplete((result, error) -> reserved.release()).<ResponseEntity<?>>thenApply(result -> {
+            logger.debug("Evaluated response for user: {} subject: {}", userId, request.getSubject());
+            return ResponseEntity.ok(result);
+        }).exceptionally(e -> {
             logger.error("Error evaluating response for user: {} subject: {}", 
                         userId, request.getSubject(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(Map.of("error", "Failed to evaluate response"));
-        }
+            return generationFailed(e, "Failed to evaluate response");
+        });
     }
 
     @GetMapping("/memory/{subject}")
@@ -153,8 +446,12 @@ public class QuestionController {
         
         String userId = getUserId(authentication);
         
+        return shed(OperationClass.USER_DATA, () -> subjectMemory(userId, subject));
+    }
+
+    private ResponseEntity<List<String>> subjectMemory(String userId, String subject) {
         try {
-            List<String> recentTopics = memoryService.getRecentTopics(subject);
+            List<String> recentTopics = memoryService.getRecentTopics(userId, subject);
             logger.debug("Retrieved memory for user: {} subject: {}", userId, subject);
             return ResponseEntity.ok(recentTopics);
             
@@ -165,8 +462,9 @@ public class QuestionController {
     }
 
     @GetMapping("/memory")
-    public ResponseEntity<Map<String, List<String>>> getAllMemory() {
-        Map<String, List<String>> allTopics = memoryService.getAllTopics();
+    public ResponseEntity<Map<String, List<String>>> getAllMemory(Authentication authentication) {
+        String userId = getUserId(authentication);
+        Map<String, List<String>> allTopics = shed(OperationClass.USER_DATA, () -> memoryService.getAllTopics(userId));
         return ResponseEntity.ok(allTopics);
     }
 
@@ -178,8 +476,12 @@ public class QuestionController {
         
         String userId = getUserId(authentication);
         
+        return shed(OperationClass.USER_DATA, () -> clearMemory(userId, subject));
+    }
+
+    private ResponseEntity<Void> clearMemory(String userId, String subject) {
         try {
-            memoryService.clearMemory(subject);
+            memoryService.clearMemory(userId, subject);
             logger.info("Cleared memory for user: {} subject: {}", userId, subject);
             return ResponseEntity.ok().build();
             
@@ -189,6 +491,144 @@ public class QuestionController {
         }
     }
 
+    /**
+     * Starts a stream, usually {@link #runStream} within a bulkhead; the
+     * admission's reservation is returned once it has finished. A stream refused
+     * straight away answers with a status code; one that waited in its bulkhead
+     * and was then dropped can only send an {@code error} event.
+     */
+    private void startStream(SseEmitter emitter, TokenBudgetService.Admission admission,
+                             Supplier<CompletableFuture<Void>> start) {
+        CompletableFuture<Void> stream = start.get();
+        stream.whenComplete((done, error) -> admission.release());
+        if (stream.isCompletedExceptionally()) {
+            throw streamRefused(stream);
+        }
+        stream.exceptionally(error -> {
+            failStream(emitter, "Server is busy. Please try again later.");
+            return null;
+        });
+    }
+
+    /**
+     * Runs the stream on the streaming executor; completes when the task has
+     * finished, or with a 503 if the executor is full.
+     */
+    private CompletableFuture<Void> runStream(Runnable task) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            streamingExecutor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    done.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            done.completeExceptionally(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many streams in progress. Please try again later."));
+        }
+        return done;
+    }
+
+    private static RuntimeException streamRefused(CompletableFuture<Void> stream) {
+        try {
+            stream.join();
+            throw new IllegalStateException("Stream was not refused");
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof OverloadedException overloaded) {
+                return overloaded(overloaded);
+            }
+            return e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Runs a synchronous handler within its operation class's bulkhead.
+     */
+    private <T> T shed(OperationClass operation, Supplier<T> handler) {
+        try {
+            return loadShedding.call(operation, handler);
+        } catch (OverloadedException e) {
+            throw overloaded(e);
+        }
+    }
+
+    private static RateLimitExceededException overloaded(OverloadedException e) {
+        logger.debug("Shedding load: {}", e.getMessage());
+        return new RateLimitExceededException(HttpStatus.SERVICE_UNAVAILABLE, e.getRetryAfterSeconds(),
+                "Server is busy. Please try again later.");
+    }
+
+    private static void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException e) {
+            // Client went away; abort the upstream stream instead of draining it
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void failStream(SseEmitter emitter, String message) {
+        // The stream already answered 200, so tell the trace it failed
+        RequestTrace.markFailed();
+        try {
+            emitter.send(SseEmitter.event().name("error").data(message));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 503 with Retry-After when the model's circuit breaker is open or the
+     * operation's bulkhead is full, 500 otherwise.
+     */
+    private static ResponseEntity<?> generationFailed(Throwable error, String message) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof UpstreamUnavailableException unavailable) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(unavailable.getRetryAfterSeconds()))
+                .body(Map.of("error", message));
+        }
+        if (cause instanceof OverloadedException overloaded) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(overloaded.getRetryAfterSeconds()))
+                .body(Map.of("error", "Server is busy. Please try again later."));
+        }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+            .body(Map.of("error", message));
+    }
+
+    /**
+     * 429 when the user's own token budget is spent; 503 when the instance-wide
+     * budget is, since nothing the user does will help before it recovers.
+     */
+    private static ResponseEntity<?> budgetExceeded(TokenBudgetService.Admission admission, String userId) {
+        RateLimitExceededException exception = budgetExceededException(admission, userId);
+        return ResponseEntity.status(exception.getStatusCode())
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(admission.retryAfterSeconds()))
+            .body(Map.of("error", exception.getReason()));
+    }
+
+    private static RateLimitExceededException budgetExceededException(TokenBudgetService.Admission admission,
+                                                                      String userId) {
+        if (admission.outcome() == TokenBudgetService.Outcome.GLOBAL_EXHAUSTED) {
+            logger.warn("Global token budget exhausted, refusing request from user: {}", userId);
+            return new RateLimitExceededException(HttpStatus.SERVICE_UNAVAILABLE, admission.retryAfterSeconds(),
+                    "Question generation is temporarily limited. Please try again later.");
+        }
+        logger.debug("Token budget exceeded for user: {}", userId);
+        return new RateLimitExceededException(HttpStatus.TOO_MANY_REQUESTS, admission.retryAfterSeconds(),
+                "Usage limit exceeded. Please try again later.");
+    }
+
+    private static ResponseEntity<?> tooManyRequests(RateLimitingService.Decision decision, String message) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(decision.retryAfterSeconds()))
+            .body(Map.of("error", message));
+    }
+
     private String getPromptForSubject(String subject, String type) {
         String basePrompt;
 
@@ -221,4 +661,28 @@ public class QuestionController {
             return "anonymous";
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 429 (or 503) for endpoints that cannot return a ResponseEntity (SSE); carries
+     * the Retry-After header through Spring's ResponseStatusException handling.
+     */
+    private static class RateLimitExceededException extends ResponseStatusException {
+        private final long retryAfterSeconds;
+
+        RateLimitExceededException(RateLimitingService.Decision decision, String reason) {
+            this(HttpStatus.TOO_MANY_REQUESTS, decision.retryAfterSeconds(), reason);
+        }
+
+        RateLimitExceededException(HttpStatus status, long retryAfterSeconds, String reason) {
+            super(status, reason);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.yourpackage.controller;
+
+import com.yourpackage.persistence.HistoryJournal;
+import com.yourpackage.security.VerifiedTokenCache;
+import com.yourpackage.service.EvaluationCache;
+import com.yourpackage.service.OpenAIService;
+import com.yourpackage.service.PromptMemoryService;
+import com.yourpackage.service.QuestionHistoryService;
+import com.yourpackage.service.QuestionPoolService;
+import com.yourpackage.service.RateLimitingService;
+import com.yourpackage.service.StudyGuideCache;
+import com.yourpackage.service.LoadSheddingService;
+import com.yourpackage.service.TokenBudgetService;
+import com.yourpackage.tracing.TracingFilter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/stats")
+public class StatsController {
+
+    private final QuestionPoolService questionPoolService;
+    private final QuestionHistoryService historyService;
+    private final HistoryJournal historyJournal;
+    private final StudyGuideCache guideCache;
+    private final OpenAIService openAIService;
+    private final EvaluationCache evaluationCache;
+    private final RateLimitingService rateLimitingService;
+    private final VerifiedTokenCache tokenCache;
+    private final PromptMemoryService memoryService;
+    private final TokenBudgetService tokenBudget;
+    private final TracingFilter tracingFilter;
+    private final LoadSheddingService loadShedding;
+
+    public StatsController(QuestionPoolService questionPoolService, QuestionHistoryService historyService,
+                           HistoryJournal historyJournal, StudyGuideCache guideCache, OpenAIService openAIService,
+                           EvaluationCache evaluationCache, RateLimitingService rateLimitingService,
+                           VerifiedTokenCache tokenCache, PromptMemoryService memoryService,
+                           TokenBudgetService tokenBudget, TracingFilter tracingFilter,
+                           LoadSheddingService loadShedding) {
+        this.questionPoolService = questionPoolService;
+        this.historyService = historyService;
+        this.historyJournal = historyJournal;
+        this.guideCache = guideCache;
+        this.openAIService = openAIService;
+        this.evaluationCache = evaluationCache;
+        this.rateLimitingService = rateLimitingService;
+        this.tokenCache = tokenCache;
+        this.memoryService = memoryService;
+        this.tokenBudget = tokenBudget;
+        this.tracingFilter = tracingFilter;
+        this.loadShedding = loadShedding;
+    }
+
+    @GetMapping("/pool")
+    public ResponseEntity<Map<String, Object>> getPoolStats() {
+        return ResponseEntity.ok(questionPoolService.stats());
+    }
+
+    @GetMapping("/history")
+    public ResponseEntity<Map<String, Object>> getHistoryStats() {
+        return ResponseEntity.ok(historyService.stats());
+    }
+
+    @GetMapping("/journal")
+    public ResponseEntity<Map<String, Object>> getJournalStats() {
+        return ResponseEntity.ok(historyJournal.stats());
+    }
+
+    @GetMapping("/guide-cache")
+    public ResponseEntity<Map<String, Object>> getGuideCacheStats() {
+        return ResponseEntity.ok(guideCache.stats());
+    }
+
+    @GetMapping("/upstream")
+    public ResponseEntity<Map<String, Object>> getUpstreamStats() {
+        return ResponseEntity.ok(openAIService.upstreamStats());
+    }
+
+    @GetMapping("/evaluation-cache")
+    public ResponseEntity<Map<String, Object>> getEvaluationCacheStats() {
+        return ResponseEntity.ok(evaluationCache.stats());
+    }
+
+    @GetMapping("/rate-limit")
+    public ResponseEntity<Map<String, Object>> getRateLimitStats() {
+        return ResponseEntity.ok(rateLimitingService.stats());
+    }
+
+    @GetMapping("/budget")
+    public ResponseEntity<Map<String, Object>> getBudgetStats() {
+        return ResponseEntity.ok(tokenBudget.stats());
+    }
+
+    @GetMapping("/tracing")
+    public ResponseEntity<Map<String, Object>> getTracingStats() {
+        return ResponseEntity.ok(tracingFilter.stats());
+    }
+
+    @GetMapping("/load-shedding")
+    public ResponseEntity<Map<String, Object>> getLoadSheddingStats() {
+        return ResponseEntity.ok(loadShedding.stats());
+    }
+
+    @GetMapping("/auth")
+    public ResponseEntity<Map<String, Object>> getAuthStats() {
+        return ResponseEntity.ok(tokenCache.stats());
+    }
+
+    @GetMapping("/memory")
+    public ResponseEntity<Map<String, Object>> getMemoryStats() {
+        return ResponseEntity.ok(memoryService.stats());
+    }
+
+    @GetMapping("/coverage/{subject}")
+    public ResponseEntity<Map<String, Double>> getTopicCoverage(@PathVariable String subject) {
+        return ResponseEntity.ok(memoryService.getCoverage(subject));
+    }
+}
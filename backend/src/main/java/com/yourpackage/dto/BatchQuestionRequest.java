@@ -0,0 +1,42 @@
+package com.yourpackage.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+
+public class BatchQuestionRequest {
+
+    @NotBlank(message = "Subject is required")
+    @Size(min = 2, max = 100, message = "Subject must be between 2 and 100 characters")
+    @Pattern(regexp = "^.+$", message = "Subject contains invalid characters")
+    private String subject;
+
+    @Min(value = 1, message = "Count must be at least 1")
+    @Max(value = 20, message = "Count must be at most 20")
+    private int count = 10;
+
+    public BatchQuestionRequest() {}
+
+    public BatchQuestionRequest(String subject, int count) {
+        this.subject = subject;
+        this.count = count;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+}
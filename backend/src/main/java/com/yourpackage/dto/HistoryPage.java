@@ -0,0 +1,25 @@
+package com.yourpackage.dto;
+
+import com.yourpackage.model.HistoryEvaluation;
+
+import java.util.List;
+
+public class HistoryPage {
+
+    private final List<HistoryEvaluation> items;
+    private final Long nextCursor;
+
+    public HistoryPage(List<HistoryEvaluation> items, Long nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<HistoryEvaluation> getItems() {
+        return items;
+    }
+
+    // Pass back as ?cursor= to fetch older entries; null when there are none
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+}
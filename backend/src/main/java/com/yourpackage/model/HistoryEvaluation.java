@@ -1,18 +1,17 @@
 package com.yourpackage.model;
 
-import java.util.ArrayList;
-
 public class HistoryEvaluation {
 
-    public static ArrayList<HistoryEvaluation> total = new ArrayList<>();
-    private String prompt;
-    private boolean correct;
-    private String questionType;
+    private final String prompt;
+    private final boolean correct;
+    private final long sequence;
+    private final long timestamp;
 
-    public HistoryEvaluation(String prompt, boolean correct){
+    public HistoryEvaluation(String prompt, boolean correct, long sequence, long timestamp){
         this.prompt = prompt;
         this.correct = correct;
-        total.add(this);
+        this.sequence = sequence;
+        this.timestamp = timestamp;
     }
 
     public String getPrompt(){
@@ -23,7 +22,12 @@ public class HistoryEvaluation {
         return correct;
     }
 
-    public static ArrayList<HistoryEvaluation> getTotal(){
-        return total;
+    // Position in the owning user's history; also used as the pagination cursor
+    public long getSequence(){
+        return sequence;
+    }
+
+    public long getTimestamp(){
+        return timestamp;
     }
 }
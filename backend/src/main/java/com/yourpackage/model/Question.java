@@ -0,0 +1,243 @@
+package com.yourpackage.model;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A generated question. Multiple choice questions carry their options in
+ * display order and the index of the correct one; free response questions (and
+ * multiple choice text the model did not format properly) only have a stem.
+ *
+ * <p>{@link #encode()} produces the compact form used for pooling and caching:
+ * <pre>
+ *   version:byte type:byte correctIndex:byte optionCount:byte generatedAt:long
+ *   stem:str option:str* topic:str subject:str model:str source:str
+ * </pre>
+ * where {@code str} is a varint byte length followed by UTF-8 bytes.
+ */
+public class Question {
+
+    public static final String MULTIPLE_CHOICE = "multiple-choice";
+    public static final String FREE_RESPONSE = "free-response";
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final String[] LETTERS = {"A", "B", "C", "D", "E", "F", "G", "H"};
+
+    private final String type;
+    private final String stem;
+    private final List<String> options;
+    private final Integer correctIndex;
+    private final String topic;
+    private final String subject;
+    private final Metadata metadata;
+
+    /**
+     * How and when the question was produced: the model, the call site that
+     * produced the text (e.g. QUESTION, MATH_FORMAT, BATCH) and the time in
+     * epoch millis.
+     */
+    public record Metadata(String model, String source, long generatedAt) {
+    }
+
+    private Question(String type, String stem, List<String> options, Integer correctIndex,
+                     String topic, String subject, Metadata metadata) {
+        this.type = type;
+        this.stem = stem;
+        this.options = options;
+        this.correctIndex = correctIndex;
+        this.topic = topic;
+        this.subject = subject;
+        this.metadata = metadata;
+    }
+
+    public static Question multipleChoice(String stem, List<String> options, int correctIndex,
+                                          String topic, String subject, Metadata metadata) {
+        if (options.size() > LETTERS.length || correctIndex < 0 || correctIndex >= options.size()) {
+            throw new IllegalArgumentException("Correct index " + correctIndex + " out of range for "
+                    + options.size() + " options");
+        }
+        return new Question(MULTIPLE_CHOICE, stem, List.copyOf(options), correctIndex, topic, subject, metadata);
+    }
+
+    /**
+     * A question known only by its text: free response, or multiple choice that
+     * could not be parsed into options.
+     */
+    public static Question unstructured(String type, String text, String topic, String subject, Metadata metadata) {
+        return new Question(type, text, List.of(), null, topic, subject, metadata);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getStem() {
+        return stem;
+    }
+
+    public List<String> getOptions() {
+        return options;
+    }
+
+    // Null unless the options were parsed
+    public Integer getCorrectIndex() {
+        return correctIndex;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public Metadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * The plain text form served by the original endpoints: the stem followed by
+     * lettered options, with {@code ***} directly after the correct letter.
+     */
+    public String toText() {
+        if (options.isEmpty()) {
+            return stem;
+        }
+        int size = stem.length() + 1;
+        for (String option : options) {
+            size += option.length() + 8;
+        }
+        StringBuilder text = new StringBuilder(size);
+        if (!stem.isEmpty()) {
+            text.append(stem).append('\n');
+        }
+        for (int i = 0; i < options.size(); i++) {
+            text.append(LETTERS[i]);
+            if (i == correctIndex) {
+                text.append("***");
+            }
+            text.append(") ").append(options.get(i));
+            if (i < options.size() - 1) {
+                text.append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    public byte[] encode() {
+        byte[][] strings = new byte[options.size() + 5][];
+        strings[0] = bytes(stem);
+        for (int i = 0; i < options.size(); i++) {
+            strings[i + 1] = bytes(options.get(i));
+        }
+        int tail = options.size() + 1;
+        strings[tail] = bytes(topic);
+        strings[tail + 1] = bytes(subject);
+        strings[tail + 2] = bytes(metadata == null ? null : metadata.model());
+        strings[tail + 3] = bytes(metadata == null ? null : metadata.source());
+
+        int size = 4 + 8;
+        for (byte[] string : strings) {
+            size += varintSize(string.length) + string.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(FORMAT_VERSION)
+                .put((byte) (MULTIPLE_CHOICE.equals(type) ? 0 : 1))
+                .put((byte) (correctIndex == null ? -1 : correctIndex))
+                .put((byte) options.size())
+                .putLong(metadata == null ? 0 : metadata.generatedAt());
+        for (byte[] string : strings) {
+            putVarint(buffer, string.length);
+            buffer.put(string);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Reads a question written by {@link #encode()}; throws
+     * IllegalArgumentException if the payload is not one.
+     */
+    public static Question decode(byte[] payload) {
+        try {
+            return decode(ByteBuffer.wrap(payload));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated question payload", e);
+        }
+    }
+
+    private static Question decode(ByteBuffer buffer) {
+        byte version = buffer.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unknown question format version " + version);
+        }
+        String type = buffer.get() == 0 ? MULTIPLE_CHOICE : FREE_RESPONSE;
+        int correctIndex = buffer.get();
+        int optionCount = buffer.get();
+        long generatedAt = buffer.getLong();
+
+        String stem = string(buffer);
+        List<String> options = new ArrayList<>(optionCount);
+        for (int i = 0; i < optionCount; i++) {
+            options.add(string(buffer));
+        }
+        String topic = string(buffer);
+        String subject = string(buffer);
+        Metadata metadata = new Metadata(string(buffer), string(buffer), generatedAt);
+        return correctIndex < 0
+                ? unstructured(type, stem, topic, subject, metadata)
+                : multipleChoice(stem, options, correctIndex, topic, subject, metadata);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        int length = getVarint(buffer);
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("String of " + length + " bytes overruns the question payload");
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                break;
+            }
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                // Five bytes can carry more than 31 bits; a negative length is not one we wrote
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed length in question payload");
+    }
+}
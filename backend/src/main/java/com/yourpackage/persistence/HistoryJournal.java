@@ -0,0 +1,371 @@
+package com.yourpackage.persistence;
+
+import com.yourpackage.config.JournalProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of history and prompt-memory events, so that in-memory state
+ * survives restarts and redeploys. Segments are memory-mapped files named
+ * {@code <id>-<part>.seg}; ordinary segments use part 0 and compaction output
+ * uses parts 1..n of the id just below the cut, so lexical file order is always
+ * replay order.
+ *
+ * <p>Stores register a replay handler per record type and a snapshot source.
+ * Once every bean exists the log is replayed into the handlers in a single pass,
+ * and compaction later rewrites the log from the snapshot sources.
+ */
+@Component
+public class HistoryJournal implements SmartInitializingSingleton {
+    private static final Logger logger = LoggerFactory.getLogger(HistoryJournal.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final JournalProperties properties;
+    private final Path directory;
+    private final Map<JournalRecord.Type, Consumer<JournalRecord>> replayHandlers = new EnumMap<>(JournalRecord.Type.class);
+    private final List<Consumer<Consumer<JournalRecord>>> snapshotSources = new CopyOnWriteArrayList<>();
+
+    private final Object writeLock = new Object();
+    private JournalSegment active;
+    private long activeId;
+    private boolean dirty;
+    private CompletableFuture<Void> pendingFlush = new CompletableFuture<>();
+
+    private ScheduledExecutorService maintenance;
+
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong bytesAppended = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long replayedRecords;
+    private volatile long replayMillis;
+
+    public HistoryJournal(JournalProperties properties) {
+        this.properties = properties;
+        this.directory = Paths.get(properties.getDirectory());
+    }
+
+    /**
+     * Registers how to rebuild one kind of record on startup and how to dump the
+     * current state during compaction. Must be called before the application
+     * context finishes starting (e.g. from {@code @PostConstruct}).
+     */
+    public void register(Set<JournalRecord.Type> types, Consumer<JournalRecord> replayHandler,
+                         Consumer<Consumer<JournalRecord>> snapshotSource) {
+        for (JournalRecord.Type type : types) {
+            replayHandlers.put(type, replayHandler);
+        }
+        snapshotSources.add(snapshotSource);
+    }
+
+    /**
+     * Appends a record. The returned future completes once the record has been
+     * fsynced by the next group commit; most callers do not need to wait for it.
+     */
+    public CompletableFuture<Void> append(JournalRecord record) {
+        return appendAll(List.of(record));
+    }
+
+    /**
+     * Appends records in order under a single acquisition of the write lock, so
+     * related records are written together; see {@link #append}.
+     */
+    public CompletableFuture<Void> appendAll(List<JournalRecord> records) {
+        if (!properties.isEnabled() || records.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<byte[]> payloads = new ArrayList<>(records.size());
+        for (JournalRecord record : records) {
+            byte[] payload = record.encode();
+            if (payload.length + JournalSegment.HEADER_BYTES + 4 > properties.getSegmentSize()) {
+                dropped.incrementAndGet();
+                logger.warn("Dropping journal record of {} bytes; larger than a segment", payload.length);
+                continue;
+            }
+            payloads.add(payload);
+        }
+        if (payloads.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        synchronized (writeLock) {
+            if (active == null) {
+                // Not started yet (or already closed); nothing to write to
+                dropped.addAndGet(payloads.size());
+                return CompletableFuture.completedFuture(null);
+            }
+            for (int i = 0; i < payloads.size(); i++) {
+                byte[] payload = payloads.get(i);
+                try {
+                    if (!active.tryAppend(payload)) {
+                        roll();
+                        active.tryAppend(payload);
+                    }
+                } catch (IOException e) {
+                    dropped.addAndGet(payloads.size() - i);
+                    logger.error("Failed to append to history journal", e);
+                    return CompletableFuture.failedFuture(e);
+                }
+                dirty = true;
+                appends.incrementAndGet();
+                bytesAppended.addAndGet(payload.length + JournalSegment.HEADER_BYTES);
+            }
+            return pendingFlush;
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            deleteTempFiles();
+            replay();
+            synchronized (writeLock) {
+                activeId = nextSegmentId();
+                active = JournalSegment.create(segmentPath(activeId, 0), properties.getSegmentSize());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open history journal in " + directory.toAbsolutePath(), e);
+        }
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "history-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long flushMillis = Math.max(1, properties.getFlushInterval().toMillis());
+        long compactionMillis = Math.max(1000, properties.getCompactionInterval().toMillis());
+        maintenance.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(this::compactQuietly, compactionMillis, compactionMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Forces everything appended so far to disk and completes the futures handed
+     * out since the previous flush.
+     */
+    public void flush() {
+        JournalSegment segment;
+        CompletableFuture<Void> flushed;
+        synchronized (writeLock) {
+            if (!dirty || active == null) {
+                return;
+            }
+            dirty = false;
+            segment = active;
+            flushed = pendingFlush;
+            pendingFlush = new CompletableFuture<>();
+        }
+        // fsync outside the lock so appends keep flowing into the mapping meanwhile
+        segment.force();
+        flushes.incrementAndGet();
+        flushed.complete(null);
+    }
+
+    /**
+     * Rewrites the log as a snapshot of the registered stores followed by whatever
+     * was appended after the cut, then deletes the superseded segments.
+     */
+    public void compact() throws IOException {
+        List<Path> before = listSegments();
+        if (before.size() < properties.getCompactionMinSegments()) {
+            return;
+        }
+
+        long cutId;
+        synchronized (writeLock) {
+            if (active == null) {
+                return;
+            }
+            roll();
+            cutId = activeId;
+        }
+
+        // Snapshot records go into parts 1..n of the last pre-cut id
+        long snapshotId = cutId - 1;
+        List<Path> written = new ArrayList<>();
+        JournalSegment[] out = new JournalSegment[1];
+        int[] part = {0};
+        try {
+            out[0] = JournalSegment.create(tempPath(snapshotId, ++part[0]), properties.getSegmentSize());
+            written.add(out[0].path());
+            Consumer<JournalRecord> sink = record -> {
+                byte[] payload = record.encode();
+                if (out[0].tryAppend(payload)) {
+                    return;
+                }
+                try {
+                    out[0].force();
+                    out[0].close();
+                    out[0] = JournalSegment.create(tempPath(snapshotId, ++part[0]), properties.getSegmentSize());
+                    written.add(out[0].path());
+                    if (!out[0].tryAppend(payload)) {
+                        dropped.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            for (Consumer<Consumer<JournalRecord>> source : snapshotSources) {
+                source.accept(sink);
+            }
+            out[0].force();
+            out[0].close();
+        } catch (IOException | UncheckedIOException e) {
+            for (Path path : written) {
+                Files.deleteIfExists(path);
+            }
+            throw e instanceof UncheckedIOException unchecked ? unchecked.getCause() : (IOException) e;
+        }
+
+        for (Path temp : written) {
+            String name = temp.getFileName().toString();
+            Files.move(temp, temp.resolveSibling(name.substring(0, name.length() - TEMP_SUFFIX.length())),
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        // Everything ordered before the snapshot is now redundant
+        String firstSnapshot = segmentName(snapshotId, 1);
+        for (Path segment : before) {
+            if (segment.getFileName().toString().compareTo(firstSnapshot) < 0) {
+                Files.deleteIfExists(segment);
+            }
+        }
+        compactions.incrementAndGet();
+        logger.info("Compacted history journal: {} segments before, {} snapshot segments", before.size(), written.size());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("appends", appends.get());
+        stats.put("bytesAppended", bytesAppended.get());
+        stats.put("flushes", flushes.get());
+        stats.put("compactions", compactions.get());
+        stats.put("dropped", dropped.get());
+        stats.put("replayedRecords", replayedRecords);
+        stats.put("replayMillis", replayMillis);
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+        synchronized (writeLock) {
+            if (active == null) {
+                return;
+            }
+            try {
+                active.force();
+                active.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close history journal cleanly", e);
+            }
+            active = null;
+            pendingFlush.complete(null);
+        }
+    }
+
+    private void replay() throws IOException {
+        long start = System.nanoTime();
+        long[] count = {0};
+        Consumer<JournalRecord> dispatch = record -> {
+            Consumer<JournalRecord> handler = replayHandlers.get(record.type());
+            if (handler != null) {
+                handler.accept(record);
+            }
+            count[0]++;
+        };
+        for (Path segment : listSegments()) {
+            if (!JournalSegment.replay(segment, dispatch)) {
+                logger.warn("History journal segment {} ends in a torn or corrupt record; remainder skipped",
+                        segment.getFileName());
+            }
+        }
+        replayedRecords = count[0];
+        replayMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info("Replayed {} history journal records in {} ms", replayedRecords, replayMillis);
+    }
+
+    // Caller holds writeLock
+    private void roll() throws IOException {
+        active.force();
+        active.close();
+        activeId++;
+        active = JournalSegment.create(segmentPath(activeId, 0), properties.getSegmentSize());
+    }
+
+    private long nextSegmentId() throws IOException {
+        long max = -1;
+        for (Path segment : listSegments()) {
+            String name = segment.getFileName().toString();
+            max = Math.max(max, Long.parseLong(name.substring(0, name.indexOf('-'))));
+        }
+        return max + 1;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted(Comparator.comparing(path -> path.getFileName().toString()))
+                    .toList();
+        }
+    }
+
+    private void deleteTempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                if (path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private Path segmentPath(long id, int part) {
+        return directory.resolve(segmentName(id, part));
+    }
+
+    private Path tempPath(long id, int part) {
+        return directory.resolve(segmentName(id, part) + TEMP_SUFFIX);
+    }
+
+    private static String segmentName(long id, int part) {
+        return String.format("%016d-%04d%s", id, part, SEGMENT_SUFFIX);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("History journal flush failed", e);
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            logger.error("History journal compaction failed", e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.yourpackage.persistence;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One event in the history journal. All record types share a single flat
+ * layout so the log can be decoded without a schema per type:
+ * <pre>
+ *   type:byte timestamp:long sequence:long flag:byte userId:str subject:str text:str
+ * </pre>
+ * where {@code str} is an int byte length followed by UTF-8 bytes. Records
+ * that are replayed from a compaction snapshot and again from the segment
+ * written after it carry a sequence number so the second copy can be skipped.
+ */
+public record JournalRecord(Type type, long timestamp, long sequence, boolean flag,
+                            String userId, String subject, String text) {
+
+    public enum Type {
+        // A question served to or answered by a user; flag = answered correctly
+        HISTORY,
+        // All history for userId was dropped by the in-memory store
+        HISTORY_EVICTED,
+        // A topic recorded for subject in the prompt memory; sequence = position in the subject's ring
+        TOPIC,
+        // Prompt memory for subject was cleared
+        TOPIC_CLEARED,
+        // All prompt memory for userId was dropped by the in-memory store
+        TOPICS_EVICTED
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    public static JournalRecord history(String userId, long sequence, long timestamp, boolean correct, String prompt) {
+        return new JournalRecord(Type.HISTORY, timestamp, sequence, correct, userId, "", prompt);
+    }
+
+    public static JournalRecord historyEvicted(String userId) {
+        return new JournalRecord(Type.HISTORY_EVICTED, System.currentTimeMillis(), 0, false, userId, "", "");
+    }
+
+    public static JournalRecord topic(String userId, String subject, long sequence, long timestamp, String topic) {
+        return new JournalRecord(Type.TOPIC, timestamp, sequence, false, userId, subject, topic);
+    }
+
+    public static JournalRecord topicCleared(String userId, String subject) {
+        return new JournalRecord(Type.TOPIC_CLEARED, System.currentTimeMillis(), 0, false, userId, subject, "");
+    }
+
+    public static JournalRecord topicsEvicted(String userId) {
+        return new JournalRecord(Type.TOPICS_EVICTED, System.currentTimeMillis(), 0, false, userId, "", "");
+    }
+
+    byte[] encode() {
+        byte[] user = bytes(userId);
+        byte[] subj = bytes(subject);
+        byte[] body = bytes(text);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + 8 + 1 + 12 + user.length + subj.length + body.length);
+        buffer.put((byte) type.ordinal())
+                .putLong(timestamp)
+                .putLong(sequence)
+                .put((byte) (flag ? 1 : 0))
+                .putInt(user.length).put(user)
+                .putInt(subj.length).put(subj)
+                .putInt(body.length).put(body);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a checksummed payload, or returns null if it is of a type or
+     * layout this version does not know, e.g. written by a newer one.
+     */
+    static JournalRecord decode(ByteBuffer payload) {
+        try {
+            int ordinal = payload.get();
+            if (ordinal < 0 || ordinal >= TYPES.length) {
+                return null;
+            }
+            long timestamp = payload.getLong();
+            long sequence = payload.getLong();
+            boolean flag = payload.get() != 0;
+            String userId = string(payload);
+            String subject = string(payload);
+            String text = string(payload);
+            return new JournalRecord(TYPES[ordinal], timestamp, sequence, flag, userId, subject, text);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length < 0 || length > payload.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,180 @@
+package com.yourpackage.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A fixed-size, memory-mapped journal file. Records are laid out back to back as
+ * {@code [length:int][crc32:int][payload]}; the file is zero-filled on creation,
+ * so a zero length marks the end of the written data. Not thread-safe: the
+ * journal serializes all appends.
+ *
+ * <p>Closing a segment unmaps it right away. Left to the garbage collector, a
+ * retired mapping keeps its address space and page cache until the buffer
+ * happens to be collected, so rotation and compaction would pile them up.
+ */
+final class JournalSegment implements Closeable {
+
+    static final int HEADER_BYTES = 8;
+
+    // Unsafe.invokeCleaner, the only way to unmap a buffer on Java 17; null where it is unavailable
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position;
+    private boolean closed;
+
+    private JournalSegment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    static JournalSegment create(Path path, int size) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Mapping past the end of the file extends it with zeroes
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        return new JournalSegment(path, channel, buffer);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int position() {
+        return position;
+    }
+
+    /**
+     * Copies the record into the mapping. Returns false, without writing anything,
+     * if it does not fit in the remaining space.
+     */
+    boolean tryAppend(byte[] payload) {
+        int end = position + HEADER_BYTES + payload.length;
+        // Keep room for the zero length that terminates the segment
+        if (end + 4 > buffer.capacity()) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.put(position + HEADER_BYTES, payload);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        // Length goes last so a torn write never looks like a complete record
+        buffer.putInt(position, payload.length);
+        position = end;
+        return true;
+    }
+
+    /**
+     * Flushes the mapping to disk; does nothing once closed, since closing
+     * forces first. Synchronized with {@link #close} because the journal
+     * forces outside its write lock.
+     */
+    synchronized void force() {
+        if (!closed) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer.force();
+        try {
+            channel.close();
+        } finally {
+            unmap(buffer);
+        }
+    }
+
+    /**
+     * Reads every intact record in the file, stopping at the end marker or at the
+     * first record that is truncated or fails its checksum. Intact records this
+     * version cannot decode are skipped.
+     *
+     * @return true if the whole segment was read cleanly
+     */
+    static boolean replay(Path path, Consumer<JournalRecord> consumer) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            return replay(buffer, consumer);
+        } finally {
+            unmap(buffer);
+        }
+    }
+
+    private static boolean replay(MappedByteBuffer buffer, Consumer<JournalRecord> consumer) {
+        int position = 0;
+        CRC32 crc = new CRC32();
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                return true;
+            }
+            if (length < 0 || position + HEADER_BYTES + length > buffer.capacity()) {
+                return false;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_BYTES, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                return false;
+            }
+            JournalRecord record = JournalRecord.decode(ByteBuffer.wrap(payload));
+            if (record != null) {
+                consumer.accept(record);
+            }
+            position += HEADER_BYTES + length;
+        }
+        return true;
+    }
+
+    /**
+     * Releases the mapping now rather than when the buffer is collected. The
+     * buffer must not be touched afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            // Left to the garbage collector, as without the cleaner
+        }
+    }
+
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
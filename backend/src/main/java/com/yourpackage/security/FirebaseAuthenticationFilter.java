@@ -3,10 +3,15 @@ package com.yourpackage.security;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthException;
 import com.google.firebase.auth.FirebaseToken;
+import com.yourpackage.config.DevModeProperties;
+import com.yourpackage.config.SecurityConfig;
+import com.yourpackage.tracing.RequestTrace;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -16,16 +21,52 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Component
 public class FirebaseAuthenticationFilter extends OncePerRequestFilter {
     
     private static final Logger logger = LoggerFactory.getLogger(FirebaseAuthenticationFilter.class);
+    private static final Set<String> PUBLIC_PATHS = Set.of(SecurityConfig.PUBLIC_ENDPOINTS);
+    // Development mode only, and only with helpstudy.dev.allow-user-header: lets load tests act as many users
+    private static final String DEV_USER_HEADER = "X-Dev-User";
+    private static final int MAX_DEV_USER_LENGTH = 64;
+    
     private final FirebaseAuth firebaseAuth;
+    private final VerifiedTokenCache tokenCache;
+    private final boolean allowDevUserHeader;
+    private final Timer validTokens;
+    private final Timer invalidTokens;
+    private final AtomicBoolean devModeWarned = new AtomicBoolean();
 
-    public FirebaseAuthenticationFilter(@Autowired(required = false) FirebaseAuth firebaseAuth) {
+    public FirebaseAuthenticationFilter(@Autowired(required = false) FirebaseAuth firebaseAuth,
+                                        VerifiedTokenCache tokenCache, DevModeProperties devMode,
+                                        MeterRegistry meterRegistry) {
         this.firebaseAuth = firebaseAuth;
+        this.tokenCache = tokenCache;
+        this.allowDevUserHeader = devMode.isAllowUserHeader();
+        this.validTokens = verificationTimer(meterRegistry, "valid");
+        this.invalidTokens = verificationTimer(meterRegistry, "invalid");
+    }
+
+    // Includes verified-token cache hits, so this is what authentication costs a request
+    private static Timer verificationTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("helpstudy.auth.verification")
+                .description("Time to verify a Firebase ID token")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(5))
+                .register(registry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // Public endpoints need no identity, so don't spend a token verification on them
+        return PUBLIC_PATHS.contains(request.getServletPath());
     }
 
     @Override
@@ -34,10 +75,15 @@ public class FirebaseAuthenticationFilter extends OncePerRequestFilter {
         
         // Skip authentication if Firebase is not configured (development mode)
         if (firebaseAuth == null) {
-            logger.warn("Firebase not configured - skipping authentication (development mode only)");
+            if (devModeWarned.compareAndSet(false, true)) {
+                logger.warn("Firebase not configured - skipping authentication (development mode only)");
+            }
             
             // Create a mock authentication for development
-            FirebaseUserPrincipal principal = new FirebaseUserPrincipal("dev-user", "dev@example.com", null);
+            String devUser = allowDevUserHeader ? request.getHeader(DEV_USER_HEADER) : null;
+            String uid = devUser != null && !devUser.isBlank() && devUser.length() <= MAX_DEV_USER_LENGTH
+                    ? devUser : "dev-user";
+            FirebaseUserPrincipal principal = new FirebaseUserPrincipal(uid, "dev@example.com", null);
             UsernamePasswordAuthenticationToken authentication = 
                 new UsernamePasswordAuthenticationToken(principal, null, new ArrayList<>());
             SecurityContextHolder.getContext().setAuthentication(authentication);
@@ -50,9 +96,13 @@ public class FirebaseAuthenticationFilter extends OncePerRequestFilter {
         
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
             String idToken = authorizationHeader.substring(7);
+            long start = System.nanoTime();
+            RequestTrace.Span span = RequestTrace.start("auth");
             
             try {
-                FirebaseToken decodedToken = firebaseAuth.verifyIdToken(idToken);
+                FirebaseToken decodedToken = tokenCache.verify(firebaseAuth, idToken);
+                validTokens.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                span.close();
                 String uid = decodedToken.getUid();
                 String email = decodedToken.getEmail();
                 
@@ -64,6 +114,8 @@ public class FirebaseAuthenticationFilter extends OncePerRequestFilter {
                 SecurityContextHolder.getContext().setAuthentication(authentication);
                 
             } catch (FirebaseAuthException e) {
+                invalidTokens.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                span.end(e);
                 logger.error("Invalid Firebase token: {}", e.getMessage());
                 response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
                 response.getWriter().write("{\"error\":\"Invalid authentication token\"}");
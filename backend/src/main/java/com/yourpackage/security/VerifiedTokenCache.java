@@ -0,0 +1,149 @@
+package com.yourpackage.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import com.yourpackage.config.AuthTokenCacheProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers Firebase ID tokens that have already passed verification, so a
+ * client reusing its token skips the RS256 check (and any public-key fetch).
+ * Entries are keyed by a SHA-256 of the bearer string, so raw tokens are never
+ * held, and each one expires at its token's own {@code exp} claim.
+ */
+@Component
+public class VerifiedTokenCache implements MeterBinder {
+
+    private final AuthTokenCacheProperties properties;
+    private final Cache<String, FirebaseToken> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder verificationFailures = new LongAdder();
+    private final LongAdder verificationNanos = new LongAdder();
+    private final AtomicLong maxVerificationNanos = new AtomicLong();
+
+    public VerifiedTokenCache(AuthTokenCacheProperties properties) {
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfter(new TokenExpiry())
+                .build();
+    }
+
+    /**
+     * Returns the decoded token, verifying it with Firebase only if it has not
+     * been seen (or has expired from the cache).
+     */
+    public FirebaseToken verify(FirebaseAuth firebaseAuth, String idToken) throws FirebaseAuthException {
+        String key = properties.isEnabled() ? hash(idToken) : null;
+        if (key != null) {
+            FirebaseToken cached = cache.getIfPresent(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+
+        long start = System.nanoTime();
+        FirebaseToken decodedToken;
+        try {
+            decodedToken = firebaseAuth.verifyIdToken(idToken);
+        } catch (FirebaseAuthException e) {
+            verificationFailures.increment();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            verificationNanos.add(elapsed);
+            maxVerificationNanos.accumulateAndGet(elapsed, Math::max);
+        }
+
+        if (key != null && expiresAtMillis(decodedToken) > System.currentTimeMillis()) {
+            cache.put(key, decodedToken);
+        }
+        return decodedToken;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("helpstudy.auth.token.cache", hits, LongAdder::sum)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("helpstudy.auth.token.cache", misses, LongAdder::sum)
+                .tag("result", "miss").register(registry);
+        Gauge.builder("helpstudy.auth.token.cache.size", cache, Cache::estimatedSize)
+                .register(registry);
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("size", cache.estimatedSize());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("verificationFailures", verificationFailures.sum());
+        stats.put("averageVerificationMicros", missCount == 0 ? 0.0
+                : verificationNanos.sum() / 1_000.0 / missCount);
+        stats.put("maxVerificationMicros", TimeUnit.NANOSECONDS.toMicros(maxVerificationNanos.get()));
+        return stats;
+    }
+
+    private static long expiresAtMillis(FirebaseToken token) {
+        Object exp = token.getClaims().get("exp");
+        return exp instanceof Number seconds ? TimeUnit.SECONDS.toMillis(seconds.longValue()) : 0L;
+    }
+
+    private static String hash(String idToken) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(idToken.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Expires each entry when its token does, regardless of reads.
+     */
+    private static final class TokenExpiry implements Expiry<String, FirebaseToken> {
+
+        @Override
+        public long expireAfterCreate(String key, FirebaseToken token, long currentTime) {
+            long remainingMillis = expiresAtMillis(token) - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, FirebaseToken token, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, token, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, FirebaseToken token, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.yourpackage.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Splits a streamed completion containing several multiple choice questions
+ * into individual questions. Questions are separated by a line holding only
+ * {@value #DELIMITER}; each one is handed to the consumer as soon as its
+ * delimiter (or the end of the completion) arrives.
+ */
+class BatchQuestionSplitter implements Consumer<String> {
+
+    static final String DELIMITER = "===";
+
+    private final Consumer<String> onQuestion;
+    private final StringBuilder line = new StringBuilder();
+    private final StringBuilder question = new StringBuilder();
+
+    BatchQuestionSplitter(Consumer<String> onQuestion) {
+        this.onQuestion = onQuestion;
+    }
+
+    @Override
+    public void accept(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '\n') {
+                endLine();
+            } else {
+                line.append(c);
+            }
+        }
+    }
+
+    /**
+     * Emits whatever follows the last delimiter. Call once the completion ends.
+     */
+    void finish() {
+        endLine();
+        emit();
+    }
+
+    /**
+     * True if the text has a stem and exactly four options A-D, each letter once,
+     * with exactly one marked correct by {@code ***}; the same shape that
+     * {@link MultipleChoiceParser} accepts.
+     */
+    static boolean isValidMultipleChoice(String text) {
+        MultipleChoiceParser.Parsed parsed = MultipleChoiceParser.parse(text);
+        return parsed != null && !parsed.stem().isEmpty();
+    }
+
+    private void endLine() {
+        if (line.toString().trim().equals(DELIMITER)) {
+            emit();
+        } else if (line.length() > 0 || question.length() > 0) {
+            question.append(line).append('\n');
+        }
+        line.setLength(0);
+    }
+
+    private void emit() {
+        String text = question.toString().trim();
+        question.setLength(0);
+        if (!text.isEmpty()) {
+            onQuestion.accept(text);
+        }
+    }
+}
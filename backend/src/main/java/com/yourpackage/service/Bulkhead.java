@@ -0,0 +1,329 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.LoadSheddingProperties;
+import com.yourpackage.tracing.RequestTrace;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Concurrency limit and bounded wait queue for one {@link OperationClass}.
+ * Operations beyond the limit wait in arrival order; when the queue is full,
+ * or an operation has waited {@code maxQueueWait}, it fails with
+ * {@link OverloadedException} rather than holding the client until its
+ * request times out. Cancelling an operation's future withdraws it from the
+ * queue, or once started cancels the operation, whose slot is handed on when
+ * it has stopped.
+ *
+ * <p>The limit adapts to how the operations fare (AIMD): one that completes
+ * within {@code latencyThreshold} while the limit is at least half used adds
+ * {@code 1/limit}, so the limit grows by about one per limit's worth of
+ * completions; one that is slower, or that upstream refused or timed out,
+ * multiplies it by {@code backoffRatio}, at most once a second so a burst of
+ * slow completions counts as one signal. Model calls are slow and comparatively
+ * rare, so a monitor is cheap enough here.
+ */
+final class Bulkhead {
+
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    private final OperationClass operation;
+    private final LoadSheddingProperties.Limits limits;
+    private final ArrayDeque<Waiting<?>> queue = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private long lastDecrease = System.nanoTime() - DECREASE_INTERVAL_NANOS;
+    private double latencyMillis = Double.NaN;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder slow = new LongAdder();
+    private final LongAdder rejectedFull = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    Bulkhead(OperationClass operation, LoadSheddingProperties.Limits limits) {
+        this.operation = operation;
+        this.limits = limits;
+        this.limit = limits.getInitialLimit();
+    }
+
+    /**
+     * Starts the operation now if the limit allows, otherwise queues it. The
+     * returned future completes with the operation's result.
+     */
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+        Waiting<T> waiting = new Waiting<>(call);
+        long retryAfterSeconds;
+        synchronized (this) {
+            if (inFlight < currentLimit()) {
+                inFlight++;
+                retryAfterSeconds = -1;
+            } else if (queue.size() < limits.getMaxQueued()) {
+                waiting.queueSpan = RequestTrace.start("queue-" + operation.tag());
+                queue.addLast(waiting);
+                CompletableFuture.delayedExecutor(limits.getMaxQueueWait().toMillis(), TimeUnit.MILLISECONDS)
+                        .execute(() -> expire(waiting));
+                // A caller that has gone away should not hold a place in line
+                waiting.result.whenComplete((value, error) -> {
+                    if (waiting.result.isCancelled()) {
+                        withdraw(waiting);
+                    }
+                });
+                return waiting.result;
+            } else {
+                retryAfterSeconds = retryAfterSeconds();
+            }
+        }
+        if (retryAfterSeconds >= 0) {
+            rejectedFull.increment();
+            return CompletableFuture.failedFuture(
+                    new OverloadedException(operation, retryAfterSeconds, "too many requests in progress"));
+        }
+        start(waiting);
+        return waiting.result;
+    }
+
+    /**
+     * Runs a synchronous operation on the caller's thread if the limit allows,
+     * and throws {@link OverloadedException} otherwise; a request thread is not
+     * worth parking in a queue.
+     */
+    <T> T call(Supplier<T> call) {
+        synchronized (this) {
+            if (inFlight >= currentLimit()) {
+                rejectedFull.increment();
+                throw new OverloadedException(operation, 1, "too many requests in progress");
+            }
+            inFlight++;
+        }
+        long start = System.nanoTime();
+        boolean overloaded = false;
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            overloaded = isOverloadSignal(e);
+            throw e;
+        } finally {
+            finish(System.nanoTime() - start, overloaded);
+        }
+    }
+
+    /**
+     * Sets the limit by hand; with {@code adaptive} on it keeps adapting from there.
+     */
+    void setLimit(int newLimit) {
+        List<Waiting<?>> ready;
+        synchronized (this) {
+            limit = clamp(newLimit);
+            ready = pollReady();
+        }
+        ready.forEach(this::start);
+    }
+
+    synchronized int limit() {
+        return currentLimit();
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int queued() {
+        return queue.size();
+    }
+
+    long rejectedFull() {
+        return rejectedFull.sum();
+    }
+
+    long expired() {
+        return expired.sum();
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limit", currentLimit());
+        stats.put("inFlight", inFlight);
+        stats.put("queued", queue.size());
+        stats.put("adaptive", limits.isAdaptive());
+        stats.put("minLimit", limits.getMinLimit());
+        stats.put("maxLimit", limits.getMaxLimit());
+        stats.put("maxQueued", limits.getMaxQueued());
+        stats.put("maxQueueWaitMillis", limits.getMaxQueueWait().toMillis());
+        stats.put("latencyThresholdMillis", limits.getLatencyThreshold().toMillis());
+        stats.put("latencyMillis", Double.isNaN(latencyMillis) ? null : Math.round(latencyMillis));
+        stats.put("completed", completed.sum());
+        stats.put("slow", slow.sum());
+        stats.put("rejectedFull", rejectedFull.sum());
+        stats.put("expired", expired.sum());
+        return stats;
+    }
+
+    private <T> void start(Waiting<T> waiting) {
+        if (waiting.queueSpan != null) {
+            waiting.queueSpan.close();
+        }
+        if (waiting.result.isDone()) {
+            // Cancelled after it was taken off the queue
+            release();
+            return;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        // A queued operation starts on whichever thread freed its slot, so it takes its own trace along
+        try (RequestTrace.Scope scope = RequestTrace.bind(waiting.trace)) {
+            future = waiting.call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> started = future;
+        waiting.result.whenComplete((value, error) -> {
+            if (waiting.result.isCancelled()) {
+                // The slot is handed on below, once the cancelled operation has actually finished
+                started.cancel(false);
+            }
+        });
+        started.whenComplete((value, error) -> {
+            if (waiting.result.isCancelled()) {
+                // How long a cancelled operation ran says nothing about the limit
+                release();
+                return;
+            }
+            if (error == null) {
+                waiting.result.complete(value);
+            } else {
+                waiting.result.completeExceptionally(error);
+            }
+            finish(System.nanoTime() - start, error != null && isOverloadSignal(error));
+        });
+    }
+
+    /**
+     * Feeds a completed operation into the limit and hands its slot on.
+     */
+    private void finish(long latencyNanos, boolean overloaded) {
+        List<Waiting<?>> ready;
+        synchronized (this) {
+            completed.increment();
+            double millis = latencyNanos / 1_000_000.0;
+            latencyMillis = Double.isNaN(latencyMillis)
+                    ? millis
+                    : latencyMillis + LATENCY_SMOOTHING * (millis - latencyMillis);
+
+            boolean tooSlow = overloaded || latencyNanos > limits.getLatencyThreshold().toNanos();
+            if (tooSlow) {
+                slow.increment();
+            }
+            if (limits.isAdaptive()) {
+                long now = System.nanoTime();
+                if (tooSlow) {
+                    if (now - lastDecrease >= DECREASE_INTERVAL_NANOS) {
+                        limit = clamp(limit * limits.getBackoffRatio());
+                        lastDecrease = now;
+                    }
+                } else if (inFlight * 2 >= currentLimit()) {
+                    // Only grow while the limit is what holds requests back
+                    limit = clamp(limit + 1.0 / Math.max(1.0, limit));
+                }
+            }
+            inFlight--;
+            ready = pollReady();
+        }
+        ready.forEach(this::start);
+    }
+
+    /**
+     * Hands a slot on without feeding the limit.
+     */
+    private void release() {
+        List<Waiting<?>> ready;
+        synchronized (this) {
+            inFlight--;
+            ready = pollReady();
+        }
+        ready.forEach(this::start);
+    }
+
+    /**
+     * Takes waiting operations off the queue for as many slots as are free,
+     * counting them in flight and skipping any whose caller has given up.
+     * Called with the monitor held.
+     */
+    private List<Waiting<?>> pollReady() {
+        List<Waiting<?>> ready = new ArrayList<>();
+        while (inFlight < currentLimit() && !queue.isEmpty()) {
+            Waiting<?> next = queue.pollFirst();
+            if (next.result.isDone()) {
+                continue;
+            }
+            ready.add(next);
+            inFlight++;
+        }
+        return ready;
+    }
+
+    private void withdraw(Waiting<?> waiting) {
+        synchronized (this) {
+            queue.remove(waiting);
+        }
+        waiting.queueSpan.end(null);
+    }
+
+    private void expire(Waiting<?> waiting) {
+        synchronized (this) {
+            if (!queue.remove(waiting)) {
+                return;
+            }
+        }
+        expired.increment();
+        waiting.queueSpan.end(null);
+        waiting.result.completeExceptionally(new OverloadedException(operation,
+                Math.max(1, limits.getMaxQueueWait().toSeconds()), "waited too long for a slot"));
+    }
+
+    private int currentLimit() {
+        return (int) clamp(limit);
+    }
+
+    private double clamp(double value) {
+        int min = Math.max(1, limits.getMinLimit());
+        int max = Math.max(min, limits.getMaxLimit());
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * How long the operation at the head of a full queue has been waiting, as
+     * a guess at how long the line takes to move. Called with the monitor held.
+     */
+    private long retryAfterSeconds() {
+        Waiting<?> head = queue.peekFirst();
+        long waited = head == null ? 0 : System.nanoTime() - head.enqueuedAt;
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waited + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    /**
+     * Upstream refusing (circuit open, outbound queue full) or timing out means
+     * it is already past what it can take.
+     */
+    private static boolean isOverloadSignal(Throwable error) {
+        Throwable cause = ResilientChatClient.unwrap(error);
+        return cause instanceof UpstreamUnavailableException || cause instanceof TimeoutException;
+    }
+
+    private static final class Waiting<T> {
+        final Supplier<CompletableFuture<T>> call;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+        final RequestTrace trace = RequestTrace.current();
+        RequestTrace.Span queueSpan;
+
+        Waiting(Supplier<CompletableFuture<T>> call) {
+            this.call = call;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.yourpackage.service;
+
+import java.util.Locale;
+
+/**
+ * The places in {@link OpenAIService} that call the model. Each one carries a
+ * default policy for whether identical concurrent requests may share a result.
+ */
+public enum CallSite {
+    QUESTION(Policy.EXCLUSIVE),
+    MATH_SOLVE(Policy.EXCLUSIVE),
+    MATH_FORMAT(Policy.EXCLUSIVE),
+    MATH_FALLBACK(Policy.EXCLUSIVE),
+    GUIDE(Policy.SHARED),
+    EVALUATION(Policy.SHARED),
+    BATCH(Policy.EXCLUSIVE);
+
+    private final Policy defaultPolicy;
+    private final String traceName;
+
+    CallSite(Policy defaultPolicy) {
+        this.defaultPolicy = defaultPolicy;
+        this.traceName = name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    public Policy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    /**
+     * Name of the site in request traces and Server-Timing headers, e.g. {@code math-solve}.
+     */
+    public String traceName() {
+        return traceName;
+    }
+
+    public enum Policy {
+        /** Concurrent identical requests wait on one upstream call and all get its result. */
+        SHARED,
+        /** Every caller gets its own completion; used where output is meant to differ per student. */
+        EXCLUSIVE
+    }
+}
@@ -0,0 +1,85 @@
+package com.yourpackage.service;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Connects the futures of simple-openai requests to the OkHttp {@link Call}s
+ * behind them. cleverclient enqueues each call and completes a future of its
+ * own, so cancelling that future leaves the request running: it still holds a
+ * connection and a dispatcher slot, and its response is still billed. OkHttp
+ * asks the client's event listener factory for a listener as each call is
+ * created, on the thread making the request, which is where it is captured.
+ */
+final class CancellableCalls implements EventListener.Factory {
+
+    private final ThreadLocal<List<Call>> capturing = new ThreadLocal<>();
+
+    @Override
+    public EventListener create(Call call) {
+        List<Call> calls = capturing.get();
+        if (calls != null) {
+            calls.add(call);
+        }
+        return EventListener.NONE;
+    }
+
+    /**
+     * Makes the request and returns its future, whose cancellation cancels the
+     * HTTP call. Unlike a plain future it does not complete on cancel: it
+     * completes as cancelled once OkHttp has given the call up, or normally if
+     * the response won the race, so a slot held until it completes is held
+     * exactly as long as the request.
+     */
+    <T> CompletableFuture<T> send(Supplier<CompletableFuture<T>> request) {
+        List<Call> calls = new ArrayList<>(1);
+        CompletableFuture<T> sent;
+        capturing.set(calls);
+        try {
+            sent = request.get();
+        } finally {
+            capturing.remove();
+        }
+        if (calls.isEmpty()) {
+            // Failed before a call was made
+            return sent;
+        }
+        CallFuture<T> future = new CallFuture<>(List.copyOf(calls));
+        sent.whenComplete(future::settle);
+        return future;
+    }
+
+    private static final class CallFuture<T> extends CompletableFuture<T> {
+        private final List<Call> calls;
+        private volatile boolean cancelRequested;
+
+        CallFuture(List<Call> calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (isDone()) {
+                return isCancelled();
+            }
+            cancelRequested = true;
+            calls.forEach(Call::cancel);
+            return true;
+        }
+
+        void settle(T value, Throwable error) {
+            if (error == null) {
+                complete(value);
+            } else if (cancelRequested) {
+                super.cancel(false);
+            } else {
+                completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.yourpackage.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yourpackage.config.CoalescingProperties;
+import com.yourpackage.tracing.RequestTrace;
+import io.github.sashirestela.openai.domain.chat.Chat;
+import io.github.sashirestela.openai.domain.chat.ChatRequest;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Layer over {@link ResilientChatClient} that lets concurrent callers with an
+ * identical request share one upstream call. Requests are identified by a
+ * SHA-256 of their JSON form, which covers the model, messages, temperature and
+ * token cap. Whether a call site may share is decided by its {@link CallSite.Policy}.
+ * A shared call is cancelled once every caller waiting for it has cancelled.
+ *
+ * <p>Being the entry point for model calls, this is where each caller's wait is
+ * recorded as an {@code upstream-<site>} span of its request trace; results are
+ * delivered bound to that trace, including to callers sharing a call.
+ */
+class CoalescingChatClient {
+
+    private final ResilientChatClient upstream;
+    private final CoalescingProperties properties;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final Map<CallSite, Counters> counters = new EnumMap<>(CallSite.class);
+
+    CoalescingChatClient(ResilientChatClient upstream, CoalescingProperties properties) {
+        this.upstream = upstream;
+        this.properties = properties;
+        for (CallSite site : CallSite.values()) {
+            counters.put(site, new Counters());
+        }
+    }
+
+    /**
+     * A caller sharing a call waits at the priority of whoever started it;
+     * pool refills only use exclusive sites, so in practice that is the same.
+     * Tokens used by a shared call are charged to the {@code usage} of whoever
+     * started it.
+     */
+    CompletableFuture<Chat> create(CallSite site, OutboundDispatcher.Priority priority, ChatRequest request,
+                                   LongConsumer usage) {
+        return RequestTrace.traced("upstream-" + site.traceName(), () -> coalesce(site, priority, request, usage));
+    }
+
+    private CompletableFuture<Chat> coalesce(CallSite site, OutboundDispatcher.Priority priority, ChatRequest request,
+                                             LongConsumer usage) {
+        if (!properties.isEnabled() || properties.policyFor(site) == CallSite.Policy.EXCLUSIVE) {
+            return call(site, priority, request, usage);
+        }
+        String key = requestKey(request);
+        if (key == null) {
+            return call(site, priority, request, usage);
+        }
+
+        Flight flight = new Flight();
+        Flight existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            if (!existing.join()) {
+                // Everyone waiting for it gave up and it is being cancelled
+                return call(site, priority, request, usage);
+            }
+            counters.get(site).coalesced.increment();
+            return existing.waiter();
+        }
+
+        CompletableFuture<Chat> upstream;
+        try {
+            upstream = call(site, priority, request, usage);
+        } catch (RuntimeException e) {
+            upstream = CompletableFuture.failedFuture(e);
+        }
+        flight.upstream = upstream;
+        upstream.whenComplete((chat, error) -> {
+            inFlight.remove(key, flight);
+            if (error != null) {
+                flight.shared.completeExceptionally(error);
+            } else {
+                flight.shared.complete(chat);
+            }
+        });
+        return flight.waiter();
+    }
+
+    /**
+     * Streams are consumed incrementally by a single caller, so they are never
+     * shared. The span only covers opening the stream.
+     */
+    CompletableFuture<Stream<Chat>> createStream(CallSite site, OutboundDispatcher.Priority priority,
+                                                 ChatRequest request) {
+        counters.get(site).upstreamCalls.increment();
+        return RequestTrace.traced("upstream-" + site.traceName(), () -> upstream.createStream(site, priority, request));
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> sites = new LinkedHashMap<>();
+        counters.forEach((site, counter) -> {
+            Map<String, Object> siteStats = new LinkedHashMap<>();
+            siteStats.put("policy", properties.policyFor(site));
+            siteStats.put("upstreamCalls", counter.upstreamCalls.sum());
+            siteStats.put("coalesced", counter.coalesced.sum());
+            sites.put(site.name().toLowerCase(Locale.ROOT), siteStats);
+        });
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("inFlight", inFlight.size());
+        stats.put("callSites", sites);
+        return stats;
+    }
+
+    private CompletableFuture<Chat> call(CallSite site, OutboundDispatcher.Priority priority, ChatRequest request,
+                                         LongConsumer usage) {
+        counters.get(site).upstreamCalls.increment();
+        return upstream.create(site, priority, request, usage);
+    }
+
+    private String requestKey(ChatRequest request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            // Not worth failing the request over; it just won't be shared
+            return null;
+        }
+    }
+
+    /**
+     * One shared upstream call and the number of callers still waiting for it.
+     */
+    private static final class Flight {
+        final CompletableFuture<Chat> shared = new CompletableFuture<>();
+        final AtomicInteger waiting = new AtomicInteger(1);
+        volatile CompletableFuture<Chat> upstream;
+
+        /**
+         * Adds a waiter, unless the last one has already cancelled the call.
+         */
+        boolean join() {
+            for (;;) {
+                int current = waiting.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (waiting.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Each caller gets its own copy so that cancelling one does not cancel
+         * the others; the call itself is cancelled with the last of them.
+         */
+        CompletableFuture<Chat> waiter() {
+            CompletableFuture<Chat> copy = shared.copy();
+            copy.whenComplete((chat, error) -> {
+                if (copy.isCancelled() && waiting.decrementAndGet() == 0) {
+                    upstream.cancel(false);
+                }
+            });
+            return copy;
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder upstreamCalls = new LongAdder();
+        final LongAdder coalesced = new LongAdder();
+    }
+}
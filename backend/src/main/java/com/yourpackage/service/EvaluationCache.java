@@ -0,0 +1,251 @@
+package com.yourpackage.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.yourpackage.config.EvaluationCacheProperties;
+import com.yourpackage.model.FreeResponseEvaluation;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Caches free-response evaluations by a SHA-256 of the normalized
+ * (subject, question, response) triple, so resubmitting the same answer is
+ * served from memory. Entries evicted for size can optionally be spilled to
+ * local disk as JSON and are read back on a later miss.
+ */
+@Service
+public class EvaluationCache implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(EvaluationCache.class);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final String SPILL_SUFFIX = ".json";
+
+    private final EvaluationCacheProperties properties;
+    private final AsyncCache<String, FreeResponseEvaluation> cache;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path spillDirectory;
+
+    private final AtomicLong spillWrites = new AtomicLong();
+    private final AtomicLong spillHits = new AtomicLong();
+    private final AtomicLong spillFailures = new AtomicLong();
+
+    public EvaluationCache(EvaluationCacheProperties properties) {
+        this.properties = properties;
+        this.spillDirectory = properties.isSpillEnabled() ? Paths.get(properties.getSpillDirectory()) : null;
+
+        Caffeine<String, FreeResponseEvaluation> builder = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxWeight())
+                .weigher((String key, FreeResponseEvaluation evaluation) -> key.length() + weigh(evaluation))
+                .expireAfterWrite(properties.getTtl())
+                .recordStats();
+        if (spillDirectory != null) {
+            builder = builder.removalListener(this::spill);
+        }
+        this.cache = builder.buildAsync();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "evaluation");
+        FunctionCounter.builder("helpstudy.evaluation.cache.spill", spillWrites, AtomicLong::get)
+                .tag("operation", "write").register(registry);
+        FunctionCounter.builder("helpstudy.evaluation.cache.spill", spillHits, AtomicLong::get)
+                .tag("operation", "hit").register(registry);
+        FunctionCounter.builder("helpstudy.evaluation.cache.spill", spillFailures, AtomicLong::get)
+                .tag("operation", "failure").register(registry);
+    }
+
+    /**
+     * Returns the evaluation for this submission if one is in memory, being
+     * computed, or spilled to disk (which is read back into memory), or null.
+     * This is the lookup that records the hit or miss; a miss is then loaded
+     * through {@link #get}.
+     */
+    public CompletableFuture<FreeResponseEvaluation> getIfPresent(String subject, String question, String response) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        String key = key(subject, question, response);
+        CompletableFuture<FreeResponseEvaluation> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        FreeResponseEvaluation spilled = readSpill(key);
+        if (spilled == null) {
+            return null;
+        }
+        CompletableFuture<FreeResponseEvaluation> restored = CompletableFuture.completedFuture(spilled);
+        CompletableFuture<FreeResponseEvaluation> raced = cache.asMap().putIfAbsent(key, restored);
+        return raced != null ? raced : restored;
+    }
+
+    /**
+     * Starts (or joins) the evaluation through {@code loader} after
+     * {@link #getIfPresent} missed, without recording a second miss. Failed
+     * loads are not cached, so callers should only map errors to a response
+     * after this returns.
+     */
+    public CompletableFuture<FreeResponseEvaluation> get(String subject, String question, String response,
+                                                         Supplier<CompletableFuture<FreeResponseEvaluation>> loader) {
+        if (!properties.isEnabled()) {
+            return loader.get();
+        }
+        // Unlike cache.get, compute records the load but not a hit or miss
+        return cache.asMap().compute(key(subject, question, response),
+                (key, existing) -> existing != null ? existing : loader.get());
+    }
+
+    @Scheduled(fixedDelayString = "${helpstudy.evaluation-cache.spill-cleanup-interval:PT30M}")
+    public void cleanUpSpill() {
+        if (spillDirectory == null || !Files.isDirectory(spillDirectory)) {
+            return;
+        }
+        long expiredBefore = System.currentTimeMillis() - properties.getTtl().toMillis();
+        List<SpillFile> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(spillDirectory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (path.getFileName().toString().endsWith(SPILL_SUFFIX)) {
+                    files.add(new SpillFile(path, Files.getLastModifiedTime(path).toMillis(), Files.size(path)));
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not list evaluation spill directory {}", spillDirectory, e);
+            return;
+        }
+
+        // Drop expired files, then the oldest ones until the directory is under its size cap
+        files.sort(Comparator.comparingLong(SpillFile::modified).reversed());
+        long keptBytes = 0;
+        for (SpillFile file : files) {
+            boolean expired = file.modified() < expiredBefore;
+            if (!expired && keptBytes + file.size() <= properties.getMaxSpillBytes()) {
+                keptBytes += file.size();
+                continue;
+            }
+            try {
+                Files.deleteIfExists(file.path());
+            } catch (IOException e) {
+                logger.warn("Could not delete spilled evaluation {}", file.path(), e);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats cacheStats = cache.synchronous().stats();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("size", cache.synchronous().estimatedSize());
+        stats.put("weight", cache.synchronous().policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L));
+        stats.put("maxWeight", properties.getMaxWeight());
+        stats.put("hits", cacheStats.hitCount());
+        stats.put("misses", cacheStats.missCount());
+        stats.put("hitRate", cacheStats.hitRate());
+        stats.put("evictions", cacheStats.evictionCount());
+        stats.put("spillEnabled", spillDirectory != null);
+        stats.put("spillWrites", spillWrites.get());
+        stats.put("spillHits", spillHits.get());
+        stats.put("spillFailures", spillFailures.get());
+        return stats;
+    }
+
+    static String key(String subject, String question, String response) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[]{subject.toLowerCase(Locale.ROOT), question, response}) {
+                byte[] bytes = normalize(part).getBytes(StandardCharsets.UTF_8);
+                // Length-prefix each part so that ("ab", "c") and ("a", "bc") differ
+                digest.update(new byte[]{(byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16),
+                        (byte) (bytes.length >>> 8), (byte) bytes.length});
+                digest.update(bytes);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : WHITESPACE.matcher(text.strip()).replaceAll(" ");
+    }
+
+    private static int weigh(FreeResponseEvaluation evaluation) {
+        return length(evaluation.getFeedback()) + length(evaluation.getScore())
+                + length(evaluation.getMaxScore()) + length(evaluation.getScoreExplanation());
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    private void spill(String key, FreeResponseEvaluation evaluation, RemovalCause cause) {
+        // Expired or replaced entries are not worth keeping; only spill what lost out on space
+        if (cause != RemovalCause.SIZE || key == null || evaluation == null) {
+            return;
+        }
+        Path target = spillPath(key);
+        Path temp = spillDirectory.resolve(key + ".tmp");
+        try {
+            Files.createDirectories(spillDirectory);
+            Files.write(temp, objectMapper.writeValueAsBytes(evaluation));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            spillWrites.incrementAndGet();
+        } catch (IOException e) {
+            spillFailures.incrementAndGet();
+            logger.warn("Could not spill evaluation {} to disk", key, e);
+        }
+    }
+
+    private FreeResponseEvaluation readSpill(String key) {
+        if (spillDirectory == null) {
+            return null;
+        }
+        Path path = spillPath(key);
+        try {
+            FileTime modified = Files.getLastModifiedTime(path);
+            if (modified.toMillis() < System.currentTimeMillis() - properties.getTtl().toMillis()) {
+                Files.deleteIfExists(path);
+                return null;
+            }
+            FreeResponseEvaluation evaluation = objectMapper.readValue(path.toFile(), FreeResponseEvaluation.class);
+            spillHits.incrementAndGet();
+            return evaluation;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            spillFailures.incrementAndGet();
+            logger.warn("Could not read spilled evaluation {}", path, e);
+            return null;
+        }
+    }
+
+    private Path spillPath(String key) {
+        return spillDirectory.resolve(key + SPILL_SUFFIX);
+    }
+
+    private record SpillFile(Path path, long modified, long size) {
+    }
+}
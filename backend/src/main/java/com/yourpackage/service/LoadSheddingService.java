@@ -0,0 +1,126 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.LoadSheddingProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * One {@link Bulkhead} per {@link OperationClass}, so each kind of request has
+ * its own concurrency limit and wait queue and an evaluation burst cannot
+ * starve cheap questions or memory reads. Limits adapt to observed latency
+ * and can be changed at runtime through the {@code loadshedding} actuator
+ * endpoint; their state is served at {@code /api/stats/load-shedding} and as
+ * {@code helpstudy.bulkhead.*} meters.
+ */
+@Service
+public class LoadSheddingService implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadSheddingService.class);
+
+    private final LoadSheddingProperties properties;
+    private final Map<OperationClass, Bulkhead> bulkheads = new EnumMap<>(OperationClass.class);
+
+    public LoadSheddingService(LoadSheddingProperties properties) {
+        this.properties = properties;
+        for (OperationClass operation : OperationClass.values()) {
+            bulkheads.put(operation, new Bulkhead(operation, properties.limitsFor(operation)));
+        }
+    }
+
+    /**
+     * Runs an asynchronous operation within its class's limit, queueing it if
+     * the limit is reached. Fails with {@link OverloadedException} if it cannot
+     * be queued or waits too long.
+     */
+    public <T> CompletableFuture<T> submit(OperationClass operation, Supplier<CompletableFuture<T>> call) {
+        if (!properties.isEnabled()) {
+            return call.get();
+        }
+        return bulkheads.get(operation).submit(call);
+    }
+
+    /**
+     * Runs a synchronous operation within its class's limit, or throws
+     * {@link OverloadedException} straight away if the limit is reached.
+     */
+    public <T> T call(OperationClass operation, Supplier<T> call) {
+        if (!properties.isEnabled()) {
+            return call.get();
+        }
+        return bulkheads.get(operation).call(call);
+    }
+
+    /**
+     * Changes a class's settings; null arguments leave a setting as it is. A
+     * new {@code limit} takes effect at once, the rest from the next operation.
+     */
+    public Map<String, Object> tune(OperationClass operation, Integer limit, Integer minLimit, Integer maxLimit,
+                                    Integer maxQueued, Boolean adaptive, Long latencyThresholdMillis) {
+        LoadSheddingProperties.Limits limits = properties.limitsFor(operation);
+        if (minLimit != null) {
+            limits.setMinLimit(Math.max(1, minLimit));
+        }
+        if (maxLimit != null) {
+            limits.setMaxLimit(Math.max(1, maxLimit));
+        }
+        if (maxQueued != null) {
+            limits.setMaxQueued(Math.max(0, maxQueued));
+        }
+        if (adaptive != null) {
+            limits.setAdaptive(adaptive);
+        }
+        if (latencyThresholdMillis != null) {
+            limits.setLatencyThreshold(Duration.ofMillis(Math.max(1, latencyThresholdMillis)));
+        }
+        Bulkhead bulkhead = bulkheads.get(operation);
+        // Applied last so that it is clamped to the new bounds, and so that raised bounds free queued work
+        bulkhead.setLimit(limit != null ? limit : bulkhead.limit());
+        Map<String, Object> stats = bulkhead.stats();
+        logger.info("Load shedding limits for {} changed: {}", operation.tag(), stats);
+        return stats;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> operations = new LinkedHashMap<>();
+        bulkheads.forEach((operation, bulkhead) -> operations.put(operation.tag(), bulkhead.stats()));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("operations", operations);
+        return stats;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bulkheads.forEach((operation, bulkhead) -> {
+            String tag = operation.tag();
+            Gauge.builder("helpstudy.bulkhead.limit", bulkhead, Bulkhead::limit)
+                    .description("Current concurrency limit of the operation class")
+                    .tag("operation", tag).register(registry);
+            Gauge.builder("helpstudy.bulkhead.inflight", bulkhead, Bulkhead::inFlight)
+                    .description("Operations of the class running")
+                    .tag("operation", tag).register(registry);
+            Gauge.builder("helpstudy.bulkhead.queued", bulkhead, Bulkhead::queued)
+                    .description("Operations of the class waiting for a slot")
+                    .tag("operation", tag).register(registry);
+            FunctionCounter.builder("helpstudy.bulkhead.rejected", bulkhead, Bulkhead::rejectedFull)
+                    .description("Operations refused with 503")
+                    .tag("operation", tag).tag("reason", "full").register(registry);
+            FunctionCounter.builder("helpstudy.bulkhead.rejected", bulkhead, Bulkhead::expired)
+                    .description("Operations refused with 503")
+                    .tag("operation", tag).tag("reason", "expired").register(registry);
+        });
+    }
+}
@@ -0,0 +1,172 @@
+package com.yourpackage.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Single-pass parser for model-written multiple choice questions: a stem
+ * followed by four option lines A-D, one of which carries the {@code ***}
+ * correct-answer marker. Matching is done by hand on the original string, so
+ * parsing allocates little beyond the stem and the four option strings.
+ *
+ * <p>Accepted option prefixes include {@code A)}, {@code A.}, {@code A***)},
+ * {@code A*** .} and {@code A) ***}; the marker may appear anywhere on the line.
+ */
+final class MultipleChoiceParser {
+
+    static final int OPTION_COUNT = 4;
+    private static final String MARKER = "***";
+
+    private MultipleChoiceParser() {
+    }
+
+    /**
+     * Parsed question, with the options in their original order.
+     */
+    record Parsed(String stem, String[] options, int correctIndex) {
+
+        /**
+         * Returns the same question with its options in random order.
+         */
+        Parsed shuffled() {
+            int[] order = {0, 1, 2, 3};
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = OPTION_COUNT - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            String[] reordered = new String[OPTION_COUNT];
+            int newCorrect = -1;
+            for (int i = 0; i < OPTION_COUNT; i++) {
+                reordered[i] = options[order[i]];
+                if (order[i] == correctIndex) {
+                    newCorrect = i;
+                }
+            }
+            return new Parsed(stem, reordered, newCorrect);
+        }
+    }
+
+    /**
+     * Returns the parsed question, or null unless the text has exactly one option
+     * for each of A-D and exactly one of them is marked correct.
+     */
+    static Parsed parse(String text) {
+        StringBuilder stem = new StringBuilder(text.length());
+        String[] options = new String[OPTION_COUNT];
+        int count = 0;
+        int correct = -1;
+        int lettersSeen = 0;
+
+        int length = text.length();
+        int lineStart = 0;
+        while (lineStart <= length) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            int start = lineStart;
+            int end = lineEnd;
+            while (start < end && Character.isWhitespace(text.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+                end--;
+            }
+
+            if (start < end) {
+                int contentStart = optionContentStart(text, start, end);
+                if (contentStart < 0) {
+                    // Keep stem lines as written (minus trailing whitespace), including indentation
+                    stem.append(text, lineStart, end).append('\n');
+                } else {
+                    int letterBit = 1 << (text.charAt(start) - 'A');
+                    if (count == OPTION_COUNT || (lettersSeen & letterBit) != 0) {
+                        return null;
+                    }
+                    lettersSeen |= letterBit;
+                    int marker = text.indexOf(MARKER, start);
+                    if (marker >= 0 && marker < end) {
+                        if (correct >= 0) {
+                            return null;
+                        }
+                        correct = count;
+                    }
+                    options[count++] = stripMarkers(text, contentStart, end);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        if (count != OPTION_COUNT || correct < 0) {
+            return null;
+        }
+        return new Parsed(trimStem(stem), options, correct);
+    }
+
+    /**
+     * Returns where the option text begins if the trimmed line {@code [start, end)}
+     * starts like an option (a letter A-D, an optional marker, then '.' or ')'),
+     * otherwise -1.
+     */
+    private static int optionContentStart(String text, int start, int end) {
+        char letter = text.charAt(start);
+        if (letter < 'A' || letter > 'D') {
+            return -1;
+        }
+        int i = start + 1;
+        if (text.startsWith(MARKER, i)) {
+            i += MARKER.length();
+            while (i < end && text.charAt(i) == ' ') {
+                i++;
+            }
+        }
+        if (i >= end) {
+            return -1;
+        }
+        char punctuation = text.charAt(i);
+        return punctuation == '.' || punctuation == ')' ? i + 1 : -1;
+    }
+
+    /**
+     * Copies {@code [from, to)} without any {@code ***} runs, trimmed.
+     */
+    private static String stripMarkers(String text, int from, int to) {
+        StringBuilder option = new StringBuilder(to - from);
+        int i = from;
+        while (i < to) {
+            if (i + MARKER.length() <= to && text.startsWith(MARKER, i)) {
+                i += MARKER.length();
+                continue;
+            }
+            option.append(text.charAt(i++));
+        }
+        int start = 0;
+        int end = option.length();
+        while (start < end && Character.isWhitespace(option.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(option.charAt(end - 1))) {
+            end--;
+        }
+        return option.substring(start, end);
+    }
+
+    /**
+     * Trims both ends of the stem: the blank line after its last line, and the
+     * indentation of its first, which only shows where the model started writing.
+     * Indentation of later stem lines is kept.
+     */
+    private static String trimStem(StringBuilder stem) {
+        int end = stem.length();
+        while (end > 0 && Character.isWhitespace(stem.charAt(end - 1))) {
+            end--;
+        }
+        int start = 0;
+        while (start < end && Character.isWhitespace(stem.charAt(start))) {
+            start++;
+        }
+        return stem.substring(start, end);
+    }
+}
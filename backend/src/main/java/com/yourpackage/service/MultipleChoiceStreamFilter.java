@@ -0,0 +1,107 @@
+package com.yourpackage.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Passes the question stem of a streamed multiple choice completion straight
+ * through to the client, but stops forwarding as soon as the first option line
+ * (A-D followed by '.', ')' or '*') begins, since the options are shuffled and
+ * sent as a single block once the completion is finished.
+ */
+class MultipleChoiceStreamFilter implements Consumer<String> {
+
+    private final Consumer<String> downstream;
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder undecidedLine = new StringBuilder();
+    private boolean lineIsStem;
+    private boolean optionsStarted;
+
+    MultipleChoiceStreamFilter(Consumer<String> downstream) {
+        this.downstream = downstream;
+    }
+
+    @Override
+    public void accept(String token) {
+        text.append(token);
+        if (optionsStarted) {
+            return;
+        }
+
+        StringBuilder out = new StringBuilder(token.length());
+        for (int i = 0; i < token.length() && !optionsStarted; i++) {
+            char c = token.charAt(i);
+            if (lineIsStem) {
+                out.append(c);
+                if (c == '\n') {
+                    lineIsStem = false;
+                }
+                continue;
+            }
+
+            undecidedLine.append(c);
+            if (c == '\n') {
+                // Line ended before it could look like an option (blank line or a lone letter)
+                out.append(undecidedLine);
+                undecidedLine.setLength(0);
+                continue;
+            }
+
+            int decision = classify(undecidedLine);
+            if (decision > 0) {
+                optionsStarted = true;
+            } else if (decision < 0) {
+                out.append(undecidedLine);
+                undecidedLine.setLength(0);
+                lineIsStem = true;
+            }
+        }
+
+        if (out.length() > 0) {
+            downstream.accept(out.toString());
+        }
+    }
+
+    String getText() {
+        return text.toString();
+    }
+
+    /**
+     * Returns the option lines of a finished question as one block.
+     */
+    static String optionBlock(String question) {
+        StringBuilder block = new StringBuilder();
+        for (String line : question.split("\n")) {
+            String trimmed = line.trim();
+            if (classify(trimmed) > 0) {
+                if (block.length() > 0) {
+                    block.append('\n');
+                }
+                block.append(trimmed);
+            }
+        }
+        return block.toString();
+    }
+
+    /**
+     * @return 1 if the line starts like an option, -1 if it cannot be one, 0 if
+     *         not enough characters have arrived yet to tell
+     */
+    static int classify(CharSequence line) {
+        int i = 0;
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        if (i >= line.length()) {
+            return 0;
+        }
+        char letter = line.charAt(i);
+        if (letter < 'A' || letter > 'D') {
+            return -1;
+        }
+        if (i + 1 >= line.length()) {
+            return 0;
+        }
+        char marker = line.charAt(i + 1);
+        return marker == '.' || marker == ')' || marker == '*' ? 1 : -1;
+    }
+}
@@ -1,249 +1,463 @@
 package com.yourpackage.service;
 
+import com.yourpackage.config.CoalescingProperties;
+import com.yourpackage.config.MathGenerationProperties;
+import com.yourpackage.config.OpenAIProperties;
+import com.yourpackage.config.OutboundProperties;
+import com.yourpackage.config.ResilienceProperties;
 import com.yourpackage.model.GuideEvaluation;
-import com.yourpackage.model.HistoryEvaluation;
+import com.yourpackage.tracing.RequestTrace;
 import io.github.sashirestela.cleverclient.client.OkHttpClientAdapter;
+import io.github.sashirestela.cleverclient.retry.RetryConfig;
 import io.github.sashirestela.openai.SimpleOpenAI;
+import io.github.sashirestela.openai.domain.chat.Chat;
 import io.github.sashirestela.openai.domain.chat.ChatMessage;
 import io.github.sashirestela.openai.domain.chat.ChatRequest;
 import io.github.sashirestela.openai.domain.response.ResponseRequest;
 import io.github.sashirestela.openai.domain.response.Reasoning;
 import io.github.sashirestela.openai.domain.response.Input;
 import io.github.sashirestela.openai.exception.OpenAIException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import com.yourpackage.model.FreeResponseEvaluation;
+import com.yourpackage.model.Question;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 @Service
 public class OpenAIService {
-    private final SimpleOpenAI openAI;
+    private static final Logger logger = LoggerFactory.getLogger(OpenAIService.class);
+    private static final String FREE_RESPONSE_SYSTEM_PROMPT = "You are an expert on all AP classes. Create challenging and detailed free response questions. Only provide the question and any necessary context. No sample answers or solutions. Make sure to mark ONLY THE BEGINNING of each section of the question (for example, A. B. C. D.) with 5 astricks (*****) after. Make sure the question is appropriate for AP-level assessment. Make sure to include texts and context for the student to read, if there are background documents include them entirely. Start your response with the context section.";
+    private static final String MULTIPLE_CHOICE_SYSTEM_PROMPT = "You are an expert on all classes. Create challenging and full length multiple choice questions. Only provide the question and 4 multiple choice options, and the choices should be marked with the letters A B C D accordingly. Create a multiple choice question with exactly one correct answer. Mark the correct option with *** IMMEDIATELY after the letter (e.g., A***). The other three options must be clearly incorrect. Do not create ambiguous or subjective answer choices. CRITICAL: For math questions, always double-check your calculations and ensure the *** marker is placed correctly after the letter of the correct answer. If the question involves math or physics, compute the correct answer before writing the choices. For mathematical expressions, use LaTeX formatting with \\[...\\] for display math and \\(...\\) for inline math (matching the frontend MathRenderer component). If the subject is EuroHistory, HumanGeo, Lit, or UsHistory always provide full text excerpts and in-depth questions. If the subject is CompSci only provide code-example questions in Java, no terms. No extra text or explanations. Format example:\nA) Wrong answer\nB***) Correct answer\nC) Wrong answer\nD) Wrong answer\n\nIMPORTANT: Always place *** IMMEDIATELY after the letter, before the parenthesis. Example: A***) not A) ***";
+    private static final Pattern FINAL_ANSWER_PATTERN = Pattern.compile("FINAL ANSWER:\\s*(.+?)(?:\\n|$)", Pattern.CASE_INSENSITIVE);
+    private static final String GUIDE_SYSTEM_PROMPT = "You are an expert tutor on the topic the student is prompting you about. Provide a concise explanation the topic the student is asking about at the quality of a master tutor. Only provide the guide; no extra dialogue";
+
+    private final ResilientChatClient resilientClient;
+    private final CoalescingChatClient chatClient;
     private final ObjectMapper objectMapper;
     private final PromptMemoryService memoryService;
+    private final EvaluationCache evaluationCache;
+    private final MathGenerationProperties mathProperties;
+    private final TokenBudgetService tokenBudget;
+    private final OutboundDispatcher dispatcher;
+
+    private final AtomicLong mathSolveAttempts = new AtomicLong();
+    private final AtomicLong mathVerifiedWins = new AtomicLong();
+    private final AtomicLong mathFallbackWins = new AtomicLong();
+    private final AtomicLong batchQuestions = new AtomicLong();
+    private final AtomicLong batchRejected = new AtomicLong();
 
-    public OpenAIService(PromptMemoryService memoryService) {
+    public OpenAIService(PromptMemoryService memoryService, EvaluationCache evaluationCache,
+                         OpenAIProperties openAIProperties, CoalescingProperties coalescingProperties,
+                         MathGenerationProperties mathProperties, ResilienceProperties resilienceProperties,
+                         TokenBudgetService tokenBudget, OutboundProperties outboundProperties,
+                         MeterRegistry meterRegistry) {
         this.memoryService = memoryService;
+        this.evaluationCache = evaluationCache;
+        this.mathProperties = mathProperties;
+        this.tokenBudget = tokenBudget;
+
+        // OutboundDispatcher decides what is sent when; OkHttp just has to let that many through to one host
+        Dispatcher httpDispatcher = new Dispatcher();
+        int maxInFlight = Math.max(1, outboundProperties.getMaxInFlight());
+        httpDispatcher.setMaxRequests(maxInFlight);
+        httpDispatcher.setMaxRequestsPerHost(maxInFlight);
 
+        // Lets cancelling a model call's future cancel its HTTP request
+        CancellableCalls calls = new CancellableCalls();
         OkHttpClient httpClient = new OkHttpClient.Builder()
+                .dispatcher(httpDispatcher)
+                .connectionPool(new ConnectionPool(outboundProperties.getMaxIdleConnections(),
+                        outboundProperties.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS))
+                .protocols(outboundProperties.isHttp2()
+                        ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : List.of(Protocol.HTTP_1_1))
                 .connectTimeout(Duration.ofSeconds(20))
                 .readTimeout(Duration.ofSeconds(120))  // 2 minutes for GPT-5 reasoning
                 .writeTimeout(Duration.ofSeconds(30))
+                .eventListenerFactory(calls)
                 .build();
 
-        this.openAI = SimpleOpenAI.builder()
+        SimpleOpenAI openAI = SimpleOpenAI.builder()
                 .apiKey(System.getenv("OPENAI_API_KEY"))
+                .baseUrl(openAIProperties.getBaseUrl())
                 .clientAdapter(new OkHttpClientAdapter(httpClient))
+                // ResilientChatClient retries; cleverclient's default retries would multiply its attempts and
+                // resend requests on their own threads, where a cancelled call's retry cannot be cancelled
+                .retryConfig(RetryConfig.builder().maxAttempts(1).build())
                 .build();
+        this.dispatcher = new OutboundDispatcher(outboundProperties, meterRegistry);
+        this.resilientClient = new ResilientChatClient(openAI, resilienceProperties,
+                new UpstreamMetrics(meterRegistry, tokenBudget), dispatcher, calls);
+        this.chatClient = new CoalescingChatClient(resilientClient, coalescingProperties);
         this.objectMapper = new ObjectMapper();
     }
 
-    private String shuffleMultipleChoiceOptions(String response) {
-        try {
-            String[] lines = response.split("\n");
-            List<String> questionLines = new ArrayList<>();
-            List<String> optionLines = new ArrayList<>();
-            String correctAnswerContent = null;
-            
-            for (String line : lines) {
-                String trimmedLine = line.trim();
-                if (trimmedLine.matches("^[A-D][.)].*") || trimmedLine.matches("^[A-D]\\*\\*\\*[.)].*")) {
-                    optionLines.add(trimmedLine);
-                } else if (!trimmedLine.isEmpty()) {
-                    questionLines.add(line);
-                }
-            }
-            
-            if (optionLines.size() != 4) {
-                return response;
-            }
-            
-            // Parse options and find correct answer
-            List<String> cleanOptions = new ArrayList<>();
-            String correctAnswerLetter = null;
-            
-            for (String option : optionLines) {
-                if (option.contains("***")) {
-                    correctAnswerLetter = option.substring(0, 1); // Get the letter (A, B, C, or D)
-                   correctAnswerContent = option.replaceAll("\\*\\*\\*", "").replaceFirst("^[A-D][.)]?\\s*", "").trim();
-                }
-                
-                String cleanContent = option.replaceAll("\\*\\*\\*", "").replaceFirst("^[A-D][.)]?\\s*", "").trim();
-                cleanOptions.add(cleanContent);
-            }
-            
-            if (correctAnswerLetter == null || correctAnswerContent == null) {
-                return response;
-            }
-            
-            Collections.shuffle(cleanOptions);
-            
-            int newCorrectPosition = -1;
-            for (int i = 0; i < cleanOptions.size(); i++) {
-                if (cleanOptions.get(i).equals(correctAnswerContent)) {
-                    newCorrectPosition = i;
-                    break;
-                }
-            }
-            
-            StringBuilder result = new StringBuilder();
-            
-            for (String questionLine : questionLines) {
-                result.append(questionLine).append("\n");
-            }
-            
-            char[] letters = {'A', 'B', 'C', 'D'};
-            for (int i = 0; i < cleanOptions.size(); i++) {
-                String prefix = letters[i] + (i == newCorrectPosition ? "***)" : ")");
-                result.append(prefix).append(" ").append(cleanOptions.get(i)).append("\n");
-            }
-            
-            return result.toString().trim();
-            
-        } catch (Exception e) {
-            System.err.println("Error shuffling options: " + e.getMessage());
-            return response;
+    /**
+     * Builds the question for a model response. Multiple choice options are
+     * shuffled so the marked answer is not always where the model put it; text
+     * that does not parse as a well-formed question is kept as it is.
+     */
+    static Question toQuestion(String type, String subject, String text, String topic, Question.Metadata metadata) {
+        if (Question.FREE_RESPONSE.equals(type)) {
+            return Question.unstructured(Question.FREE_RESPONSE, text.trim(), topic, subject, metadata);
+        }
+        MultipleChoiceParser.Parsed parsed = MultipleChoiceParser.parse(text);
+        if (parsed == null) {
+            return Question.unstructured(Question.MULTIPLE_CHOICE, text.trim(), topic, subject, metadata);
         }
+        parsed = parsed.shuffled();
+        return Question.multipleChoice(parsed.stem(), List.of(parsed.options()), parsed.correctIndex(),
+                topic, subject, metadata);
     }
 
-    public String generateQuestion(String prompt, String type, String subject) {
-        int creditdiff;
-        String model;
-        try {
-            String systemPrompt;
-            String diversePrompt = memoryService.generateDiversePrompt(subject, type);
+    /**
+     * Records the response's topic in the user's prompt memory and builds the question.
+     */
+    private Question recordQuestion(String userId, String type, String subject, Draft draft) {
+        try (RequestTrace.Span span = RequestTrace.start("post-process")) {
+            String topic = memoryService.extractTopicFromResponse(draft.text(), subject);
+            memoryService.recordTopic(userId, subject, topic);
+            return toQuestion(type, subject, draft.text(), topic, draft.metadata());
+        }
+    }
 
-            if ("free-response".equals(type)) {
-                systemPrompt = "You are an expert on all AP classes. Create challenging and detailed free response questions. Only provide the question and any necessary context. No sample answers or solutions. Make sure to mark ONLY THE BEGINNING of each section of the question (for example, A. B. C. D.) with 5 astricks (*****) after. Make sure the question is appropriate for AP-level assessment. Make sure to include texts and context for the student to read, if there are background documents include them entirely. Start your response with the context section.";
-                creditdiff = 30000;
-                model = "gpt-4o-mini";
-            } else {
-                // Enhanced system prompt for math accuracy
-                boolean isMathSubject = subject.toLowerCase().contains("math") ||
-                                      subject.toLowerCase().contains("calc") ||
-                                      subject.toLowerCase().contains("statistics") ||
-                                      subject.toLowerCase().contains("physics") ||
-                                      subject.toLowerCase().contains("chemistry");
-
-                if (isMathSubject) {
-                    return generateMathQuestionWithVerification(diversePrompt, subject);
-                }
+    /**
+     * Generates a question without blocking the caller. The returned future
+     * completes on the HTTP client's callback thread, and completes exceptionally
+     * if the model call fails or returns nothing. The prompt avoids, and the
+     * result is recorded in, {@code userId}'s topic memory.
+     */
+    public CompletableFuture<Question> generateQuestion(String userId, String prompt, String type, String subject) {
+        try {
+            String diversePrompt = memoryService.generateDiversePrompt(userId, subject, type);
 
-                systemPrompt = "You are an expert on all classes. Create challenging and full length multiple choice questions. Only provide the question and 4 multiple choice options, and the choices should be marked with the letters A B C D accordingly. Create a multiple choice question with exactly one correct answer. Mark the correct option with *** IMMEDIATELY after the letter (e.g., A***). The other three options must be clearly incorrect. Do not create ambiguous or subjective answer choices. CRITICAL: For math questions, always double-check your calculations and ensure the *** marker is placed correctly after the letter of the correct answer. If the question involves math or physics, compute the correct answer before writing the choices. For mathematical expressions, use LaTeX formatting with \\[...\\] for display math and \\(...\\) for inline math (matching the frontend MathRenderer component). If the subject is EuroHistory, HumanGeo, Lit, or UsHistory always provide full text excerpts and in-depth questions. If the subject is CompSci only provide code-example questions in Java, no terms. No extra text or explanations. Format example:\nA) Wrong answer\nB***) Correct answer\nC) Wrong answer\nD) Wrong answer\n\nIMPORTANT: Always place *** IMMEDIATELY after the letter, before the parenthesis. Example: A***) not A) ***";
-                creditdiff = 2000;
-                model = "gpt-4o-mini";
+            if (!"free-response".equals(type) && isMathSubject(subject)) {
+                return generateMathQuestionWithVerification(userId, diversePrompt, subject);
             }
 
-            // Use Chat Completions API with gpt-4o-mini for better formatting
-            var chatRequest = ChatRequest.builder()
-                    .model(model)
-                    .message(ChatMessage.SystemMessage.of(systemPrompt))
-                    .message(ChatMessage.UserMessage.of(diversePrompt))
-                    .temperature(1.0)
-                    .maxCompletionTokens(creditdiff)
-                    .build();
+            var chatRequest = buildQuestionRequest(type, diversePrompt);
 
-            var futureChat = openAI.chatCompletions().create(chatRequest);
-            var chatResponse = futureChat.join();
+            return chatClient.create(CallSite.QUESTION, priorityFor(userId), chatRequest, usageOf(userId))
+                    .thenApply(chatResponse -> {
+                        // Only rendered if this request's trace is sampled or the request fails
+                        RequestTrace.detail("response", chatResponse);
 
-            // Debug logging
-            System.out.println("Chat response: " + chatResponse);
+                        String response = chatResponse.firstContent();
+                        if (response == null || response.trim().isEmpty()) {
+                            throw new IllegalStateException("Received empty response from AI model");
+                        }
 
-            String response = chatResponse.firstContent();
-            System.out.println("Extracted response length: " + (response != null ? response.length() : "null"));
-            System.out.println("Response preview: " + (response != null ? response.substring(0, Math.min(200, response.length())) : "null"));
+                        return recordQuestion(userId, type, subject,
+                                new Draft(response, CallSite.QUESTION, chatRequest.getModel()));
+                    });
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-            if (response == null || response.trim().isEmpty()) {
-                System.err.println("ERROR: Empty response. Full response object: " + chatResponse);
-                return "Error: Received empty response from AI model";
+    /**
+     * Streams a question to {@code onToken} as the model produces it. For multiple
+     * choice the option lines are held back, shuffled once the completion is done
+     * and handed to {@code onOptions} as one block. Returns the final question.
+     */
+    public Question streamQuestion(String userId, String type, String subject,
+                                   Consumer<String> onToken, Consumer<String> onOptions) {
+        String diversePrompt = memoryService.generateDiversePrompt(userId, subject, type);
+        boolean multipleChoice = !Question.FREE_RESPONSE.equals(type);
+
+        CallSite site = CallSite.QUESTION;
+        ChatRequest chatRequest;
+        String response;
+        if (!multipleChoice) {
+            chatRequest = buildQuestionRequest(type, diversePrompt);
+            response = streamCompletion(userId, site, chatRequest, onToken);
+        } else {
+            MultipleChoiceStreamFilter filter = new MultipleChoiceStreamFilter(onToken);
+            if (isMathSubject(subject)) {
+                ChatRequest formatRequest = prepareMathQuestionRequest(userId, diversePrompt, subject);
+                site = formatRequest != null ? CallSite.MATH_FORMAT : CallSite.MATH_FALLBACK;
+                chatRequest = formatRequest != null ? formatRequest : buildFallbackRequest(diversePrompt);
+            } else {
+                chatRequest = buildQuestionRequest(type, diversePrompt);
             }
+            streamCompletion(userId, site, chatRequest, filter);
+            response = filter.getText();
+        }
+
+        if (response.isBlank()) {
+            throw new IllegalStateException("Received empty response from AI model");
+        }
 
-            String extractedTopic = memoryService.extractTopicFromResponse(response, subject);
-            memoryService.recordTopic(subject, extractedTopic);
+        Question question = recordQuestion(userId, type, subject, new Draft(response, site, chatRequest.getModel()));
+        if (multipleChoice) {
+            onOptions.accept(MultipleChoiceStreamFilter.optionBlock(question.toText()));
+        }
+        return question;
+    }
 
-            if (!"free-response".equals(type)) {
-                response = shuffleMultipleChoiceOptions(response);
+    /**
+     * Generates up to {@code count} multiple choice questions with a single
+     * streamed completion. Each question is validated, shuffled and handed to
+     * {@code onQuestion} as soon as it has been fully received; malformed ones are
+     * skipped. Topics for the whole batch are recorded together at the end.
+     */
+    public List<Question> streamQuestionBatch(String userId, String subject, int count, Consumer<Question> onQuestion) {
+        String diversePrompt = memoryService.generateDiversePrompt(userId, subject, Question.MULTIPLE_CHOICE);
+        ChatRequest chatRequest = buildBatchRequest(diversePrompt, count);
+        List<Question> questions = new ArrayList<>(count);
+        List<String> topics = new ArrayList<>(count);
+
+        BatchQuestionSplitter splitter = new BatchQuestionSplitter(block -> {
+            if (questions.size() >= count) {
+                return;
+            }
+            if (!BatchQuestionSplitter.isValidMultipleChoice(block)) {
+                batchRejected.incrementAndGet();
+                return;
             }
+            String topic = memoryService.extractTopicFromResponse(block, subject);
+            Question question = toQuestion(Question.MULTIPLE_CHOICE, subject, block, topic,
+                    new Question.Metadata(chatRequest.getModel(), CallSite.BATCH.name(), System.currentTimeMillis()));
+            questions.add(question);
+            topics.add(topic);
+            batchQuestions.incrementAndGet();
+            onQuestion.accept(question);
+        });
+        streamCompletion(userId, CallSite.BATCH, chatRequest, splitter);
+        splitter.finish();
 
-            HistoryEvaluation historyEvaluation = new HistoryEvaluation(response, false);
-            return response;
-        } catch (OpenAIException e) {
-            e.printStackTrace();
-            return "Error generating question: " + e.getMessage();
+        if (questions.isEmpty()) {
+            throw new IllegalStateException("Received no valid questions from AI model");
         }
+        memoryService.recordTopics(userId, subject, topics);
+        return questions;
     }
 
-    private String generateMathQuestionWithVerification(String diversePrompt, String subject) {
-        try {
-            // Step 1: Generate a problem and solve it step by step
-            String solutionPrompt = "You are a mathematics expert. Create an AP-level " + subject + " problem based on this topic: " + diversePrompt + 
-                    "\n\nFirst, create a challenging problem. Then solve it step-by-step showing all work. " +
-                    "Use LaTeX formatting with \\[...\\] for display math and \\(...\\) for inline math. " +
-                    "At the end, clearly state: 'FINAL ANSWER: [your answer]'\n\n" +
-                    "Make sure your calculations are correct and show your work clearly.";
-            
-            // Use gpt-4o-mini for better math accuracy and formatting
-            var solutionRequest = ChatRequest.builder()
-                    .model("gpt-4o-mini")
-                    .message(ChatMessage.SystemMessage.of("You are a precise mathematics expert."))
-                    .message(ChatMessage.UserMessage.of(solutionPrompt))
-                    .temperature(0.7)
-                    .maxCompletionTokens(1500)
-                    .build();
+    /**
+     * Solve-then-format generation for math subjects. In pipelined mode several
+     * solve attempts run at once and the first with an extractable final answer
+     * is formatted, while the single-step fallback is started speculatively. The
+     * verified result is preferred if it arrives within the deadline; otherwise
+     * (or if it fails) the fallback is used. Whichever loses is cancelled, down
+     * to its HTTP requests.
+     */
+    private CompletableFuture<Question> generateMathQuestionWithVerification(String userId, String diversePrompt,
+                                                                             String subject) {
+        boolean pipelined = mathProperties.isPipelined();
+        int attempts = pipelined ? Math.max(1, mathProperties.getSolveAttempts()) : 1;
+
+        List<CompletableFuture<MathSolution>> solves = launchSolveAttempts(userId, diversePrompt, subject, attempts);
+        AtomicReference<CompletableFuture<Chat>> format = new AtomicReference<>();
+        CompletableFuture<Draft> verified = firstSuccessful(solves)
+                .thenCompose(solution -> {
+                    ChatRequest formatRequest = buildMathQuestionRequest(solution.text(), solution.answer());
+                    CompletableFuture<Chat> formatCall = chatClient.create(CallSite.MATH_FORMAT, priorityFor(userId),
+                            formatRequest, usageOf(userId));
+                    format.set(formatCall);
+                    return formatCall.thenApply(questionResponse -> new Draft(
+                            requireMarkedAnswer(questionResponse.firstContent()),
+                            CallSite.MATH_FORMAT, formatRequest.getModel()));
+                });
 
-            var solutionResponse = openAI.chatCompletions().create(solutionRequest).join();
-            String solutionText = solutionResponse.firstContent();
-            
-            // Extract the final answer
-            Pattern answerPattern = Pattern.compile("FINAL ANSWER:\\s*(.+?)(?:\\n|$)", Pattern.CASE_INSENSITIVE);
-            Matcher answerMatcher = answerPattern.matcher(solutionText);
-            String correctAnswer = "";
-            if (answerMatcher.find()) {
-                correctAnswer = answerMatcher.group(1).trim();
+        CompletableFuture<Draft> fallback = null;
+        if (pipelined) {
+            verified.orTimeout(mathProperties.getDeadline().toMillis(), TimeUnit.MILLISECONDS);
+            if (mathProperties.isSpeculativeFallback()) {
+                fallback = generateQuestionFallback(userId, diversePrompt, subject);
             }
-            
-            if (correctAnswer.isEmpty()) {
-                // Fallback to original method if answer extraction fails
-                return generateQuestionFallback(diversePrompt, subject);
+        }
+        CompletableFuture<Draft> speculative = fallback;
+
+        verified.whenComplete((question, error) -> {
+            // Solve attempts that have not finished yet are no longer needed either way
+            solves.forEach(solve -> solve.cancel(false));
+            if (error == null) {
+                mathVerifiedWins.incrementAndGet();
+                if (speculative != null) {
+                    speculative.cancel(false);
+                }
+            } else if (format.get() != null) {
+                // Past the deadline while formatting
+                format.get().cancel(false);
             }
-            
-            String questionPrompt = "Based on this solved problem:\n\n" + solutionText +
-                    "\n\nCreate a clean multiple choice question with exactly 4 options (A, B, C, D). " +
-                    "The correct answer is: " + correctAnswer + 
-                    "\n\nMark the correct option with *** IMMEDIATELY after the letter (e.g., A***). " +
-                    "Create 3 realistic wrong answers based on common student errors. " +
-                    "Use LaTeX formatting with \\[...\\] for display math and \\(...\\) for inline math. " +
-                    "Only provide the question and the 4 options, no explanations.\n\n" +
-                    "Format:\n[Question text]\nA) Option 1\nB***) Correct option\nC) Option 3\nD) Option 4";
-            
-            // Use gpt-4o-mini for better formatting
-            var questionRequest = ChatRequest.builder()
-                    .model("gpt-4o-mini")
-                    .message(ChatMessage.SystemMessage.of("You are creating multiple choice questions with pre-verified answers."))
-                    .message(ChatMessage.UserMessage.of(questionPrompt))
-                    .temperature(0.8)
-                    .maxCompletionTokens(1000)
-                    .build();
+        });
 
-            var questionResponse = openAI.chatCompletions().create(questionRequest).join();
-            String response = questionResponse.firstContent();
-            
-            // Record topic and return
-            String extractedTopic = memoryService.extractTopicFromResponse(response, subject);
-            memoryService.recordTopic(subject, extractedTopic);
-            
-            return shuffleMultipleChoiceOptions(response);
-            
+        return verified
+                .exceptionallyCompose(e -> {
+                    logger.warn("Verified math generation failed, using fallback: {}", e.getMessage());
+                    CompletableFuture<Draft> draft = speculative != null
+                            ? speculative
+                            : generateQuestionFallback(userId, diversePrompt, subject);
+                    return draft.thenApply(fallbackDraft -> {
+                        mathFallbackWins.incrementAndGet();
+                        return fallbackDraft;
+                    });
+                })
+                .thenApply(draft -> recordQuestion(userId, Question.MULTIPLE_CHOICE, subject, draft));
+    }
+
+    /**
+     * Runs the (non-streamed) solve step of the math path and returns the request
+     * that formats the verified solution into a multiple choice question, or null
+     * if no final answer could be extracted and the fallback should be used.
+     */
+    private ChatRequest prepareMathQuestionRequest(String userId, String diversePrompt, String subject) {
+        int attempts = mathProperties.isPipelined() ? Math.max(1, mathProperties.getSolveAttempts()) : 1;
+        List<CompletableFuture<MathSolution>> solves = launchSolveAttempts(userId, diversePrompt, subject, attempts);
+        try {
+            MathSolution solution = firstSuccessful(solves)
+                    .orTimeout(mathProperties.getDeadline().toMillis(), TimeUnit.MILLISECONDS)
+                    .join();
+            return buildMathQuestionRequest(solution.text(), solution.answer());
         } catch (Exception e) {
-            System.err.println("Error in math question generation: " + e.getMessage());
-            return generateQuestionFallback(diversePrompt, subject);
+            logger.warn("Verified math generation failed, using fallback: {}", e.getMessage());
+            return null;
+        } finally {
+            solves.forEach(solve -> solve.cancel(false));
+        }
+    }
+
+    private List<CompletableFuture<MathSolution>> launchSolveAttempts(String userId, String diversePrompt,
+                                                                      String subject, int attempts) {
+        List<CompletableFuture<MathSolution>> solves = new ArrayList<>(attempts);
+        for (int i = 0; i < attempts; i++) {
+            mathSolveAttempts.incrementAndGet();
+            CompletableFuture<Chat> solveCall = chatClient.create(CallSite.MATH_SOLVE, priorityFor(userId),
+                    buildMathSolutionRequest(diversePrompt, subject), usageOf(userId));
+            solves.add(cancelsCall(solveCall, solveCall.thenApply(solutionResponse -> {
+                String solutionText = solutionResponse.firstContent();
+                String correctAnswer = extractFinalAnswer(solutionText);
+                if (correctAnswer.isEmpty()) {
+                    throw new IllegalStateException("No FINAL ANSWER in math solution");
+                }
+                return new MathSolution(solutionText, correctAnswer);
+            })));
+        }
+        return solves;
+    }
+
+    /**
+     * Makes cancelling {@code derived}, a stage computed from a model call,
+     * cancel the call as well; a plain dependent stage would just stop waiting.
+     */
+    private static <T> CompletableFuture<T> cancelsCall(CompletableFuture<Chat> call, CompletableFuture<T> derived) {
+        derived.whenComplete((value, error) -> {
+            if (derived.isCancelled()) {
+                call.cancel(false);
+            }
+        });
+        return derived;
+    }
+
+    /**
+     * Completes with the first of {@code futures} to succeed, or exceptionally
+     * with the last failure once all of them have failed.
+     */
+    private static <T> CompletableFuture<T> firstSuccessful(List<CompletableFuture<T>> futures) {
+        CompletableFuture<T> first = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            future.whenComplete((value, error) -> {
+                if (error == null) {
+                    first.complete(value);
+                } else if (remaining.decrementAndGet() == 0) {
+                    first.completeExceptionally(error);
+                }
+            });
+        }
+        return first;
+    }
+
+    private static String requireMarkedAnswer(String question) {
+        if (question == null || !question.contains("***")) {
+            throw new IllegalStateException("Formatted math question has no marked answer");
+        }
+        return question;
+    }
+
+    private ChatRequest buildMathSolutionRequest(String diversePrompt, String subject) {
+        // Step 1: Generate a problem and solve it step by step
+        String solutionPrompt = "You are a mathematics expert. Create an AP-level " + subject + " problem based on this topic: " + diversePrompt + 
+                "\n\nFirst, create a challenging problem. Then solve it step-by-step showing all work. " +
+                "Use LaTeX formatting with \\[...\\] for display math and \\(...\\) for inline math. " +
+                "At the end, clearly state: 'FINAL ANSWER: [your answer]'\n\n" +
+                "Make sure your calculations are correct and show your work clearly.";
+        
+        // Use gpt-4o-mini for better math accuracy and formatting
+        return ChatRequest.builder()
+                .model("gpt-4o-mini")
+                .message(ChatMessage.SystemMessage.of("You are a precise mathematics expert."))
+                .message(ChatMessage.UserMessage.of(solutionPrompt))
+                .temperature(0.7)
+                .maxCompletionTokens(1500)
+                .build();
+    }
+
+    private String extractFinalAnswer(String solutionText) {
+        if (solutionText == null) {
+            return "";
         }
+        Matcher answerMatcher = FINAL_ANSWER_PATTERN.matcher(solutionText);
+        if (answerMatcher.find()) {
+            return answerMatcher.group(1).trim();
+        }
+        return "";
+    }
+
+    private ChatRequest buildMathQuestionRequest(String solutionText, String correctAnswer) {
+        String questionPrompt = "Based on this solved problem:\n\n" + solutionText +
+                "\n\nCreate a clean multiple choice question with exactly 4 options (A, B, C, D). " +
+                "The correct answer is: " + correctAnswer + 
+                "\n\nMark the correct option with *** IMMEDIATELY after the letter (e.g., A***). " +
+                "Create 3 realistic wrong answers based on common student errors. " +
+                "Use LaTeX formatting with \\[...\\] for display math and \\(...\\) for inline math. " +
+                "Only provide the question and the 4 options, no explanations.\n\n" +
+                "Format:\n[Question text]\nA) Option 1\nB***) Correct option\nC) Option 3\nD) Option 4";
+        
+        // Use gpt-4o-mini for better formatting
+        return ChatRequest.builder()
+                .model("gpt-4o-mini")
+                .message(ChatMessage.SystemMessage.of("You are creating multiple choice questions with pre-verified answers."))
+                .message(ChatMessage.UserMessage.of(questionPrompt))
+                .temperature(0.8)
+                .maxCompletionTokens(1000)
+                .build();
     }
     
-    private String generateQuestionFallback(String diversePrompt, String subject) {
+    private CompletableFuture<Draft> generateQuestionFallback(String userId, String diversePrompt, String subject) {
+        ChatRequest fallbackRequest = buildFallbackRequest(diversePrompt);
+        CompletableFuture<Chat> fallbackCall = chatClient.create(CallSite.MATH_FALLBACK, priorityFor(userId),
+                fallbackRequest, usageOf(userId));
+        return cancelsCall(fallbackCall, fallbackCall.thenApply(chatResponse -> {
+            String response = chatResponse.firstContent();
+            if (response == null || response.trim().isEmpty()) {
+                throw new IllegalStateException("Received empty response from AI model");
+            }
+            return new Draft(response, CallSite.MATH_FALLBACK, fallbackRequest.getModel());
+        }));
+    }
+
+    private ChatRequest buildFallbackRequest(String diversePrompt) {
         // Fallback to improved single-step generation
         String systemPrompt = "You are a precise mathematics expert. Create an AP-level multiple choice question. " +
                 "CRITICAL: Solve the problem completely before creating options. Double-check your math. " +
@@ -252,48 +466,156 @@ public class OpenAIService {
                 "Format: Question followed by A) B) C) D) options.";
         
         // Use gpt-4o-mini for better formatting
-        var chatRequest = ChatRequest.builder()
+        return ChatRequest.builder()
                 .model("gpt-4o-mini")
                 .message(ChatMessage.SystemMessage.of(systemPrompt))
                 .message(ChatMessage.UserMessage.of(diversePrompt))
                 .temperature(0.8)
                 .maxCompletionTokens(2000)
                 .build();
+    }
 
-        var chatResponse = openAI.chatCompletions().create(chatRequest).join();
-        return chatResponse.firstContent();
+    public CompletableFuture<String> generateGuide(String userId, String prompt) {
+        try {
+            return chatClient.create(CallSite.GUIDE, priorityFor(userId), buildGuideRequest(prompt), usageOf(userId))
+                    .thenApply(chatResponse -> {
+                        String responseText = chatResponse.firstContent();
+                        GuideEvaluation guideEvaluation = new GuideEvaluation(responseText);
+                        return responseText;
+                    });
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
-    public String generateGuide(String prompt) {
+    /**
+     * Streams a study guide to {@code onToken} as it is generated and returns the full text.
+     */
+    public String streamGuide(String userId, String prompt, Consumer<String> onToken) {
+        return streamCompletion(userId, CallSite.GUIDE, buildGuideRequest(prompt), onToken);
+    }
+
+    private ChatRequest buildQuestionRequest(String type, String diversePrompt) {
+        String systemPrompt;
         int creditdiff;
         String model;
-        try {
-            String systemPrompt;
-                systemPrompt = "You are an expert tutor on the topic the student is prompting you about. Provide a concise explanation the topic the student is asking about at the quality of a master tutor. Only provide the guide; no extra dialogue";
-                creditdiff = 700;
-                model = "gpt-4o-mini";
+        if ("free-response".equals(type)) {
+            systemPrompt = FREE_RESPONSE_SYSTEM_PROMPT;
+            creditdiff = 30000;
+            model = "gpt-4o-mini";
+        } else {
+            systemPrompt = MULTIPLE_CHOICE_SYSTEM_PROMPT;
+            creditdiff = 2000;
+            model = "gpt-4o-mini";
+        }
 
+        // Use Chat Completions API with gpt-4o-mini for better formatting
+        return ChatRequest.builder()
+                .model(model)
+                .message(ChatMessage.SystemMessage.of(systemPrompt))
+                .message(ChatMessage.UserMessage.of(diversePrompt))
+                .temperature(1.0)
+                .maxCompletionTokens(creditdiff)
+                .build();
+    }
 
-            var chatRequest = ChatRequest.builder()
-                    .model(model)
-                    .message(ChatMessage.SystemMessage.of(systemPrompt))
-                    .message(ChatMessage.UserMessage.of(prompt))
-                    .temperature(0.7)
-                    .maxCompletionTokens(creditdiff)
-                    .build();
+    private ChatRequest buildBatchRequest(String diversePrompt, int count) {
+        String systemPrompt = MULTIPLE_CHOICE_SYSTEM_PROMPT
+                + "\n\nYou will write several questions in one response. Separate consecutive questions with a line containing only "
+                + BatchQuestionSplitter.DELIMITER + " and nothing else.";
+        String userPrompt = diversePrompt + " Write exactly " + count
+                + " different multiple choice questions, each covering a different topic.";
+
+        // The shared system prompt is paid once for the whole batch
+        return ChatRequest.builder()
+                .model("gpt-4o-mini")
+                .message(ChatMessage.SystemMessage.of(systemPrompt))
+                .message(ChatMessage.UserMessage.of(userPrompt))
+                .temperature(1.0)
+                .maxCompletionTokens(Math.min(16000, 1200 * count))
+                .build();
+    }
+
+    private ChatRequest buildGuideRequest(String prompt) {
+        return ChatRequest.builder()
+                .model("gpt-4o-mini")
+                .message(ChatMessage.SystemMessage.of(GUIDE_SYSTEM_PROMPT))
+                .message(ChatMessage.UserMessage.of(prompt))
+                .temperature(0.7)
+                .maxCompletionTokens(700)
+                .build();
+    }
+
+    private String streamCompletion(String userId, CallSite site, ChatRequest chatRequest, Consumer<String> onToken) {
+        StringBuilder text = new StringBuilder();
+        UpstreamMetrics.StreamUsage usage = new UpstreamMetrics.StreamUsage(chatRequest);
+        Stream<Chat> chunks = chatClient.createStream(site, priorityFor(userId), chatRequest).join();
+        // From the stream opening until the last token has been handed on
+        RequestTrace.Span span = RequestTrace.start("stream-" + site.traceName());
+        Throwable failure = null;
+        try (chunks) {
+            chunks.peek(usage)
+                    .filter(chunk -> chunk.getChoices() != null && !chunk.getChoices().isEmpty())
+                    .map(Chat::firstContent)
+                    .filter(Objects::nonNull)
+                    .forEach(token -> {
+                        text.append(token);
+                        onToken.accept(token);
+                    });
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            span.end(failure);
+            recordUsage(userId, usage.tokens());
+        }
+        RequestTrace.detail("response", text);
+        return text.toString();
+    }
+
+    /**
+     * Charges the reported usage of each response a call gets to the user's
+     * token budget, including responses that arrive after the caller gave up.
+     */
+    private LongConsumer usageOf(String userId) {
+        return tokens -> recordUsage(userId, tokens);
+    }
+
+    /**
+     * Pool refills wait behind requests a student is waiting for.
+     */
+    private static OutboundDispatcher.Priority priorityFor(String userId) {
+        return OutboundDispatcher.Priority.forUser(userId);
+    }
 
-            var futureChat = openAI.chatCompletions().create(chatRequest);
-            var chatResponse = futureChat.join();
-            String responseText = chatResponse.firstContent();
-            GuideEvaluation guideEvaluation = new GuideEvaluation(responseText);
-            return responseText;
-        } catch (OpenAIException e) {
-            e.printStackTrace();
-            return "Error generating question: " + e.getMessage();
+    private void recordUsage(String userId, long tokens) {
+        // Pool refills are charged to the global budget only
+        if (!PromptMemoryService.POOL_USER.equals(userId)) {
+            tokenBudget.recordUsage(userId, tokens);
         }
     }
 
-    public FreeResponseEvaluation evaluateFreeResponse(String subject, String question, String response) {
+    static boolean isMathSubject(String subject) {
+        // These subjects go through the solve-then-format path for math accuracy
+        String lowerSubject = subject.toLowerCase();
+        return lowerSubject.contains("math") ||
+               lowerSubject.contains("calc") ||
+               lowerSubject.contains("statistics") ||
+               lowerSubject.contains("physics") ||
+               lowerSubject.contains("chemistry");
+    }
+
+    /**
+     * The evaluation of an identical earlier submission, finished or still
+     * running, or null if there is none; it costs nothing upstream.
+     */
+    public CompletableFuture<FreeResponseEvaluation> cachedEvaluation(String subject, String question, String response) {
+        CompletableFuture<FreeResponseEvaluation> cached = evaluationCache.getIfPresent(subject, question, response);
+        return cached == null ? null : cached.exceptionally(this::evaluationError);
+    }
+
+    public CompletableFuture<FreeResponseEvaluation> evaluateFreeResponse(String userId, String subject, String question,
+                                                                          String response) {
         try {
             String systemPrompt = "You are an AP exam scorer with expertise in " + subject + ". " +
                     "You will evaluate a student's free response answer against AP scoring guidelines. " +
@@ -316,19 +638,80 @@ public class OpenAIService {
                     .maxCompletionTokens(2500)
                     .build();
 
-            var futureChat = openAI.chatCompletions().create(chatRequest);
-            var chatResponse = futureChat.join();
-            String jsonResponse = chatResponse.firstContent();
+            // Only successfully parsed evaluations are cached; errors are mapped afterwards
+            return evaluationCache.get(subject, question, response,
+                            () -> chatClient.create(CallSite.EVALUATION, priorityFor(userId), chatRequest, usageOf(userId))
+                                    .thenApply(chatResponse -> parseEvaluation(chatResponse.firstContent())))
+                    .exceptionally(this::evaluationError);
+
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(evaluationError(e));
+        }
+    }
+
+    /**
+     * Upstream call and coalescing counters per call site, how the math
+     * pipeline's races were decided, resilience policy outcomes, and the
+     * outbound dispatcher's slots and queues.
+     */
+    public Map<String, Object> upstreamStats() {
+        Map<String, Object> math = new LinkedHashMap<>();
+        math.put("pipelined", mathProperties.isPipelined());
+        math.put("solveAttempts", mathSolveAttempts.get());
+        math.put("verifiedWins", mathVerifiedWins.get());
+        math.put("fallbackWins", mathFallbackWins.get());
+
+        Map<String, Object> batch = new LinkedHashMap<>();
+        batch.put("questions", batchQuestions.get());
+        batch.put("rejected", batchRejected.get());
+
+        Map<String, Object> stats = new LinkedHashMap<>(chatClient.stats());
+        stats.put("math", math);
+        stats.put("batch", batch);
+        stats.put("resilience", resilientClient.stats());
+        stats.put("dispatcher", dispatcher.stats());
+        return stats;
+    }
+
+    /**
+     * False while the circuit breaker for this call site is open, so callers can
+     * fall back to whatever cached content they have instead of failing.
+     */
+    public boolean isUpstreamAvailable(CallSite site) {
+        return resilientClient.isAvailable(site);
+    }
+
+    private FreeResponseEvaluation parseEvaluation(String jsonResponse) {
+        RequestTrace.detail("response", jsonResponse);
+        try (RequestTrace.Span span = RequestTrace.start("post-process")) {
             return objectMapper.readValue(jsonResponse, FreeResponseEvaluation.class);
+        } catch (JsonProcessingException e) {
+            throw new CompletionException(e);
+        }
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return new FreeResponseEvaluation(
-                    "Error evaluating response: " + e.getMessage(),
-                    "0",
-                    "9",
-                    "An error occurred during evaluation."
-            );
+    private FreeResponseEvaluation evaluationError(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        logger.error("Error evaluating free response", cause);
+        // Answered with 200 and an error body, so the trace would not count it as failed otherwise
+        RequestTrace.markFailed();
+        return new FreeResponseEvaluation(
+                "Error evaluating response: " + cause.getMessage(),
+                "0",
+                "9",
+                "An error occurred during evaluation."
+        );
+    }
+
+    private record MathSolution(String text, String answer) {
+    }
+
+    /**
+     * Raw question text together with where it came from.
+     */
+    private record Draft(String text, CallSite site, String model) {
+        Question.Metadata metadata() {
+            return new Question.Metadata(model, site.name(), System.currentTimeMillis());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+package com.yourpackage.service;
+
+import java.util.Locale;
+
+/**
+ * Kinds of request that get their own bulkhead in {@link LoadSheddingService},
+ * so that a burst of one (say, evaluations) cannot take the capacity the others
+ * need. Only work that goes to the model is counted for the model-bound
+ * classes; pooled questions and cached guides or evaluations are served outside
+ * any bulkhead.
+ */
+public enum OperationClass {
+    /** Single questions, plain or streamed. */
+    QUESTION,
+    /** Study guides, plain or streamed. */
+    GUIDE,
+    /** Practice sets of several questions from one streamed call. */
+    BATCH,
+    /** Free-response evaluations, the largest completions we ask for. */
+    EVALUATION,
+    /** Reads and writes of a user's own memory and history; no model calls. */
+    USER_DATA;
+
+    private final String tag = name().toLowerCase(Locale.ROOT).replace('_', '-');
+
+    /**
+     * Name in stats, metric tags and the actuator endpoint, e.g. {@code user-data}.
+     */
+    public String tag() {
+        return tag;
+    }
+
+    public static OperationClass fromTag(String tag) {
+        for (OperationClass operation : values()) {
+            if (operation.tag.equalsIgnoreCase(tag) || operation.name().equalsIgnoreCase(tag)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation class: " + tag);
+    }
+}
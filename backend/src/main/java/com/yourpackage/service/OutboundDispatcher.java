@@ -0,0 +1,313 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.OutboundProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Caps the requests in flight to OpenAI and decides which waiting request is
+ * sent next. OkHttp's own dispatcher allows five calls per host and queues the
+ * rest in arrival order where nothing can see them; it is sized to match
+ * {@code maxInFlight}, so all waiting happens here instead, where a student's
+ * question, guide or evaluation goes ahead of background work such as
+ * question pool refills, and where queue depth and wait time are measured:
+ * <ul>
+ *   <li>{@code helpstudy.upstream.inflight}: requests holding a slot;</li>
+ *   <li>{@code helpstudy.upstream.queue.depth} and
+ *       {@code helpstudy.upstream.queue.wait}: requests waiting for a slot, and
+ *       how long they waited, by {@code priority};</li>
+ *   <li>{@code helpstudy.upstream.queue.rejected}: requests refused because
+ *       the queue was full or failed because they waited too long.</li>
+ * </ul>
+ * A slot is held from sending a request until its response has been read: for
+ * completions until the future completes, for streams until the stream is
+ * closed. Cancelling a request's future withdraws it from the queue, or once
+ * sent cancels the call, which keeps its slot until the call has stopped.
+ * Refused requests fail with {@link UpstreamUnavailableException}.
+ */
+final class OutboundDispatcher {
+
+    enum Priority {
+        INTERACTIVE,
+        BACKGROUND;
+
+        static Priority forUser(String userId) {
+            return PromptMemoryService.POOL_USER.equals(userId) ? BACKGROUND : INTERACTIVE;
+        }
+    }
+
+    private final OutboundProperties properties;
+    private final Map<Priority, ArrayDeque<Pending<?>>> queues = new EnumMap<>(Priority.class);
+    private final Map<Priority, PriorityMeters> meters = new EnumMap<>(Priority.class);
+    private int inFlight;
+
+    OutboundDispatcher(OutboundProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            meters.put(priority, new PriorityMeters(registry, this, priority));
+        }
+        Gauge.builder("helpstudy.upstream.inflight", this, OutboundDispatcher::inFlight)
+                .description("Requests to OpenAI in flight")
+                .register(registry);
+    }
+
+    <T> CompletableFuture<T> completion(CallSite site, Priority priority, Supplier<CompletableFuture<T>> call) {
+        return submit(site, priority, call, (response, release) -> {
+            release.run();
+            return response;
+        });
+    }
+
+    /**
+     * The slot is released when the returned stream is closed, so callers must
+     * close it (try-with-resources) even if they stop reading early.
+     */
+    <T> CompletableFuture<Stream<T>> stream(CallSite site, Priority priority,
+                                            Supplier<CompletableFuture<Stream<T>>> call) {
+        return submit(site, priority, call, (stream, release) -> stream.onClose(release));
+    }
+
+    /**
+     * True while requests are waiting for a slot, i.e. sending more would only
+     * make them wait longer.
+     */
+    synchronized boolean isSaturated() {
+        for (ArrayDeque<Pending<?>> queue : queues.values()) {
+            if (!queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> priorities = new LinkedHashMap<>();
+        meters.forEach((priority, meter) -> {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("queued", queues.get(priority).size());
+            stats.put("maxQueued", maxQueued(priority));
+            stats.put("dispatched", meter.wait.count());
+            stats.put("meanWaitMillis", meter.wait.mean(TimeUnit.MILLISECONDS));
+            stats.put("maxWaitMillis", meter.wait.max(TimeUnit.MILLISECONDS));
+            stats.put("rejectedFull", (long) meter.rejectedFull.count());
+            stats.put("expired", (long) meter.expired.count());
+            priorities.put(priority.name().toLowerCase(Locale.ROOT), stats);
+        });
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxInFlight", maxInFlight());
+        stats.put("inFlight", inFlight);
+        stats.put("http2", properties.isHttp2());
+        stats.put("priorities", priorities);
+        return stats;
+    }
+
+    private <T> CompletableFuture<T> submit(CallSite site, Priority priority, Supplier<CompletableFuture<T>> call,
+                                            BiFunction<T, Runnable, T> holdUntilDone) {
+        Pending<T> pending = new Pending<>(site, priority, call, holdUntilDone);
+        long retryAfterSeconds;
+        synchronized (this) {
+            if (inFlight < maxInFlight()) {
+                // Slots only free up by dispatching the queue, so nothing is waiting
+                inFlight++;
+                retryAfterSeconds = -1;
+            } else {
+                ArrayDeque<Pending<?>> queue = queues.get(priority);
+                if (queue.size() < maxQueued(priority)) {
+                    queue.addLast(pending);
+                    // A caller that gives up (a lost hedge) should not hold a place in line
+                    pending.result.whenComplete((value, error) -> {
+                        if (pending.result.isCancelled()) {
+                            withdraw(pending);
+                        }
+                    });
+                    return pending.result;
+                }
+                retryAfterSeconds = retryAfterSeconds(queue);
+            }
+        }
+        if (retryAfterSeconds >= 0) {
+            meters.get(priority).rejectedFull.increment();
+            return CompletableFuture.failedFuture(
+                    new UpstreamUnavailableException(site, retryAfterSeconds, "too many requests waiting"));
+        }
+        start(pending);
+        return pending.result;
+    }
+
+    /**
+     * Sends the request in the slot already taken for it.
+     */
+    private <T> void start(Pending<T> pending) {
+        meters.get(pending.priority).wait.record(System.nanoTime() - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                release();
+            }
+        };
+
+        CompletableFuture<T> future;
+        try {
+            future = pending.call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> sent = future;
+        pending.result.whenComplete((value, error) -> {
+            if (pending.result.isCancelled()) {
+                // The slot is released below, once the cancelled call has actually finished
+                sent.cancel(false);
+            }
+        });
+        future.whenComplete((value, error) -> {
+            if (error != null) {
+                release.run();
+                pending.result.completeExceptionally(error);
+                return;
+            }
+            T held = pending.holdUntilDone.apply(value, release);
+            if (!pending.result.complete(held) && held instanceof AutoCloseable closeable) {
+                // Nobody is waiting for this stream any more
+                closeQuietly(closeable);
+            }
+        });
+    }
+
+    private void release() {
+        List<Pending<?>> expired = new ArrayList<>();
+        Pending<?> next = null;
+        long now = System.nanoTime();
+        long maxWait = properties.getMaxQueueWait().toNanos();
+        synchronized (this) {
+            if (inFlight <= maxInFlight()) {
+                for (Priority priority : Priority.values()) {
+                    ArrayDeque<Pending<?>> queue = queues.get(priority);
+                    while (next == null && !queue.isEmpty()) {
+                        Pending<?> candidate = queue.pollFirst();
+                        if (candidate.result.isDone()) {
+                            continue;
+                        }
+                        if (now - candidate.enqueuedAt > maxWait) {
+                            expired.add(candidate);
+                        } else {
+                            next = candidate;
+                        }
+                    }
+                    if (next != null) {
+                        break;
+                    }
+                }
+            }
+            if (next == null) {
+                inFlight--;
+            }
+        }
+        for (Pending<?> pending : expired) {
+            meters.get(pending.priority).expired.increment();
+            pending.result.completeExceptionally(
+                    new UpstreamUnavailableException(pending.site, 1, "waited too long to be sent"));
+        }
+        if (next != null) {
+            start(next);
+        }
+    }
+
+    private synchronized void withdraw(Pending<?> pending) {
+        queues.get(pending.priority).remove(pending);
+    }
+
+    private int maxInFlight() {
+        return Math.max(1, properties.getMaxInFlight());
+    }
+
+    private int maxQueued(Priority priority) {
+        return priority == Priority.BACKGROUND ? properties.getMaxBackgroundQueued() : properties.getMaxQueued();
+    }
+
+    private synchronized int inFlight() {
+        return inFlight;
+    }
+
+    private synchronized int queued(Priority priority) {
+        return queues.get(priority).size();
+    }
+
+    /**
+     * How long the request at the head of a full queue has been waiting, as a
+     * guess at how long the line takes to move.
+     */
+    private static long retryAfterSeconds(ArrayDeque<Pending<?>> queue) {
+        Pending<?> head = queue.peekFirst();
+        long waited = head == null ? 0 : System.nanoTime() - head.enqueuedAt;
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waited + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Only closing to release the slot and connection
+        }
+    }
+
+    private static final class Pending<T> {
+        final CallSite site;
+        final Priority priority;
+        final Supplier<CompletableFuture<T>> call;
+        final BiFunction<T, Runnable, T> holdUntilDone;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+
+        Pending(CallSite site, Priority priority, Supplier<CompletableFuture<T>> call,
+                BiFunction<T, Runnable, T> holdUntilDone) {
+            this.site = site;
+            this.priority = priority;
+            this.call = call;
+            this.holdUntilDone = holdUntilDone;
+        }
+    }
+
+    private static final class PriorityMeters {
+        final Timer wait;
+        final Counter rejectedFull;
+        final Counter expired;
+
+        PriorityMeters(MeterRegistry registry, OutboundDispatcher dispatcher, Priority priority) {
+            String tag = priority.name().toLowerCase(Locale.ROOT);
+            this.wait = Timer.builder("helpstudy.upstream.queue.wait")
+                    .description("Time requests to OpenAI waited for a slot")
+                    .tag("priority", tag)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(60))
+                    .register(registry);
+            this.rejectedFull = rejected(registry, tag, "full");
+            this.expired = rejected(registry, tag, "expired");
+            Gauge.builder("helpstudy.upstream.queue.depth", dispatcher, d -> d.queued(priority))
+                    .description("Requests to OpenAI waiting for a slot")
+                    .tag("priority", tag)
+                    .register(registry);
+        }
+
+        private static Counter rejected(MeterRegistry registry, String priority, String reason) {
+            return Counter.builder("helpstudy.upstream.queue.rejected")
+                    .description("Requests to OpenAI refused or dropped while waiting for a slot")
+                    .tag("priority", priority)
+                    .tag("reason", reason)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.yourpackage.service;
+
+/**
+ * Thrown, or used to fail a future, when an operation class's bulkhead has no
+ * room: its queue is full, or the operation waited in it too long. Callers
+ * should answer 503 and suggest retrying after {@link #getRetryAfterSeconds()}.
+ */
+public class OverloadedException extends RuntimeException {
+
+    private final OperationClass operation;
+    private final long retryAfterSeconds;
+
+    public OverloadedException(OperationClass operation, long retryAfterSeconds, String reason) {
+        super("Too busy for " + operation.tag() + " requests; " + reason);
+        this.operation = operation;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public OperationClass getOperation() {
+        return operation;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -1,193 +1,403 @@
 package com.yourpackage.service;
 
+import com.yourpackage.config.TopicMemoryProperties;
+import com.yourpackage.persistence.HistoryJournal;
+import com.yourpackage.persistence.JournalRecord;
+import com.yourpackage.tracing.RequestTrace;
+import jakarta.annotation.PostConstruct;
 import org.springframework.stereotype.Service;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+/**
+ * Remembers the topics of recently generated questions per (user, subject) so
+ * prompts can steer each student away from what they have just seen. Every
+ * pair keeps its topics in a small fixed-size ring; a user's least recently
+ * used subjects are dropped beyond a per-user limit, and least recently active
+ * users are dropped once the number of users or entries goes over its limit.
+ * Changes are written to the {@link HistoryJournal} and replayed on startup.
+ *
+ * <p>Across users, a {@link TopicCoverage} index tracks how often each topic of
+ * a subject has come up lately, and prompts suggest under-covered topics from
+ * the subject's dictionary.
+ */
 @Service
 public class PromptMemoryService {
-    private final Map<String, List<String>> subjectTopics;
-    private final Map<String, Integer> topicUsageCount;
-    private final int maxRecentTopics;
 
-    public PromptMemoryService() {
-        this.subjectTopics = new ConcurrentHashMap<>();
-        this.topicUsageCount = new ConcurrentHashMap<>();
-        this.maxRecentTopics = 5;
+    // Memory of the background question pool, which generates before any user asks
+    public static final String POOL_USER = "__pool__";
+
+    private final TopicMemoryProperties properties;
+    private final HistoryJournal journal;
+    private final TopicExtractor topicExtractor;
+    private final TopicCoverage coverage;
+    private final Map<String, UserTopics> users = new ConcurrentHashMap<>();
+    private final AtomicInteger totalEntries = new AtomicInteger();
+    private final AtomicLong evictedUsers = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    public PromptMemoryService(TopicMemoryProperties properties, HistoryJournal journal) {
+        this.properties = properties;
+        this.journal = journal;
+        this.topicExtractor = TopicExtractor.fromClasspath(TopicExtractor.DEFAULT_DICTIONARY);
+        this.coverage = new TopicCoverage(properties);
     }
 
-    public void recordTopic(String subject, String topic) {
-        subjectTopics.computeIfAbsent(subject, k -> new ArrayList<>()).add(topic);
-        topicUsageCount.merge(subject + ":" + topic, 1, Integer::sum);
-        
-        List<String> topics = subjectTopics.get(subject);
-        if (topics.size() > maxRecentTopics) {
-            topics.remove(0);
+    @PostConstruct
+    void registerWithJournal() {
+        journal.register(EnumSet.of(JournalRecord.Type.TOPIC, JournalRecord.Type.TOPIC_CLEARED,
+                        JournalRecord.Type.TOPICS_EVICTED),
+                this::replay, this::snapshot);
+    }
+
+    public void recordTopic(String userId, String subject, String topic) {
+        recordTopics(userId, subject, List.of(topic));
+    }
+
+    /**
+     * Records the topics of a batch of questions for one subject in one pass:
+     * the ring is looked up once, and the journal records are appended together.
+     */
+    public void recordTopics(String userId, String subject, List<String> topics) {
+        if (topics.isEmpty()) {
+            return;
+        }
+        UserTopics user = users.computeIfAbsent(userId, k -> new UserTopics());
+        long now = System.currentTimeMillis();
+        TopicRing ring = ringFor(userId, user, subject, now, true);
+        List<JournalRecord> records = new ArrayList<>(topics.size());
+        for (String topic : topics) {
+            long sequence = ring.add(topic, now);
+            recordCoverage(userId, subject, topic, now);
+            records.add(JournalRecord.topic(userId, subject, sequence, now, topic));
+        }
+        if (user.evicted) {
+            // Lost a race with eviction; the topics went into a detached entry
+            return;
+        }
+        journal.appendAll(records);
+
+        if (users.size() > properties.getMaxUsers() || totalEntries.get() > properties.getMaxEntries()) {
+            evictLeastRecentlyActive();
+        }
+    }
+
+    /**
+     * The user's most recent topics for the subject, oldest first.
+     */
+    public List<String> getRecentTopics(String userId, String subject) {
+        UserTopics user = users.get(userId);
+        TopicRing ring = user == null ? null : user.subjects.get(subject);
+        if (ring == null) {
+            return List.of();
         }
+        user.lastActive = System.currentTimeMillis();
+        return ring.recent();
     }
 
-    public List<String> getRecentTopics(String subject) {
-        return subjectTopics.getOrDefault(subject, new ArrayList<>());
+    public String generateDiversePrompt(String userId, String subject, String type) {
+        try (RequestTrace.Span span = RequestTrace.start("prompt")) {
+            return buildDiversePrompt(userId, subject, type);
+        }
     }
 
-    public String generateDiversePrompt(String subject, String type) {
-        List<String> recentTopics = getRecentTopics(subject);
+    private String buildDiversePrompt(String userId, String subject, String type) {
+        List<String> recentTopics = getRecentTopics(userId, subject);
         String basePrompt = getBasePrompt(subject, type);
         
         if (!recentTopics.isEmpty()) {
             String avoidanceClause = " Avoid focusing on: " + String.join(", ", recentTopics) + ".";
             basePrompt += avoidanceClause;
         }
+
+        String category = categoryOf(subject);
+        if (category != null) {
+            List<String> suggestions = coverage.sampleUnderCovered(subject, topicExtractor.labels(category),
+                    recentTopics, properties.getSuggestedTopics());
+            if (!suggestions.isEmpty()) {
+                basePrompt += " Consider a less covered topic such as: " + String.join(", ", suggestions) + ".";
+            }
+        }
         
         basePrompt += " Focus on a different aspect or topic than previously covered.";
         return basePrompt;
     }
 
     public String extractTopicFromResponse(String response, String subject) {
-        String topic = "";
-        String lowerResponse = response.toLowerCase();
-        
+        String category = categoryOf(subject);
+        String topic = category == null
+                ? topicExtractor.mostFrequentWord(response)
+                : topicExtractor.match(category, response);
+        return topic.isEmpty() ? "general" : topic;
+    }
+
+    /**
+     * Decayed number of recent questions per topic of the subject, across all
+     * users, most covered first.
+     */
+    public Map<String, Double> getCoverage(String subject) {
+        return coverage.snapshot(subject);
+    }
+
+    // Dictionary section for the subject, or null if topics are found by word frequency
+    private static String categoryOf(String subject) {
         switch (subject.toLowerCase()) {
             case "english":
             case "literature":
             case "lit":
-                topic = extractLiteratureTopic(lowerResponse);
-                break;
+                return "literature";
             case "history":
             case "ushistory":
             case "eurohistory":
-                topic = extractHistoryTopic(lowerResponse);
-                break;
+                return "history";
             case "science":
             case "biology":
             case "chemistry":
             case "physics":
-                topic = extractScienceTopic(lowerResponse);
-                break;
+                return "science";
             case "math":
             case "calculus":
             case "statistics":
-                topic = extractMathTopic(lowerResponse);
-                break;
+                return "math";
             default:
-                topic = extractGenericTopic(lowerResponse);
+                return null;
         }
-        
-        return topic.isEmpty() ? "general" : topic;
     }
 
-    private String extractLiteratureTopic(String response) {
-        String[] literatureKeywords = {
-            "macbeth", "hamlet", "othello", "king lear", "romeo and juliet",
-            "great gatsby", "to kill a mockingbird", "1984", "brave new world",
-            "pride and prejudice", "jane eyre", "wuthering heights",
-            "lord of the flies", "of mice and men", "the crucible",
-            "death of a salesman", "a streetcar named desire"
-        };
-        
-        for (String keyword : literatureKeywords) {
-            if (response.contains(keyword)) {
-                return keyword;
-            }
+    private String getBasePrompt(String subject, String type) {
+        String basePrompt;
+        if ("free-response".equals(type)) {
+            basePrompt = "Create a challenging AP-level free response question for " + subject;
+        } else {
+            basePrompt = "Create a challenging AP-level multiple choice question for " + subject;
         }
-        
-        if (response.contains("shakespeare")) return "shakespeare";
-        if (response.contains("poetry") || response.contains("poem")) return "poetry";
-        if (response.contains("novel")) return "novel";
-        if (response.contains("drama") || response.contains("play")) return "drama";
-        
-        return "";
+        return basePrompt + ".";
     }
 
-    private String extractHistoryTopic(String response) {
-        String[] historyKeywords = {
-            "world war", "civil war", "revolutionary war", "cold war",
-            "great depression", "new deal", "industrial revolution",
-            "renaissance", "enlightenment", "reformation", "crusades",
-            "ancient rome", "ancient greece", "medieval", "colonial"
-        };
-        
-        for (String keyword : historyKeywords) {
-            if (response.contains(keyword)) {
-                return keyword;
-            }
+    public void clearMemory(String userId, String subject) {
+        if (removeSubject(userId, subject)) {
+            journal.append(JournalRecord.topicCleared(userId, subject));
         }
-        
-        if (response.contains("president") || response.contains("presidency")) return "presidency";
-        if (response.contains("constitution")) return "constitution";
-        if (response.contains("economy") || response.contains("economic")) return "economics";
-        
-        return "";
     }
 
-    private String extractScienceTopic(String response) {
-        String[] scienceKeywords = {
-            "photosynthesis", "mitosis", "meiosis", "dna", "rna",
-            "evolution", "genetics", "ecosystem", "cell",
-            "atomic structure", "periodic table", "chemical bonding",
-            "thermodynamics", "kinetics", "equilibrium",
-            "mechanics", "waves", "electricity", "magnetism"
-        };
-        
-        for (String keyword : scienceKeywords) {
-            if (response.contains(keyword)) {
-                return keyword;
-            }
+    /**
+     * All of the user's remembered topics by subject.
+     */
+    public Map<String, List<String>> getAllTopics(String userId) {
+        UserTopics user = users.get(userId);
+        if (user == null) {
+            return Map.of();
         }
-        
-        return "";
+        Map<String, List<String>> topics = new TreeMap<>();
+        user.subjects.forEach((subject, ring) -> topics.put(subject, ring.recent()));
+        return topics;
     }
 
-    private String extractMathTopic(String response) {
-        String[] mathKeywords = {
-            "derivative", "integral", "limit", "function",
-            "probability", "statistics", "hypothesis",
-            "algebra", "geometry", "trigonometry",
-            "polynomial", "logarithm", "exponential"
-        };
-        
-        for (String keyword : mathKeywords) {
-            if (response.contains(keyword)) {
-                return keyword;
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("users", users.size());
+        stats.put("entries", totalEntries.get());
+        stats.put("evictedUsers", evictedUsers.get());
+        stats.put("maxUsers", properties.getMaxUsers());
+        stats.put("maxEntries", properties.getMaxEntries());
+        stats.put("coverage", coverage.stats());
+        return stats;
+    }
+
+    // Pool refills are counted when a pooled question is served, not when it is generated
+    private void recordCoverage(String userId, String subject, String topic, long timestamp) {
+        if (!POOL_USER.equals(userId)) {
+            coverage.record(subject, topic, timestamp);
+        }
+    }
+
+    /**
+     * The user's ring for the subject, created if needed, marked as used at {@code now}.
+     */
+    private TopicRing ringFor(String userId, UserTopics user, String subject, long now, boolean journaled) {
+        user.lastActive = Math.max(user.lastActive, now);
+        TopicRing ring = user.subjects.get(subject);
+        if (ring == null) {
+            ring = user.subjects.computeIfAbsent(subject, k -> {
+                totalEntries.incrementAndGet();
+                return new TopicRing(properties.getPerSubjectCapacity());
+            });
+            ring.lastUsed = now;
+            if (user.subjects.size() > properties.getMaxSubjectsPerUser()) {
+                forgetLeastRecentSubject(userId, user, journaled);
             }
         }
-        
-        return "";
+        ring.lastUsed = Math.max(ring.lastUsed, now);
+        return ring;
     }
 
-    private String extractGenericTopic(String response) {
-        String[] words = response.split("\\s+");
-        Map<String, Integer> wordCount = new HashMap<>();
-        
-        for (String word : words) {
-            word = word.replaceAll("[^a-zA-Z]", "").toLowerCase();
-            if (word.length() > 4) {
-                wordCount.merge(word, 1, Integer::sum);
+    private void forgetLeastRecentSubject(String userId, UserTopics user, boolean journaled) {
+        user.subjects.entrySet().stream()
+                .min(Comparator.comparingLong(entry -> entry.getValue().lastUsed))
+                .ifPresent(entry -> {
+                    if (user.subjects.remove(entry.getKey(), entry.getValue())) {
+                        totalEntries.decrementAndGet();
+                        if (journaled) {
+                            journal.append(JournalRecord.topicCleared(userId, entry.getKey()));
+                        }
+                    }
+                });
+    }
+
+    private boolean removeSubject(String userId, String subject) {
+        UserTopics user = users.get(userId);
+        if (user == null || user.subjects.remove(subject) == null) {
+            return false;
+        }
+        totalEntries.decrementAndGet();
+        return true;
+    }
+
+    private void evictLeastRecentlyActive() {
+        // One thread evicts at a time; everyone else just carries on recording
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            // Sort on a snapshot of lastActive; it keeps changing under concurrent records
+            List<Inactive> byActivity = new ArrayList<>(users.size());
+            users.forEach((id, value) -> byActivity.add(new Inactive(id, value, value.lastActive)));
+            byActivity.sort(Comparator.comparingLong(Inactive::lastActive));
+
+            // Evict a small batch beyond the user limit so this does not run on every record
+            int userTarget = users.size() > properties.getMaxUsers()
+                    ? properties.getMaxUsers() - Math.max(1, properties.getMaxUsers() / 100)
+                    : Integer.MAX_VALUE;
+            for (Inactive entry : byActivity) {
+                boolean overUsers = users.size() > userTarget;
+                boolean overEntries = totalEntries.get() > properties.getMaxEntries();
+                if (!overUsers && !overEntries) {
+                    break;
+                }
+                if (users.remove(entry.id(), entry.value())) {
+                    entry.value().evicted = true;
+                    totalEntries.addAndGet(-entry.value().subjects.size());
+                    evictedUsers.incrementAndGet();
+                    journal.append(JournalRecord.topicsEvicted(entry.id()));
+                }
             }
+
+            // Entries added to users while they were being evicted are not counted above; recount
+            int entries = 0;
+            for (UserTopics user : users.values()) {
+                entries += user.subjects.size();
+            }
+            totalEntries.set(entries);
+        } finally {
+            evictionLock.unlock();
         }
-        
-        return wordCount.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .orElse("");
     }
 
-    private String getBasePrompt(String subject, String type) {
-        String basePrompt;
-        if ("free-response".equals(type)) {
-            basePrompt = "Create a challenging AP-level free response question for " + subject;
-        } else {
-            basePrompt = "Create a challenging AP-level multiple choice question for " + subject;
+    private void replay(JournalRecord record) {
+        switch (record.type()) {
+            case TOPIC -> {
+                UserTopics user = users.computeIfAbsent(record.userId(), k -> new UserTopics());
+                TopicRing ring = ringFor(record.userId(), user, record.subject(), record.timestamp(), false);
+                // A compaction snapshot may overlap the segment written after it; skip what we already have
+                if (ring.restore(record.text(), record.sequence(), record.timestamp())) {
+                    recordCoverage(record.userId(), record.subject(), record.text(), record.timestamp());
+                }
+            }
+            case TOPIC_CLEARED -> removeSubject(record.userId(), record.subject());
+            case TOPICS_EVICTED -> {
+                UserTopics removed = users.remove(record.userId());
+                if (removed != null) {
+                    totalEntries.addAndGet(-removed.subjects.size());
+                }
+            }
+            default -> {
+            }
         }
-        return basePrompt + ".";
     }
 
-    public void clearMemory(String subject) {
-        subjectTopics.remove(subject);
-        topicUsageCount.entrySet().removeIf(entry -> entry.getKey().startsWith(subject + ":"));
+    private void snapshot(Consumer<JournalRecord> sink) {
+        users.forEach((userId, user) -> user.subjects.forEach((subject, ring) -> {
+            for (TopicRing.Entry entry : ring.entries()) {
+                sink.accept(JournalRecord.topic(userId, subject, entry.sequence(), entry.timestamp(), entry.topic()));
+            }
+        }));
+    }
+
+    private record Inactive(String id, UserTopics value, long lastActive) {
+    }
+
+    private static final class UserTopics {
+        final Map<String, TopicRing> subjects = new ConcurrentHashMap<>();
+        volatile long lastActive;
+        volatile boolean evicted;
     }
 
-    public Map<String, List<String>> getAllTopics() {
-        return new HashMap<>(subjectTopics);
+    /**
+     * Fixed-size ring of recent topics. Writers claim a sequence number and then
+     * fill its slot, so a reader racing a writer may briefly see the topic that
+     * slot held one lap earlier; fine for steering prompts. Each topic keeps its
+     * sequence number and time so that compaction can write them back as they were.
+     */
+    private static final class TopicRing {
+        final AtomicReferenceArray<Entry> slots;
+        final AtomicLong nextSequence = new AtomicLong();
+        volatile long lastUsed;
+
+        record Entry(String topic, long sequence, long timestamp) {
+        }
+
+        TopicRing(int capacity) {
+            this.slots = new AtomicReferenceArray<>(Math.max(1, capacity));
+        }
+
+        long add(String topic, long timestamp) {
+            long sequence = nextSequence.getAndIncrement();
+            slots.set(index(sequence), new Entry(topic, sequence, timestamp));
+            return sequence;
+        }
+
+        /**
+         * Puts a replayed topic back at its sequence number, unless the ring is
+         * already past it. Replay is single-threaded.
+         */
+        boolean restore(String topic, long sequence, long timestamp) {
+            if (sequence < nextSequence.get()) {
+                return false;
+            }
+            nextSequence.set(sequence + 1);
+            slots.set(index(sequence), new Entry(topic, sequence, timestamp));
+            return true;
+        }
+
+        List<String> recent() {
+            List<Entry> entries = entries();
+            List<String> topics = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                topics.add(entry.topic());
+            }
+            return topics;
+        }
+
+        List<Entry> entries() {
+            long head = nextSequence.get();
+            int count = (int) Math.min(head, slots.length());
+            List<Entry> entries = new ArrayList<>(count);
+            for (long sequence = head - count; sequence < head; sequence++) {
+                Entry entry = slots.get(index(sequence));
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+            return entries;
+        }
+
+        private int index(long sequence) {
+            return (int) (sequence % slots.length());
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,225 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.HistoryProperties;
+import com.yourpackage.dto.HistoryPage;
+import com.yourpackage.model.HistoryEvaluation;
+import com.yourpackage.persistence.HistoryJournal;
+import com.yourpackage.persistence.JournalRecord;
+import com.yourpackage.tracing.RequestTrace;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Per-user question history held in fixed-size ring buffers. Appends are
+ * lock-free; when the number of users or the total amount of stored text goes
+ * over its limit, the least recently active users are dropped. Every change is
+ * also written to the {@link HistoryJournal} and replayed from it on startup.
+ */
+@Service
+public class QuestionHistoryService {
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final HistoryProperties properties;
+    private final HistoryJournal journal;
+    private final Map<String, UserHistory> histories = new ConcurrentHashMap<>();
+    private final AtomicLong totalChars = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    public QuestionHistoryService(HistoryProperties properties, HistoryJournal journal) {
+        this.properties = properties;
+        this.journal = journal;
+    }
+
+    @PostConstruct
+    void registerWithJournal() {
+        journal.register(EnumSet.of(JournalRecord.Type.HISTORY, JournalRecord.Type.HISTORY_EVICTED),
+                this::replay, this::snapshot);
+    }
+
+    public HistoryEvaluation record(String userId, String prompt, boolean correct) {
+        try (RequestTrace.Span span = RequestTrace.start("history")) {
+            return store(userId, prompt, correct);
+        }
+    }
+
+    private HistoryEvaluation store(String userId, String prompt, boolean correct) {
+        UserHistory history = histories.computeIfAbsent(userId, k -> new UserHistory(properties.getPerUserCapacity()));
+        long now = System.currentTimeMillis();
+        history.lastActive = now;
+
+        HistoryEvaluation entry = new HistoryEvaluation(prompt, correct, history.nextSequence.getAndIncrement(), now);
+        HistoryEvaluation displaced = history.store(entry);
+        if (history.evicted) {
+            // Lost a race with eviction; the entry went into a detached buffer
+            return entry;
+        }
+        totalChars.addAndGet(length(entry) - length(displaced));
+        journal.append(JournalRecord.history(userId, entry.getSequence(), now, correct, prompt));
+
+        if (histories.size() > properties.getMaxUsers() || totalChars.get() > properties.getMaxTotalChars()) {
+            evictLeastRecentlyActive();
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the user's history newest first, starting just below {@code cursor}
+     * (or at the newest entry when the cursor is null).
+     */
+    public HistoryPage page(String userId, Long cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        UserHistory history = histories.get(userId);
+        if (history == null) {
+            return new HistoryPage(List.of(), null);
+        }
+        history.lastActive = System.currentTimeMillis();
+
+        long head = history.nextSequence.get();
+        long oldest = Math.max(0, head - history.slots.length());
+        long start = cursor == null ? head - 1 : Math.min(cursor, head) - 1;
+
+        List<HistoryEvaluation> items = new ArrayList<>(pageSize);
+        long sequence = start;
+        for (; sequence >= oldest && items.size() < pageSize; sequence--) {
+            HistoryEvaluation entry = history.slots.get(history.index(sequence));
+            // Skip slots that are still being written or were already overwritten
+            if (entry != null && entry.getSequence() == sequence) {
+                items.add(entry);
+            }
+        }
+
+        Long nextCursor = sequence >= oldest && !items.isEmpty()
+                ? items.get(items.size() - 1).getSequence()
+                : null;
+        return new HistoryPage(items, nextCursor);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("users", histories.size());
+        stats.put("totalChars", totalChars.get());
+        stats.put("maxUsers", properties.getMaxUsers());
+        stats.put("maxTotalChars", properties.getMaxTotalChars());
+        return stats;
+    }
+
+    private void evictLeastRecentlyActive() {
+        // One thread evicts at a time; everyone else just carries on appending
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            // Sort on a snapshot of lastActive; it keeps changing under concurrent appends
+            List<Inactive> byActivity = new ArrayList<>(histories.size());
+            histories.forEach((id, value) -> byActivity.add(new Inactive(id, value, value.lastActive)));
+            byActivity.sort(Comparator.comparingLong(Inactive::lastActive));
+
+            // Evict a small batch beyond the user limit so this does not run on every append
+            int userTarget = histories.size() > properties.getMaxUsers()
+                    ? properties.getMaxUsers() - Math.max(1, properties.getMaxUsers() / 100)
+                    : Integer.MAX_VALUE;
+            for (Inactive entry : byActivity) {
+                boolean overUsers = histories.size() > userTarget;
+                boolean overChars = totalChars.get() > properties.getMaxTotalChars();
+                if (!overUsers && !overChars) {
+                    break;
+                }
+                if (histories.remove(entry.id(), entry.value())) {
+                    entry.value().evicted = true;
+                    totalChars.addAndGet(-entry.value().chars());
+                    journal.append(JournalRecord.historyEvicted(entry.id()));
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void replay(JournalRecord record) {
+        if (record.type() == JournalRecord.Type.HISTORY_EVICTED) {
+            UserHistory removed = histories.remove(record.userId());
+            if (removed != null) {
+                totalChars.addAndGet(-removed.chars());
+            }
+            return;
+        }
+
+        UserHistory history = histories.computeIfAbsent(record.userId(), k -> new UserHistory(properties.getPerUserCapacity()));
+        // A compaction snapshot may overlap the segment written after it; skip what we already have
+        if (record.sequence() < history.nextSequence.get()) {
+            return;
+        }
+        history.nextSequence.set(record.sequence() + 1);
+        history.lastActive = Math.max(history.lastActive, record.timestamp());
+        HistoryEvaluation entry = new HistoryEvaluation(record.text(), record.flag(), record.sequence(), record.timestamp());
+        totalChars.addAndGet(length(entry) - length(history.store(entry)));
+    }
+
+    private void snapshot(Consumer<JournalRecord> sink) {
+        histories.forEach((userId, history) -> {
+            long head = history.nextSequence.get();
+            for (long sequence = Math.max(0, head - history.slots.length()); sequence < head; sequence++) {
+                HistoryEvaluation entry = history.slots.get(history.index(sequence));
+                if (entry != null && entry.getSequence() == sequence) {
+                    sink.accept(JournalRecord.history(userId, sequence, entry.getTimestamp(),
+                            entry.getCorrect(), entry.getPrompt()));
+                }
+            }
+        });
+    }
+
+    private static long length(HistoryEvaluation entry) {
+        return entry == null || entry.getPrompt() == null ? 0 : entry.getPrompt().length();
+    }
+
+    private record Inactive(String id, UserHistory value, long lastActive) {
+    }
+
+    private static final class UserHistory {
+        final AtomicReferenceArray<HistoryEvaluation> slots;
+        final AtomicLong nextSequence = new AtomicLong();
+        volatile long lastActive;
+        volatile boolean evicted;
+
+        UserHistory(int capacity) {
+            this.slots = new AtomicReferenceArray<>(Math.max(1, capacity));
+        }
+
+        int index(long sequence) {
+            return (int) (sequence % slots.length());
+        }
+
+        /**
+         * Places the entry in its slot unless a newer entry already got there
+         * (possible when a slow writer is lapped). Returns the displaced entry.
+         */
+        HistoryEvaluation store(HistoryEvaluation entry) {
+            int index = index(entry.getSequence());
+            while (true) {
+                HistoryEvaluation current = slots.get(index);
+                if (current != null && current.getSequence() > entry.getSequence()) {
+                    return entry;
+                }
+                if (slots.compareAndSet(index, current, entry)) {
+                    return current;
+                }
+            }
+        }
+
+        long chars() {
+            long total = 0;
+            for (int i = 0; i < slots.length(); i++) {
+                total += length(slots.get(i));
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.QuestionPoolProperties;
+import com.yourpackage.model.Question;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a small inventory of ready-made questions per (subject, type) so that
+ * requests can be answered without waiting on the model. Subjects are free
+ * text, so they are normalized as in {@link StudyGuideCache}, and a key is
+ * only filled once it has seen {@code minDemand} requests (or its subject is
+ * one of {@code warmSubjects}): pre-generating for a one-off spelling would
+ * spend a pool's worth of completions on a key nobody asks for again. Warm
+ * pools are topped back up in the background whenever they fall below the
+ * configured low-water mark. While the model's circuit breaker is open or
+ * the global token budget is spent, stale questions are served (and kept)
+ * rather than failing the request, and refills only spend tokens while the
+ * budget has room for background work.
+ * Pooled questions are held in their compact {@link Question#encode()} form.
+ */
+@Service
+public class QuestionPoolService {
+    private static final Logger logger = LoggerFactory.getLogger(QuestionPoolService.class);
+
+    private final OpenAIService openAIService;
+    private final TokenBudgetService tokenBudget;
+    private final QuestionPoolProperties properties;
+    private final Map<PoolKey, Pool> pools = new ConcurrentHashMap<>();
+    private final Set<String> warmSubjects;
+    private final Semaphore refillPermits;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleDrops = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+    private final AtomicLong refills = new AtomicLong();
+    private final AtomicLong refillFailures = new AtomicLong();
+
+    public QuestionPoolService(OpenAIService openAIService, TokenBudgetService tokenBudget,
+                               QuestionPoolProperties properties) {
+        this.openAIService = openAIService;
+        this.tokenBudget = tokenBudget;
+        this.properties = properties;
+        this.warmSubjects = properties.getWarmSubjects().stream()
+                .map(StudyGuideCache::normalize)
+                .collect(Collectors.toUnmodifiableSet());
+        this.refillPermits = new Semaphore(Math.max(1, properties.getRefillConcurrency()));
+    }
+
+    /**
+     * Returns a pooled question if one is ready, otherwise registers the demand
+     * so that a key asked for often enough is warmed up.
+     */
+    public Optional<Question> take(String subject, String type) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+
+        PoolKey key = new PoolKey(StudyGuideCache.normalize(subject), type);
+        Pool pool = pools.get(key);
+        if (pool == null) {
+            pool = register(key);
+        }
+        pool.lastDemand = System.currentTimeMillis();
+        pool.demand.incrementAndGet();
+
+        Question question = poll(pool);
+        if (question != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+
+        if (pool.questions.size() < properties.getLowWaterMark() && isWarm(key, pool)) {
+            topUp(key, pool);
+        }
+        return Optional.ofNullable(question);
+    }
+
+    @Scheduled(fixedDelayString = "${helpstudy.pool.refill-interval:PT15S}")
+    public void refill() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        long idleCutoff = System.currentTimeMillis() - properties.getKeyIdleTimeout().toMillis();
+        for (Map.Entry<PoolKey, Pool> entry : pools.entrySet()) {
+            Pool pool = entry.getValue();
+            if (pool.lastDemand < idleCutoff) {
+                pools.remove(entry.getKey(), pool);
+                continue;
+            }
+            dropStale(pool);
+            if (pool.questions.size() < properties.getLowWaterMark() && isWarm(entry.getKey(), pool)) {
+                topUp(entry.getKey(), pool);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+
+        Map<String, Integer> depths = new TreeMap<>();
+        pools.forEach((key, pool) -> depths.put(key.subject() + "|" + key.type(), pool.questions.size()));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("staleDrops", staleDrops.get());
+        stats.put("staleServed", staleServed.get());
+        stats.put("refills", refills.get());
+        stats.put("refillFailures", refillFailures.get());
+        stats.put("refillsInFlight", Math.max(1, properties.getRefillConcurrency()) - refillPermits.availablePermits());
+        stats.put("pools", depths);
+        return stats;
+    }
+
+    private boolean isWarm(PoolKey key, Pool pool) {
+        return pool.demand.get() >= properties.getMinDemand() || warmSubjects.contains(key.subject());
+    }
+
+    private Pool register(PoolKey key) {
+        if (!pools.containsKey(key) && pools.size() >= properties.getMaxKeys()) {
+            evictLeastRecentlyDemanded();
+        }
+        return pools.computeIfAbsent(key, k -> new Pool());
+    }
+
+    private void evictLeastRecentlyDemanded() {
+        pools.entrySet().stream()
+                .min(Comparator.comparingLong(entry -> entry.getValue().lastDemand))
+                .ifPresent(entry -> pools.remove(entry.getKey(), entry.getValue()));
+    }
+
+    private Question poll(Pool pool) {
+        long cutoff = System.currentTimeMillis() - properties.getMaxAge().toMillis();
+        boolean upstreamDown = isDegraded();
+        PooledQuestion pooled;
+        while ((pooled = pool.questions.pollFirst()) != null) {
+            if (pooled.createdAt() >= cutoff) {
+                return Question.decode(pooled.payload());
+            }
+            if (upstreamDown) {
+                // An old question beats an error while the model is unreachable or unaffordable
+                staleServed.incrementAndGet();
+                return Question.decode(pooled.payload());
+            }
+            staleDrops.incrementAndGet();
+        }
+        return null;
+    }
+
+    private void dropStale(Pool pool) {
+        if (isDegraded()) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - properties.getMaxAge().toMillis();
+        pool.questions.removeIf(pooled -> {
+            boolean stale = pooled.createdAt() < cutoff;
+            if (stale) {
+                staleDrops.incrementAndGet();
+            }
+            return stale;
+        });
+    }
+
+    private boolean isDegraded() {
+        return !openAIService.isUpstreamAvailable(CallSite.QUESTION) || tokenBudget.isGlobalExhausted();
+    }
+
+    private void topUp(PoolKey key, Pool pool) {
+        if (!tokenBudget.allowsBackgroundWork()) {
+            return;
+        }
+        int needed = properties.getTargetDepth() - pool.questions.size() - pool.inFlight.get();
+        for (int i = 0; i < needed; i++) {
+            if (!refillPermits.tryAcquire()) {
+                return;
+            }
+            pool.inFlight.incrementAndGet();
+            generateInto(key, pool);
+        }
+    }
+
+    private void generateInto(PoolKey key, Pool pool) {
+        String prompt = "Create a challenging AP-level " + key.type().replace('-', ' ')
+                + " question for " + key.subject() + ".";
+        // The permit is held until the upstream call completes, which is what bounds refill concurrency
+        openAIService.generateQuestion(PromptMemoryService.POOL_USER, prompt, key.type(), key.subject()).whenComplete((question, error) -> {
+            try {
+                if (error == null && question != null && !question.getStem().isBlank()) {
+                    pool.questions.addLast(new PooledQuestion(question.encode(), System.currentTimeMillis()));
+                    refills.incrementAndGet();
+                } else {
+                    refillFailures.incrementAndGet();
+                    if (error != null) {
+                        logger.warn("Pool refill failed for subject: {} type: {}", key.subject(), key.type(), error);
+                    }
+                }
+            } finally {
+                pool.inFlight.decrementAndGet();
+                refillPermits.release();
+            }
+        });
+    }
+
+    private record PoolKey(String subject, String type) {
+    }
+
+    private record PooledQuestion(byte[] payload, long createdAt) {
+    }
+
+    private static final class Pool {
+        final ConcurrentLinkedDeque<PooledQuestion> questions = new ConcurrentLinkedDeque<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger demand = new AtomicInteger();
+        volatile long lastDemand = System.currentTimeMillis();
+    }
+}
@@ -1,49 +1,166 @@
 package com.yourpackage.service;
 
+import com.yourpackage.tracing.RequestTrace;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import java.util.LinkedHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.Map;
 
+/**
+ * Per-user rate limits using GCRA (the generic cell rate algorithm, a token
+ * bucket expressed as a single "theoretical arrival time"). Each user's state
+ * is one {@link AtomicLong} updated by CAS, so concurrent requests can never
+ * lose updates. A user may burst up to the hourly limit and then continues at
+ * the hourly rate.
+ *
+ * <p>As a {@link MeterBinder} it exports {@code helpstudy.ratelimit.requests}
+ * (tagged by limiter and outcome) straight from the limiters' own counters, so
+ * checks pay nothing extra for metrics.
+ */
 @Service
-public class RateLimitingService {
-    
-    private final Map<String, UserRateLimit> userRateLimits = new ConcurrentHashMap<>();
+public class RateLimitingService implements MeterBinder {
     
     private static final int QUESTIONS_PER_HOUR = 60;
     private static final int EVALUATIONS_PER_HOUR = 10;
-    private static final long WINDOW_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long WINDOW_NANOS = TimeUnit.HOURS.toNanos(1);
+    
+    // nanoTime can be negative; measure from construction so arrival times start at zero
+    private final long epoch = System.nanoTime();
+    
+    private final Limiter questionLimiter = new Limiter(QUESTIONS_PER_HOUR);
+    private final Limiter evaluationLimiter = new Limiter(EVALUATIONS_PER_HOUR);
+    
+    public Decision checkQuestionRequest(String userId) {
+        return checkQuestionRequest(userId, 1);
+    }
+    
+    /**
+     * Charges {@code cost} question requests at once, e.g. for a batch.
+     */
+    public Decision checkQuestionRequest(String userId, int cost) {
+        try (RequestTrace.Span span = RequestTrace.start("rate-limit")) {
+            return questionLimiter.acquire(userId, cost, now());
+        }
+    }
+    
+    public Decision checkEvaluationRequest(String userId) {
+        try (RequestTrace.Span span = RequestTrace.start("rate-limit")) {
+            return evaluationLimiter.acquire(userId, 1, now());
+        }
+    }
+    
+    /**
+     * Drops buckets that have refilled completely; they behave exactly like a
+     * user that was never seen, so the map only holds recently active users.
+     */
+    @Scheduled(fixedDelay = 5, timeUnit = TimeUnit.MINUTES)
+    public void evictIdleBuckets() {
+        long now = now();
+        questionLimiter.evictIdle(now);
+        evaluationLimiter.evictIdle(now);
+    }
     
-    public boolean isQuestionRequestAllowed(String userId) {
-        return checkRateLimit(userId, "questions", QUESTIONS_PER_HOUR);
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("questions", questionLimiter.stats());
+        stats.put("evaluations", evaluationLimiter.stats());
+        return stats;
     }
     
-    public boolean isEvaluationRequestAllowed(String userId) {
-        return checkRateLimit(userId, "evaluations", EVALUATIONS_PER_HOUR);
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        questionLimiter.bindTo(registry, "questions");
+        evaluationLimiter.bindTo(registry, "evaluations");
     }
     
-    private boolean checkRateLimit(String userId, String operation, int maxRequests) {
-        String key = userId + ":" + operation;
-        UserRateLimit rateLimit = userRateLimits.computeIfAbsent(key, 
-            k -> new UserRateLimit());
+    private long now() {
+        return System.nanoTime() - epoch;
+    }
+    
+    /**
+     * Outcome of a rate limit check. When rejected, {@code retryAfterNanos} is how
+     * long until the same request would be allowed.
+     */
+    public record Decision(boolean allowed, long retryAfterNanos) {
         
-        long now = System.currentTimeMillis();
+        private static final Decision ALLOWED = new Decision(true, 0);
         
-        if (now - rateLimit.windowStart > WINDOW_MILLIS) {
-            rateLimit.requestCount = 0;
-            rateLimit.windowStart = now;
+        /**
+         * Whole seconds to put in a {@code Retry-After} header, rounded up.
+         */
+        public long retryAfterSeconds() {
+            return (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
         }
+    }
+    
+    static final class Limiter {
+        // Keyed by the user id itself so a check never allocates a composite key
+        private final Map<String, AtomicLong> arrivalTimes = new ConcurrentHashMap<>();
+        private final long emissionInterval;
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
         
-        if (rateLimit.requestCount >= maxRequests) {
-            return false;
+        Limiter(int requestsPerWindow) {
+            this.emissionInterval = WINDOW_NANOS / requestsPerWindow;
         }
         
-        rateLimit.requestCount++;
-        return true;
-    }
-    
-    private static class UserRateLimit {
-        int requestCount = 0;
-        long windowStart = System.currentTimeMillis();
+        Decision acquire(String userId, int cost, long now) {
+            AtomicLong arrivalTime = arrivalTimes.get(userId);
+            if (arrivalTime == null) {
+                arrivalTime = arrivalTimes.computeIfAbsent(userId, k -> new AtomicLong(now));
+            }
+            long increment = emissionInterval * cost;
+            while (true) {
+                long current = arrivalTime.get();
+                long next = Math.max(current, now) + increment;
+                // Allowed as long as the bucket would not be more than one window ahead
+                long allowAt = next - WINDOW_NANOS;
+                if (allowAt > now) {
+                    rejected.increment();
+                    return new Decision(false, allowAt - now);
+                }
+                if (arrivalTime.compareAndSet(current, next)) {
+                    allowed.increment();
+                    return Decision.ALLOWED;
+                }
+            }
+        }
+        
+        void evictIdle(long now) {
+            // A request racing with removal may charge a detached bucket; at worst that user
+            // gets one request for free, which is not worth a lock on the hot path
+            arrivalTimes.entrySet().removeIf(entry -> entry.getValue().get() <= now);
+        }
+        
+        void bindTo(MeterRegistry registry, String name) {
+            FunctionCounter.builder("helpstudy.ratelimit.requests", allowed, LongAdder::sum)
+                    .description("Rate limit checks")
+                    .tags("limiter", name, "outcome", "allowed")
+                    .register(registry);
+            FunctionCounter.builder("helpstudy.ratelimit.requests", rejected, LongAdder::sum)
+                    .description("Rate limit checks")
+                    .tags("limiter", name, "outcome", "rejected")
+                    .register(registry);
+            Gauge.builder("helpstudy.ratelimit.tracked.users", arrivalTimes, Map::size)
+                    .description("Users with a bucket that has not refilled yet")
+                    .tag("limiter", name)
+                    .register(registry);
+        }
+        
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("trackedUsers", arrivalTimes.size());
+            stats.put("allowed", allowed.sum());
+            stats.put("rejected", rejected.sum());
+            return stats;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,542 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.ResilienceProperties;
+import io.github.sashirestela.openai.SimpleOpenAI;
+import io.github.sashirestela.openai.domain.chat.Chat;
+import io.github.sashirestela.openai.domain.chat.ChatRequest;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Wraps every model call in the policies from {@link ResilienceProperties} for
+ * its {@link CallSite}: an overall deadline, retries with full-jitter backoff on
+ * 429/5xx/network errors, an optional hedged duplicate once the call is slower
+ * than the site's recent latency percentile, and a circuit breaker that fails
+ * fast with {@link UpstreamUnavailableException} while the error rate is high.
+ * Each attempt waits for a slot in the {@link OutboundDispatcher}, so the
+ * latencies seen here include time spent queued. When the deadline passes or
+ * the call is cancelled, the attempt in flight (and its hedge) is cancelled
+ * down to the HTTP request, freeing its slot for requests still wanted. An
+ * attempt still running at the deadline counts as a failure for the breaker;
+ * one cancelled for any other reason hands back its permit.
+ */
+class ResilientChatClient {
+
+    // simple-openai reports HTTP failures in the exception message, e.g. "statusCode=429"
+    private static final Pattern STATUS_CODE = Pattern.compile("(?i)(?:status\\s*code|http)\\D{0,3}(\\d{3})");
+
+    private final SimpleOpenAI openAI;
+    private final ResilienceProperties properties;
+    private final UpstreamMetrics metrics;
+    private final OutboundDispatcher dispatcher;
+    private final CancellableCalls calls;
+    private final Map<CallSite, SiteState> states = new EnumMap<>(CallSite.class);
+
+    ResilientChatClient(SimpleOpenAI openAI, ResilienceProperties properties, UpstreamMetrics metrics,
+                        OutboundDispatcher dispatcher, CancellableCalls calls) {
+        this.openAI = openAI;
+        this.properties = properties;
+        this.metrics = metrics;
+        this.dispatcher = dispatcher;
+        this.calls = calls;
+        for (CallSite site : CallSite.values()) {
+            states.put(site, new SiteState(properties.policyFor(site)));
+        }
+    }
+
+    /**
+     * {@code usage} is charged the tokens of every attempt's response; see
+     * {@link UpstreamMetrics#completion}.
+     */
+    CompletableFuture<Chat> create(CallSite site, OutboundDispatcher.Priority priority, ChatRequest request,
+                                   LongConsumer usage) {
+        return execute(site, () -> dispatcher.completion(site, priority, () -> calls.send(
+                () -> metrics.completion(site, usage, () -> openAI.chatCompletions().create(request)))), true);
+    }
+
+    /**
+     * Only opening the stream is protected; once tokens flow the caller owns it,
+     * so streams are retried but never hedged.
+     */
+    CompletableFuture<Stream<Chat>> createStream(CallSite site, OutboundDispatcher.Priority priority,
+                                                 ChatRequest request) {
+        return execute(site, () -> dispatcher.stream(site, priority, () -> calls.send(
+                () -> metrics.stream(site, request, () -> openAI.chatCompletions().createStream(request)))), false);
+    }
+
+    /**
+     * False while the site's breaker is open, i.e. a call would fail fast.
+     */
+    boolean isAvailable(CallSite site) {
+        return !properties.isEnabled() || states.get(site).breaker.isCallPermitted(System.nanoTime());
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> sites = new LinkedHashMap<>();
+        states.forEach((site, state) -> sites.put(site.name().toLowerCase(Locale.ROOT), state.stats()));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("callSites", sites);
+        return stats;
+    }
+
+    <T> CompletableFuture<T> execute(CallSite site, Supplier<CompletableFuture<T>> call, boolean hedgeable) {
+        if (!properties.isEnabled()) {
+            return call.get();
+        }
+        SiteState state = states.get(site);
+        long now = System.nanoTime();
+        CircuitBreaker.Permit permit = state.breaker.tryAcquire(now);
+        if (permit == null) {
+            state.rejected.increment();
+            return CompletableFuture.failedFuture(
+                    new UpstreamUnavailableException(site, state.breaker.retryAfterSeconds(now)));
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<T>> current = new AtomicReference<>();
+        result.orTimeout(state.policy.getDeadline().toMillis(), TimeUnit.MILLISECONDS);
+        result.whenComplete((value, error) -> {
+            if (error instanceof TimeoutException) {
+                state.deadlineExceeded.increment();
+                CompletableFuture<T> attempt = current.get();
+                if (attempt != null && !attempt.isDone()) {
+                    // Too slow is unhealthy too; this also settles a half-open probe, whose cancel below would not
+                    state.breaker.onFailure(System.nanoTime());
+                }
+            }
+            if (error instanceof TimeoutException || result.isCancelled()) {
+                cancelAttempt(current);
+            }
+        });
+        runAttempt(site, state, call, hedgeable, 1, permit, result, current);
+        return result;
+    }
+
+    private <T> void runAttempt(CallSite site, SiteState state, Supplier<CompletableFuture<T>> call,
+                                boolean hedgeable, int attempt, CircuitBreaker.Permit permit,
+                                CompletableFuture<T> result, AtomicReference<CompletableFuture<T>> current) {
+        if (result.isDone()) {
+            // Deadline passed or cancelled while waiting to retry
+            state.breaker.release(permit);
+            return;
+        }
+        CompletableFuture<T> outcome = hedgeable && state.policy.isHedge()
+                ? hedged(state, call, permit, result)
+                : timed(state, call, permit);
+        current.set(outcome);
+        if (result.isDone()) {
+            // Completed by the deadline or a cancel while the attempt was being started
+            cancelAttempt(current);
+        }
+
+        outcome.whenComplete((value, error) -> {
+            if (result.isDone()) {
+                // Deadline already passed; nobody is waiting for this attempt
+                if (value instanceof AutoCloseable stream) {
+                    // A stream that opened too late still holds a connection and a dispatcher slot
+                    closeQuietly(stream);
+                }
+                return;
+            }
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (attempt >= state.policy.getMaxAttempts() || !isRetryable(cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            CircuitBreaker.Permit next = state.breaker.tryAcquire(System.nanoTime());
+            if (next == null) {
+                result.completeExceptionally(new UpstreamUnavailableException(site,
+                        state.breaker.retryAfterSeconds(System.nanoTime())));
+                return;
+            }
+            state.retries.increment();
+            CompletableFuture.delayedExecutor(backoffMillis(state.policy, attempt), TimeUnit.MILLISECONDS)
+                    .execute(() -> runAttempt(site, state, call, hedgeable, attempt + 1, next, result, current));
+        });
+    }
+
+    private static <T> void cancelAttempt(AtomicReference<CompletableFuture<T>> current) {
+        CompletableFuture<T> attempt = current.get();
+        if (attempt != null) {
+            attempt.cancel(false);
+        }
+    }
+
+    /**
+     * Runs the call, and if it has not finished by the site's latency percentile
+     * runs a second copy; the first success wins and the other is cancelled.
+     */
+    private <T> CompletableFuture<T> hedged(SiteState state, Supplier<CompletableFuture<T>> call,
+                                            CircuitBreaker.Permit permit, CompletableFuture<T> result) {
+        CompletableFuture<T> primary = timed(state, call, permit);
+        long delayNanos = state.hedgeDelayNanos();
+        if (delayNanos < 0) {
+            return primary;
+        }
+
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        primary.whenComplete((value, error) -> relay(winner, pending, value, error));
+
+        CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+            if (primary.isDone() || result.isDone() || !state.breaker.isClosed()) {
+                return;
+            }
+            if (dispatcher.isSaturated()) {
+                // The primary is most likely slow because it queued; a hedge would queue behind it
+                return;
+            }
+            pending.incrementAndGet();
+            state.hedges.increment();
+            CompletableFuture<T> hedge = timed(state, call, CircuitBreaker.Permit.CALL);
+            hedge.whenComplete((value, error) -> {
+                if (relay(winner, pending, value, error)) {
+                    state.hedgeWins.increment();
+                }
+            });
+            winner.whenComplete((value, error) -> hedge.cancel(false));
+        });
+        winner.whenComplete((value, error) -> primary.cancel(false));
+        return winner;
+    }
+
+    private static <T> boolean relay(CompletableFuture<T> winner, AtomicInteger pending, T value, Throwable error) {
+        if (error == null) {
+            return winner.complete(value);
+        }
+        if (pending.decrementAndGet() == 0) {
+            winner.completeExceptionally(error);
+        }
+        return false;
+    }
+
+    /**
+     * One upstream request, feeding its latency and outcome into the site's
+     * percentile window and circuit breaker. An attempt that ends without an
+     * answer from upstream hands its permit back instead.
+     */
+    private <T> CompletableFuture<T> timed(SiteState state, Supplier<CompletableFuture<T>> call,
+                                           CircuitBreaker.Permit permit) {
+        state.attempts.increment();
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> sent = future;
+        // Not sent.whenComplete(...): its action would be skipped once the returned future was cancelled,
+        // and a cancelled probe has to hand its permit back
+        CompletableFuture<T> observed = new CompletableFuture<>();
+        sent.whenComplete((value, error) -> {
+            long now = System.nanoTime();
+            if (error == null) {
+                state.latencies.record(now - start);
+                state.breaker.onSuccess();
+            } else if (unwrap(error) instanceof CancellationException) {
+                // A hedge or retry we gave up on says nothing about upstream health
+                state.breaker.release(permit);
+            } else if (unwrap(error) instanceof UpstreamUnavailableException) {
+                // Refused by the dispatcher before it reached upstream
+                state.breaker.release(permit);
+            } else if (isRetryable(unwrap(error))) {
+                state.failures.increment();
+                state.breaker.onFailure(now);
+            } else {
+                // 4xx and the like: upstream answered, the request was just bad
+                state.failures.increment();
+                state.breaker.onSuccess();
+            }
+            if (error == null) {
+                observed.complete(value);
+            } else {
+                observed.completeExceptionally(error);
+            }
+        });
+        // Cancelling a lost hedge withdraws it from the dispatcher queue, or cancels its HTTP request
+        observed.whenComplete((value, error) -> {
+            if (observed.isCancelled()) {
+                sent.cancel(false);
+            }
+        });
+        return observed;
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Only closing to free the connection
+        }
+    }
+
+    private static long backoffMillis(ResilienceProperties.Policy policy, int attempt) {
+        long ceiling = policy.getInitialBackoff().toMillis() << Math.min(attempt - 1, 20);
+        long capped = Math.min(policy.getMaxBackoff().toMillis(), Math.max(1, ceiling));
+        return ThreadLocalRandom.current().nextLong(capped + 1);
+    }
+
+    static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Rate limiting (429), server errors (5xx), timeouts and I/O failures are
+     * worth retrying; anything else (bad request, auth, parse errors) is not.
+     */
+    static boolean isRetryable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof TimeoutException) {
+                return true;
+            }
+            if (cause.getMessage() != null) {
+                Matcher matcher = STATUS_CODE.matcher(cause.getMessage());
+                if (matcher.find()) {
+                    int status = Integer.parseInt(matcher.group(1));
+                    return status == 429 || status >= 500;
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private static final class SiteState {
+        final ResilienceProperties.Policy policy;
+        final CircuitBreaker breaker;
+        final LatencyWindow latencies = new LatencyWindow(256);
+        final LongAdder attempts = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder hedges = new LongAdder();
+        final LongAdder hedgeWins = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder deadlineExceeded = new LongAdder();
+
+        SiteState(ResilienceProperties.Policy policy) {
+            this.policy = policy;
+            this.breaker = new CircuitBreaker(policy);
+        }
+
+        long hedgeDelayNanos() {
+            long percentile = latencies.percentile(policy.getHedgePercentile());
+            if (percentile < 0) {
+                // Not enough history to know what "slow" means yet
+                return -1;
+            }
+            return Math.max(policy.getHedgeMinDelay().toNanos(), percentile);
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("circuit", breaker.state());
+            stats.put("attempts", attempts.sum());
+            stats.put("failures", failures.sum());
+            stats.put("retries", retries.sum());
+            stats.put("hedges", hedges.sum());
+            stats.put("hedgeWins", hedgeWins.sum());
+            stats.put("rejectedWhileOpen", rejected.sum());
+            stats.put("deadlineExceeded", deadlineExceeded.sum());
+            long percentile = latencies.percentile(policy.getHedgePercentile());
+            stats.put("latencyPercentileMillis", percentile < 0 ? null : TimeUnit.NANOSECONDS.toMillis(percentile));
+            return stats;
+        }
+    }
+
+    /**
+     * Count-based breaker over the last {@code slidingWindowSize} outcomes. Model
+     * calls are slow and comparatively rare, so a monitor is cheap enough here.
+     */
+    static final class CircuitBreaker {
+        enum State { CLOSED, OPEN, HALF_OPEN }
+
+        /**
+         * Granted by {@link #tryAcquire}. A probe permit belongs to the
+         * half-open period it was taken in, so one handed back late cannot
+         * free a probe of a later period.
+         */
+        record Permit(int halfOpenPeriod) {
+            static final Permit CALL = new Permit(0);
+        }
+
+        private final ResilienceProperties.Policy policy;
+        private final boolean[] window;
+        private int next;
+        private int recorded;
+        private int failed;
+        private State state = State.CLOSED;
+        private long openedAt;
+        private int probesStarted;
+        private int probesSucceeded;
+        private int halfOpenPeriod;
+
+        CircuitBreaker(ResilienceProperties.Policy policy) {
+            this.policy = policy;
+            this.window = new boolean[Math.max(1, policy.getSlidingWindowSize())];
+        }
+
+        /**
+         * A permit to make one attempt, or null while the breaker is open or
+         * all half-open probes are out.
+         */
+        synchronized Permit tryAcquire(long now) {
+            if (state == State.OPEN) {
+                if (now - openedAt < policy.getOpenDuration().toNanos()) {
+                    return null;
+                }
+                state = State.HALF_OPEN;
+                probesStarted = 0;
+                probesSucceeded = 0;
+                halfOpenPeriod++;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesStarted >= Math.max(1, policy.getHalfOpenProbes())) {
+                    return null;
+                }
+                probesStarted++;
+                return new Permit(halfOpenPeriod);
+            }
+            return Permit.CALL;
+        }
+
+        /**
+         * Hands back the permit of an attempt that got no answer from upstream
+         * (cancelled, or refused before it was sent), so a probe that never
+         * reported cannot leave the breaker half-open for good.
+         */
+        synchronized void release(Permit permit) {
+            if (state == State.HALF_OPEN && permit.halfOpenPeriod() == halfOpenPeriod && probesStarted > 0) {
+                probesStarted--;
+            }
+        }
+
+        synchronized boolean isCallPermitted(long now) {
+            return state != State.OPEN || now - openedAt >= policy.getOpenDuration().toNanos();
+        }
+
+        synchronized boolean isClosed() {
+            return state == State.CLOSED;
+        }
+
+        synchronized State state() {
+            return state;
+        }
+
+        synchronized void onSuccess() {
+            if (state == State.HALF_OPEN) {
+                if (++probesSucceeded >= Math.max(1, policy.getHalfOpenProbes())) {
+                    state = State.CLOSED;
+                    Arrays.fill(window, false);
+                    next = 0;
+                    recorded = 0;
+                    failed = 0;
+                }
+                return;
+            }
+            record(false);
+        }
+
+        synchronized void onFailure(long now) {
+            if (state == State.HALF_OPEN) {
+                open(now);
+                return;
+            }
+            record(true);
+            if (state == State.CLOSED && recorded >= policy.getMinimumCalls()
+                    && (double) failed / recorded >= policy.getFailureRateThreshold()) {
+                open(now);
+            }
+        }
+
+        synchronized long retryAfterSeconds(long now) {
+            long remaining = policy.getOpenDuration().toNanos() - (now - openedAt);
+            return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1));
+        }
+
+        private void open(long now) {
+            state = State.OPEN;
+            openedAt = now;
+        }
+
+        private void record(boolean failure) {
+            if (recorded == window.length) {
+                if (window[next]) {
+                    failed--;
+                }
+            } else {
+                recorded++;
+            }
+            window[next] = failure;
+            if (failure) {
+                failed++;
+            }
+            next = (next + 1) % window.length;
+        }
+    }
+
+    /**
+     * Recent successful latencies for one call site. The percentile is cached
+     * and only recomputed every few samples, since it is read on every call.
+     */
+    static final class LatencyWindow {
+        private static final int MIN_SAMPLES = 20;
+        private static final int RECOMPUTE_EVERY = 16;
+
+        private final long[] samples;
+        private int next;
+        private int count;
+        private int sinceRecompute = RECOMPUTE_EVERY;
+        private double cachedFor = Double.NaN;
+        private long cached = -1;
+
+        LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            sinceRecompute++;
+        }
+
+        synchronized long percentile(double percentile) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            if (sinceRecompute >= RECOMPUTE_EVERY || percentile != cachedFor) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile * count) - 1;
+                cached = sorted[Math.max(0, Math.min(count - 1, index))];
+                cachedFor = percentile;
+                sinceRecompute = 0;
+            }
+            return cached;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.yourpackage.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.yourpackage.config.GuideCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Caches generated study guides by normalized subject. Caffeine bounds the cache
+ * by total text size with W-TinyLFU admission, and because the cache holds
+ * futures, concurrent misses for the same subject share one upstream call.
+ */
+@Service
+public class StudyGuideCache implements MeterBinder {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final GuideCacheProperties properties;
+    private final AsyncCache<String, String> cache;
+
+    public StudyGuideCache(GuideCacheProperties properties) {
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxWeight())
+                .weigher((String subject, String guide) -> subject.length() + guide.length())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .buildAsync();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "guide");
+    }
+
+    /**
+     * Returns the cached guide for the subject, or starts (or joins) a load through
+     * {@code loader}. Failed or empty loads are not cached.
+     */
+    public CompletableFuture<String> get(String subject, Supplier<CompletableFuture<String>> loader) {
+        if (!properties.isEnabled()) {
+            return loader.get();
+        }
+        return cache.get(normalize(subject), (key, executor) -> loader.get().thenApply(StudyGuideCache::requireContent));
+    }
+
+    /**
+     * Returns the guide if it is cached or already being generated.
+     */
+    public Optional<CompletableFuture<String>> getIfPresent(String subject) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(cache.getIfPresent(normalize(subject)));
+    }
+
+    public void put(String subject, String guide) {
+        if (properties.isEnabled() && guide != null && !guide.isBlank()) {
+            cache.put(normalize(subject), CompletableFuture.completedFuture(guide));
+        }
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats cacheStats = cache.synchronous().stats();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("size", cache.synchronous().estimatedSize());
+        stats.put("weight", cache.synchronous().policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L));
+        stats.put("maxWeight", properties.getMaxWeight());
+        stats.put("hits", cacheStats.hitCount());
+        stats.put("misses", cacheStats.missCount());
+        stats.put("hitRate", cacheStats.hitRate());
+        stats.put("loadFailures", cacheStats.loadFailureCount());
+        stats.put("evictions", cacheStats.evictionCount());
+        stats.put("averageLoadMillis", cacheStats.averageLoadPenalty() / 1_000_000.0);
+        return stats;
+    }
+
+    static String normalize(String subject) {
+        return WHITESPACE.matcher(subject.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String requireContent(String guide) {
+        if (guide == null || guide.isBlank()) {
+            throw new IllegalStateException("Received empty guide from AI model");
+        }
+        return guide;
+    }
+}
@@ -0,0 +1,353 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.TokenBudgetProperties;
+import com.yourpackage.model.Question;
+import com.yourpackage.tracing.RequestTrace;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token budgets per user and for the whole instance, so admission reflects what
+ * requests actually cost upstream rather than how many there are. Each budget
+ * is a sliding window of prompt plus completion tokens kept as a ring of
+ * per-slice counters ({@code slices} longs per window).
+ *
+ * <p>Before a model call the caller is admitted against an estimate of its
+ * cost, which stays reserved in both windows until the call completes; actual
+ * usage is charged as responses arrive: per user by {@link OpenAIService}, and
+ * globally for every upstream response (retries, hedges and pool refills
+ * included). When the global window is full, callers are expected to fall back
+ * to pooled or cached content.
+ */
+@Service
+public class TokenBudgetService implements MeterBinder {
+
+    private final TokenBudgetProperties properties;
+    private final long sliceNanos;
+    private final int sliceCount;
+
+    // nanoTime can be negative; measure from construction so slice numbers start at zero
+    private final long epoch = System.nanoTime();
+
+    private final Window global;
+    private final Window overflow;
+    private final Map<String, Window> users = new ConcurrentHashMap<>();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder userRejections = new LongAdder();
+    private final LongAdder globalRejections = new LongAdder();
+
+    public TokenBudgetService(TokenBudgetProperties properties) {
+        this.properties = properties;
+        this.sliceCount = Math.max(1, properties.getSlices());
+        this.sliceNanos = Math.max(1, properties.getWindow().toNanos() / sliceCount);
+        this.global = new Window(sliceCount);
+        this.overflow = new Window(sliceCount);
+    }
+
+    public long estimateQuestion(String type, String subject) {
+        if (Question.FREE_RESPONSE.equals(type)) {
+            return properties.getFreeResponseEstimate();
+        }
+        return OpenAIService.isMathSubject(subject) ? properties.getMathEstimate() : properties.getMultipleChoiceEstimate();
+    }
+
+    public long estimateBatch(int count) {
+        return properties.getBatchQuestionEstimate() * count;
+    }
+
+    public long estimateGuide() {
+        return properties.getGuideEstimate();
+    }
+
+    public long estimateEvaluation() {
+        return properties.getEvaluationEstimate();
+    }
+
+    /**
+     * Reserves {@code estimatedTokens} for a model call on behalf of the user,
+     * unless that would overrun the user's or the global window. An admitted
+     * caller must {@link Admission#release()} once the call has finished.
+     */
+    public Admission admit(String userId, long estimatedTokens) {
+        if (!properties.isEnabled()) {
+            return Admission.NONE;
+        }
+        try (RequestTrace.Span span = RequestTrace.start("budget")) {
+            return reserve(userId, estimatedTokens);
+        }
+    }
+
+    private Admission reserve(String userId, long estimatedTokens) {
+        long now = now();
+        long slice = now / sliceNanos;
+        Window user = userWindow(userId, slice);
+        if (!user.tryReserve(slice, estimatedTokens, properties.getPerUserTokens())) {
+            userRejections.increment();
+            return Admission.rejected(Outcome.USER_EXHAUSTED,
+                    user.nanosUntilFits(slice, estimatedTokens, properties.getPerUserTokens(), now, sliceNanos));
+        }
+        if (!global.tryReserve(slice, estimatedTokens, properties.getGlobalTokens())) {
+            user.release(estimatedTokens);
+            globalRejections.increment();
+            return Admission.rejected(Outcome.GLOBAL_EXHAUSTED,
+                    global.nanosUntilFits(slice, estimatedTokens, properties.getGlobalTokens(), now, sliceNanos));
+        }
+        admitted.increment();
+        return new Admission(Outcome.ADMITTED, 0, user, global, estimatedTokens);
+    }
+
+    /**
+     * True while the global window has no room for an average request, i.e.
+     * new model calls would be refused.
+     */
+    public boolean isGlobalExhausted() {
+        return properties.isEnabled()
+                && global.committed(now() / sliceNanos) + properties.getMultipleChoiceEstimate() > properties.getGlobalTokens();
+    }
+
+    /**
+     * Whether background work such as pool refills may spend tokens: only while
+     * the global window is below {@code backgroundShare} of the budget, so
+     * interactive requests keep the rest.
+     */
+    public boolean allowsBackgroundWork() {
+        return !properties.isEnabled()
+                || global.committed(now() / sliceNanos) < properties.getGlobalTokens() * properties.getBackgroundShare();
+    }
+
+    /**
+     * Charges tokens the user's request actually used.
+     */
+    public void recordUsage(String userId, long tokens) {
+        if (!properties.isEnabled() || tokens <= 0) {
+            return;
+        }
+        long slice = now() / sliceNanos;
+        userWindow(userId, slice).add(slice, tokens);
+    }
+
+    /**
+     * Charges tokens reported by an upstream response, whoever it was for.
+     */
+    void recordUpstream(long tokens) {
+        if (!properties.isEnabled() || tokens <= 0) {
+            return;
+        }
+        global.add(now() / sliceNanos, tokens);
+    }
+
+    /**
+     * Drops windows of users with nothing left in the window and nothing in
+     * flight; they are indistinguishable from users never seen.
+     */
+    @Scheduled(fixedDelay = 5, timeUnit = TimeUnit.MINUTES)
+    public void evictIdleUsers() {
+        long slice = now() / sliceNanos;
+        users.values().removeIf(window -> window.isIdle(slice));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("helpstudy.budget.global.used", global, window -> window.committed(now() / sliceNanos))
+                .description("Tokens used or reserved in the global window")
+                .baseUnit("tokens")
+                .register(registry);
+        FunctionCounter.builder("helpstudy.budget.admissions", admitted, LongAdder::sum)
+                .tag("outcome", "admitted").register(registry);
+        FunctionCounter.builder("helpstudy.budget.admissions", userRejections, LongAdder::sum)
+                .tag("outcome", "user_exhausted").register(registry);
+        FunctionCounter.builder("helpstudy.budget.admissions", globalRejections, LongAdder::sum)
+                .tag("outcome", "global_exhausted").register(registry);
+    }
+
+    public Map<String, Object> stats() {
+        long slice = now() / sliceNanos;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("windowSeconds", properties.getWindow().toSeconds());
+        stats.put("globalBudget", properties.getGlobalTokens());
+        stats.put("globalUsed", global.used(slice));
+        stats.put("globalReserved", global.reserved());
+        stats.put("perUserBudget", properties.getPerUserTokens());
+        stats.put("trackedUsers", users.size());
+        stats.put("admitted", admitted.sum());
+        stats.put("userRejections", userRejections.sum());
+        stats.put("globalRejections", globalRejections.sum());
+        return stats;
+    }
+
+    private Window userWindow(String userId, long slice) {
+        Window window = users.get(userId);
+        if (window != null) {
+            return window;
+        }
+        if (users.size() >= properties.getMaxUsers()) {
+            users.values().removeIf(idle -> idle.isIdle(slice));
+            if (users.size() >= properties.getMaxUsers()) {
+                return overflow;
+            }
+        }
+        return users.computeIfAbsent(userId, k -> new Window(sliceCount));
+    }
+
+    private long now() {
+        return System.nanoTime() - epoch;
+    }
+
+    public enum Outcome { ADMITTED, USER_EXHAUSTED, GLOBAL_EXHAUSTED }
+
+    /**
+     * Result of {@link #admit}. When rejected, {@code retryAfterNanos} is how long
+     * until enough of the window has slid out for the same request to fit.
+     */
+    public static final class Admission {
+
+        /**
+         * Admission that reserves nothing, for requests answered without a model call.
+         */
+        public static final Admission NONE = new Admission(Outcome.ADMITTED, 0, null, null, 0);
+
+        private final Outcome outcome;
+        private final long retryAfterNanos;
+        private final Window user;
+        private final Window global;
+        private final long reserved;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Admission(Outcome outcome, long retryAfterNanos, Window user, Window global, long reserved) {
+            this.outcome = outcome;
+            this.retryAfterNanos = retryAfterNanos;
+            this.user = user;
+            this.global = global;
+            this.reserved = reserved;
+        }
+
+        private static Admission rejected(Outcome outcome, long retryAfterNanos) {
+            return new Admission(outcome, retryAfterNanos, null, null, 0);
+        }
+
+        public Outcome outcome() {
+            return outcome;
+        }
+
+        public boolean admitted() {
+            return outcome == Outcome.ADMITTED;
+        }
+
+        /**
+         * Whole seconds to put in a {@code Retry-After} header, rounded up.
+         */
+        public long retryAfterSeconds() {
+            return Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        }
+
+        /**
+         * Returns the reservation; safe to call more than once and on rejections.
+         */
+        public void release() {
+            if (user != null && released.compareAndSet(false, true)) {
+                user.release(reserved);
+                global.release(reserved);
+            }
+        }
+    }
+
+    /**
+     * Tokens per slice over the last {@code slices.length} slices, plus tokens
+     * reserved by calls in flight. Slices are reset lazily as time moves on.
+     */
+    static final class Window {
+        private final long[] slices;
+        private long newest;
+        private long total;
+        private long reserved;
+
+        Window(int count) {
+            this.slices = new long[count];
+        }
+
+        synchronized void add(long slice, long tokens) {
+            advance(slice);
+            slices[(int) (slice % slices.length)] += tokens;
+            total += tokens;
+        }
+
+        synchronized boolean tryReserve(long slice, long tokens, long limit) {
+            advance(slice);
+            if (total + reserved + tokens > limit) {
+                return false;
+            }
+            reserved += tokens;
+            return true;
+        }
+
+        synchronized void release(long tokens) {
+            reserved = Math.max(0, reserved - tokens);
+        }
+
+        synchronized long used(long slice) {
+            advance(slice);
+            return total;
+        }
+
+        synchronized long reserved() {
+            return reserved;
+        }
+
+        synchronized long committed(long slice) {
+            advance(slice);
+            return total + reserved;
+        }
+
+        synchronized boolean isIdle(long slice) {
+            advance(slice);
+            return total == 0 && reserved == 0;
+        }
+
+        /**
+         * Time until the oldest slices have expired far enough for {@code tokens}
+         * more to fit, or the whole window if they never will (reservations alone
+         * are too large).
+         */
+        synchronized long nanosUntilFits(long slice, long tokens, long limit, long now, long sliceNanos) {
+            advance(slice);
+            long excess = total + reserved + tokens - limit;
+            long freed = 0;
+            for (long oldest = slice - slices.length + 1; oldest <= slice; oldest++) {
+                if (oldest < 0) {
+                    continue;
+                }
+                freed += slices[(int) (oldest % slices.length)];
+                if (freed >= excess) {
+                    return (oldest + slices.length) * sliceNanos - now;
+                }
+            }
+            return sliceNanos * slices.length;
+        }
+
+        private void advance(long slice) {
+            if (slice <= newest) {
+                return;
+            }
+            long steps = Math.min(slice - newest, slices.length);
+            for (long i = 1; i <= steps; i++) {
+                int index = (int) ((newest + i) % slices.length);
+                total -= slices[index];
+                slices[index] = 0;
+            }
+            newest = slice;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.TopicMemoryProperties;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often each topic of each subject has come up recently, across all users,
+ * with older questions counting exponentially less. Counters use forward decay:
+ * a question recorded at time t adds 2^((t - landmark) / halfLife), so stored
+ * values never need updating as time passes; they are rescaled only when the
+ * increments grow too large. Per subject the counters live in parallel
+ * primitive arrays, and both subjects and topics per subject are bounded, so
+ * memory stays flat however many questions are generated.
+ */
+final class TopicCoverage {
+
+    // Rescale once increments reach 2^RESCALE_EXPONENT, well inside double precision
+    private static final double RESCALE_EXPONENT = 40;
+
+    private final TopicMemoryProperties properties;
+    private final double halfLifeMillis;
+    private final Map<String, SubjectCoverage> subjects = new ConcurrentHashMap<>();
+
+    TopicCoverage(TopicMemoryProperties properties) {
+        this.properties = properties;
+        this.halfLifeMillis = Math.max(1, properties.getCoverageHalfLife().toMillis());
+    }
+
+    void record(String subject, String topic, long timestamp) {
+        SubjectCoverage coverage = subjects.get(subject);
+        if (coverage == null) {
+            if (subjects.size() >= properties.getCoverageMaxSubjects()) {
+                evictLeastRecentSubject();
+            }
+            coverage = subjects.computeIfAbsent(subject,
+                    k -> new SubjectCoverage(Math.max(1, properties.getCoverageMaxTopicsPerSubject()), timestamp));
+        }
+        coverage.record(topic, timestamp);
+    }
+
+    /**
+     * Picks up to {@code count} distinct candidates, favouring the least covered:
+     * a candidate's chance is proportional to 1 / (1 + its decayed count).
+     */
+    List<String> sampleUnderCovered(String subject, Collection<String> candidates, Collection<String> exclude, int count) {
+        if (count <= 0 || candidates.isEmpty()) {
+            return List.of();
+        }
+        SubjectCoverage coverage = subjects.get(subject);
+        long now = System.currentTimeMillis();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        // Weighted sampling without replacement: keep the candidates with the largest u^(1/w)
+        PriorityQueue<Map.Entry<Double, String>> best = new PriorityQueue<>(count + 1, Map.Entry.comparingByKey());
+        for (String candidate : candidates) {
+            if (exclude.contains(candidate)) {
+                continue;
+            }
+            double weight = 1.0 / (1.0 + (coverage == null ? 0 : coverage.count(candidate, now)));
+            double key = Math.pow(random.nextDouble(), 1.0 / weight);
+            best.add(Map.entry(key, candidate));
+            if (best.size() > count) {
+                best.poll();
+            }
+        }
+        List<String> sampled = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            sampled.add(best.poll().getValue());
+        }
+        Collections.reverse(sampled);
+        return sampled;
+    }
+
+    /**
+     * Decayed count of the subject's topics, most covered first.
+     */
+    Map<String, Double> snapshot(String subject) {
+        SubjectCoverage coverage = subjects.get(subject);
+        return coverage == null ? Map.of() : coverage.snapshot(System.currentTimeMillis());
+    }
+
+    Map<String, Object> stats() {
+        int topics = 0;
+        for (SubjectCoverage coverage : subjects.values()) {
+            topics += coverage.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("subjects", subjects.size());
+        stats.put("topics", topics);
+        stats.put("halfLifeMillis", (long) halfLifeMillis);
+        return stats;
+    }
+
+    private void evictLeastRecentSubject() {
+        String oldest = null;
+        long oldestUse = Long.MAX_VALUE;
+        for (Map.Entry<String, SubjectCoverage> entry : subjects.entrySet()) {
+            long lastUsed = entry.getValue().lastUsed;
+            if (lastUsed < oldestUse) {
+                oldestUse = lastUsed;
+                oldest = entry.getKey();
+            }
+        }
+        if (oldest != null) {
+            subjects.remove(oldest);
+        }
+    }
+
+    private final class SubjectCoverage {
+        private final Map<String, Integer> index;
+        private final String[] topics;
+        private final double[] weights;
+        private int size;
+        private long landmark;
+        volatile long lastUsed;
+
+        SubjectCoverage(int capacity, long landmark) {
+            this.index = new HashMap<>(capacity * 2);
+            this.topics = new String[capacity];
+            this.weights = new double[capacity];
+            this.landmark = landmark;
+            this.lastUsed = landmark;
+        }
+
+        synchronized void record(String topic, long timestamp) {
+            lastUsed = Math.max(lastUsed, timestamp);
+            double exponent = (timestamp - landmark) / halfLifeMillis;
+            if (exponent > RESCALE_EXPONENT) {
+                rescale(timestamp);
+                exponent = 0;
+            }
+            Integer slot = index.get(topic);
+            if (slot == null) {
+                slot = size < topics.length ? size++ : evictLeastCovered();
+                topics[slot] = topic;
+                weights[slot] = 0;
+                index.put(topic, slot);
+            }
+            weights[slot] += Math.pow(2, exponent);
+        }
+
+        synchronized double count(String topic, long now) {
+            Integer slot = index.get(topic);
+            return slot == null ? 0 : weights[slot] * Math.pow(2, -(now - landmark) / halfLifeMillis);
+        }
+
+        synchronized Map<String, Double> snapshot(long now) {
+            double scale = Math.pow(2, -(now - landmark) / halfLifeMillis);
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(weights[b], weights[a]));
+            Map<String, Double> counts = new LinkedHashMap<>();
+            for (int i : order) {
+                counts.put(topics[i], weights[i] * scale);
+            }
+            return counts;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        // Moves the landmark to now; every stored weight shrinks by the same factor
+        private void rescale(long now) {
+            double factor = Math.pow(2, -(now - landmark) / halfLifeMillis);
+            for (int i = 0; i < size; i++) {
+                weights[i] *= factor;
+            }
+            landmark = now;
+        }
+
+        // Frees the slot of the least covered topic for reuse
+        private int evictLeastCovered() {
+            int least = 0;
+            for (int i = 1; i < size; i++) {
+                if (weights[i] < weights[least]) {
+                    least = i;
+                }
+            }
+            index.remove(topics[least]);
+            return least;
+        }
+    }
+}
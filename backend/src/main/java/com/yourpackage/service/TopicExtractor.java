@@ -0,0 +1,296 @@
+package com.yourpackage.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Finds the topic of a model response. Subjects with a dictionary are matched
+ * against every topic phrase of every category at once with an Aho-Corasick
+ * automaton compiled to a dense transition table, so one pass over the original
+ * text (case folded per character, never copied) finds the highest-priority
+ * topic. Other subjects fall back to the most frequent non-stopword longer than
+ * four letters, counted in a single streaming pass.
+ *
+ * <p>Dictionaries are read from a classpath resource; see
+ * {@code topic-dictionary.txt} for the format.
+ */
+final class TopicExtractor {
+
+    static final String DEFAULT_DICTIONARY = "topic-dictionary.txt";
+
+    private static final String STOPWORDS_SECTION = "stopwords";
+    private static final int MIN_GENERIC_WORD_LENGTH = 5;
+
+    private final Map<String, Integer> categories;
+    private final Map<String, List<String>> labels;
+    private final Set<String> stopwords;
+
+    // Alphabet: every distinct (lower case) character used by a phrase; anything else resets to the root
+    private final int[] asciiClass = new int[128];
+    private final Map<Character, Integer> otherClass = new HashMap<>();
+    private final int alphabetSize;
+
+    // delta[state * alphabetSize + class] is the next state; outputs[state] lists the phrases ending there
+    private final int[] delta;
+    private final int[][] outputs;
+
+    // Per phrase: category, priority within the category, label and length in characters
+    private final int[] phraseCategory;
+    private final int[] phrasePriority;
+    private final String[] phraseLabel;
+    private final int[] phraseLength;
+
+    private TopicExtractor(Map<String, List<List<String>>> sections, Set<String> stopwords) {
+        this.stopwords = stopwords;
+        this.categories = new HashMap<>();
+        this.labels = new HashMap<>();
+
+        List<String> phrases = new ArrayList<>();
+        List<Integer> category = new ArrayList<>();
+        List<Integer> priority = new ArrayList<>();
+        List<String> label = new ArrayList<>();
+        for (Map.Entry<String, List<List<String>>> section : sections.entrySet()) {
+            int categoryId = categories.size();
+            categories.put(section.getKey(), categoryId);
+            List<List<String>> topics = section.getValue();
+            List<String> categoryLabels = new ArrayList<>(topics.size());
+            for (int rank = 0; rank < topics.size(); rank++) {
+                List<String> line = topics.get(rank);
+                categoryLabels.add(line.get(0));
+                // The first entry is the label, the rest (or the label itself) are the phrases
+                for (String phrase : line.size() == 1 ? line : line.subList(1, line.size())) {
+                    phrases.add(phrase);
+                    category.add(categoryId);
+                    priority.add(rank);
+                    label.add(line.get(0));
+                }
+            }
+            labels.put(section.getKey(), List.copyOf(categoryLabels));
+        }
+
+        Arrays.fill(asciiClass, -1);
+        int classes = 0;
+        for (String phrase : phrases) {
+            for (int i = 0; i < phrase.length(); i++) {
+                char c = phrase.charAt(i);
+                if (classOf(c) >= 0) {
+                    continue;
+                }
+                if (c < asciiClass.length) {
+                    asciiClass[c] = classes++;
+                } else {
+                    otherClass.put(c, classes++);
+                }
+            }
+        }
+        this.alphabetSize = Math.max(1, classes);
+
+        int count = phrases.size();
+        this.phraseCategory = new int[count];
+        this.phrasePriority = new int[count];
+        this.phraseLabel = new String[count];
+        this.phraseLength = new int[count];
+        for (int i = 0; i < count; i++) {
+            phraseCategory[i] = category.get(i);
+            phrasePriority[i] = priority.get(i);
+            phraseLabel[i] = label.get(i);
+            phraseLength[i] = phrases.get(i).length();
+        }
+
+        // Build the trie with sparse children, then compile it into a full transition table
+        List<Map<Integer, Integer>> children = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        children.add(new HashMap<>());
+        ends.add(new ArrayList<>());
+        for (int p = 0; p < count; p++) {
+            String phrase = phrases.get(p);
+            int state = 0;
+            for (int i = 0; i < phrase.length(); i++) {
+                int symbol = classOf(phrase.charAt(i));
+                Integer next = children.get(state).get(symbol);
+                if (next == null) {
+                    next = children.size();
+                    children.get(state).put(symbol, next);
+                    children.add(new HashMap<>());
+                    ends.add(new ArrayList<>());
+                }
+                state = next;
+            }
+            ends.get(state).add(p);
+        }
+
+        int states = children.size();
+        this.delta = new int[states * alphabetSize];
+        this.outputs = new int[states][];
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (Map.Entry<Integer, Integer> child : children.get(0).entrySet()) {
+            delta[child.getKey()] = child.getValue();
+            queue.add(child.getValue());
+        }
+        // Breadth first, so a state's failure target is always finished before the state itself
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            List<Integer> matched = new ArrayList<>(ends.get(state));
+            if (outputs[fail[state]] != null) {
+                for (int p : outputs[fail[state]]) {
+                    matched.add(p);
+                }
+            }
+            if (!matched.isEmpty()) {
+                outputs[state] = matched.stream().mapToInt(Integer::intValue).toArray();
+            }
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                Integer next = children.get(state).get(symbol);
+                if (next != null) {
+                    fail[next] = delta[fail[state] * alphabetSize + symbol];
+                    delta[state * alphabetSize + symbol] = next;
+                    queue.add(next);
+                } else {
+                    delta[state * alphabetSize + symbol] = delta[fail[state] * alphabetSize + symbol];
+                }
+            }
+        }
+    }
+
+    static TopicExtractor fromClasspath(String resource) {
+        try (InputStream in = TopicExtractor.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalStateException("Topic dictionary not found on classpath: " + resource);
+            }
+            return load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read topic dictionary " + resource, e);
+        }
+    }
+
+    static TopicExtractor load(InputStream in) throws IOException {
+        Map<String, List<List<String>>> sections = new LinkedHashMap<>();
+        Set<String> stopwords = new HashSet<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String section = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim().toLowerCase(Locale.ROOT);
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("[") && line.endsWith("]")) {
+                section = line.substring(1, line.length() - 1).trim();
+                continue;
+            }
+            if (section == null) {
+                throw new IOException("Topic dictionary entry outside of a section: " + line);
+            }
+            if (STOPWORDS_SECTION.equals(section)) {
+                stopwords.addAll(Arrays.asList(line.split("[\\s,]+")));
+                continue;
+            }
+
+            List<String> topic = new ArrayList<>();
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                topic.add(line);
+            } else {
+                topic.add(line.substring(0, colon).trim());
+                for (String alias : line.substring(colon + 1).split(",")) {
+                    if (!alias.isBlank()) {
+                        topic.add(alias.trim());
+                    }
+                }
+            }
+            sections.computeIfAbsent(section, k -> new ArrayList<>()).add(topic);
+        }
+        return new TopicExtractor(sections, stopwords);
+    }
+
+    /**
+     * Every topic label of the category in dictionary order, or an empty list.
+     */
+    List<String> labels(String category) {
+        return labels.getOrDefault(category, List.of());
+    }
+
+    /**
+     * Returns the highest-priority topic of {@code category} mentioned in the
+     * text, or an empty string if there is none (or no such category).
+     */
+    String match(String category, CharSequence text) {
+        Integer categoryId = categories.get(category);
+        if (categoryId == null) {
+            return "";
+        }
+        int state = 0;
+        int bestPriority = Integer.MAX_VALUE;
+        String best = "";
+        for (int i = 0, length = text.length(); i < length; i++) {
+            int symbol = classOf(Character.toLowerCase(text.charAt(i)));
+            state = symbol < 0 ? 0 : delta[state * alphabetSize + symbol];
+            int[] matched = outputs[state];
+            if (matched == null) {
+                continue;
+            }
+            for (int p : matched) {
+                if (phraseCategory[p] == categoryId && phrasePriority[p] < bestPriority
+                        && startsWord(text, i - phraseLength[p] + 1)) {
+                    bestPriority = phrasePriority[p];
+                    best = phraseLabel[p];
+                    if (bestPriority == 0) {
+                        return best;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the most frequent word of more than four letters that is not a
+     * stopword, or an empty string. Words are whitespace separated and keep only
+     * their letters; ties go to the word that reached the count first.
+     */
+    String mostFrequentWord(CharSequence text) {
+        Map<String, int[]> counts = new HashMap<>();
+        StringBuilder word = new StringBuilder(32);
+        String best = "";
+        int bestCount = 0;
+        for (int i = 0, length = text.length(); i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            if (!Character.isWhitespace(c)) {
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                    word.append((char) (c | 0x20));
+                }
+                continue;
+            }
+            if (word.length() >= MIN_GENERIC_WORD_LENGTH) {
+                String key = word.toString();
+                if (!stopwords.contains(key)) {
+                    int count = ++counts.computeIfAbsent(key, k -> new int[1])[0];
+                    if (count > bestCount) {
+                        bestCount = count;
+                        best = key;
+                    }
+                }
+            }
+            word.setLength(0);
+        }
+        return best;
+    }
+
+    private int classOf(char c) {
+        if (c < asciiClass.length) {
+            return asciiClass[c];
+        }
+        Integer id = otherClass.get(c);
+        return id == null ? -1 : id;
+    }
+
+    private static boolean startsWord(CharSequence text, int start) {
+        return start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1));
+    }
+}
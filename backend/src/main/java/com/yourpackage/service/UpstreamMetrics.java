@@ -0,0 +1,197 @@
+package com.yourpackage.service;
+
+import io.github.sashirestela.openai.domain.chat.Chat;
+import io.github.sashirestela.openai.domain.chat.ChatMessage;
+import io.github.sashirestela.openai.domain.chat.ChatRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Micrometer meters for every request sent to OpenAI, by {@link CallSite}:
+ * <ul>
+ *   <li>{@code helpstudy.upstream.requests}: latency histogram of each HTTP
+ *       attempt (retries and hedges included), tagged with {@code mode}
+ *       ({@code blocking}, or {@code stream} where only opening the stream is
+ *       timed) and {@code outcome};</li>
+ *   <li>{@code helpstudy.upstream.tokens}: prompt and completion tokens reported
+ *       in the responses' usage, including responses nobody ended up waiting for
+ *       (they are billed all the same).</li>
+ * </ul>
+ * The same token counts are charged to the global {@link TokenBudgetService}
+ * window, and for completions also to the caller's usage callback. Meters are registered up front so the request path only looks them
+ * up in an {@link EnumMap}.
+ */
+final class UpstreamMetrics {
+
+    // Rough size of a token in English text, for streams that report no usage
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final Map<CallSite, SiteMeters> sites = new EnumMap<>(CallSite.class);
+    private final TokenBudgetService budget;
+
+    UpstreamMetrics(MeterRegistry registry, TokenBudgetService budget) {
+        this.budget = budget;
+        for (CallSite site : CallSite.values()) {
+            sites.put(site, new SiteMeters(registry, site.name().toLowerCase(Locale.ROOT)));
+        }
+    }
+
+    /**
+     * {@code usage} is told the tokens of every response, including one that
+     * arrives after its caller stopped waiting.
+     */
+    CompletableFuture<Chat> completion(CallSite site, LongConsumer usage, Supplier<CompletableFuture<Chat>> call) {
+        SiteMeters meters = sites.get(site);
+        return timed(meters.blockingSuccess, meters.blockingError, call).thenApply(chat -> {
+            meters.recordUsage(chat);
+            long tokens = tokens(chat);
+            budget.recordUpstream(tokens);
+            usage.accept(tokens);
+            return chat;
+        });
+    }
+
+    /**
+     * Streams only report usage in their final chunk, and only when the request
+     * asks for it; chunks are inspected as the caller consumes them, and if no
+     * usage arrived the budget is charged an estimate when the stream is closed.
+     */
+    CompletableFuture<Stream<Chat>> stream(CallSite site, ChatRequest request,
+                                           Supplier<CompletableFuture<Stream<Chat>>> call) {
+        SiteMeters meters = sites.get(site);
+        return timed(meters.streamSuccess, meters.streamError, call).thenApply(chunks -> {
+            StreamUsage usage = new StreamUsage(request);
+            return chunks.peek(chunk -> {
+                meters.recordUsage(chunk);
+                usage.accept(chunk);
+            }).onClose(() -> budget.recordUpstream(usage.tokens()));
+        });
+    }
+
+    /**
+     * Prompt plus completion tokens reported by a response, or 0 without usage.
+     */
+    static long tokens(Chat chat) {
+        if (chat == null || chat.getUsage() == null) {
+            return 0;
+        }
+        Integer prompt = chat.getUsage().getPromptTokens();
+        Integer completion = chat.getUsage().getCompletionTokens();
+        return (prompt == null ? 0 : prompt) + (completion == null ? 0 : completion);
+    }
+
+    /**
+     * Tokens used by one streamed completion: the reported usage if a chunk
+     * carried it, otherwise an estimate from the prompt and streamed text.
+     */
+    static final class StreamUsage implements Consumer<Chat> {
+        private final long promptChars;
+        private long completionChars;
+        private long reported;
+
+        StreamUsage(ChatRequest request) {
+            long chars = 0;
+            for (ChatMessage message : request.getMessages()) {
+                if (message instanceof ChatMessage.SystemMessage system) {
+                    chars += String.valueOf(system.getContent()).length();
+                } else if (message instanceof ChatMessage.UserMessage user) {
+                    chars += String.valueOf(user.getContent()).length();
+                }
+            }
+            this.promptChars = chars;
+        }
+
+        @Override
+        public void accept(Chat chunk) {
+            reported += UpstreamMetrics.tokens(chunk);
+            if (chunk.getChoices() != null && !chunk.getChoices().isEmpty()) {
+                String content = chunk.firstContent();
+                if (content != null) {
+                    completionChars += content.length();
+                }
+            }
+        }
+
+        long tokens() {
+            return reported > 0 ? reported : (promptChars + completionChars + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+        }
+    }
+
+    private static <T> CompletableFuture<T> timed(Timer success, Timer error, Supplier<CompletableFuture<T>> call) {
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((value, failure) ->
+                (failure == null ? success : error).record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    }
+
+    private static final class SiteMeters {
+        final Timer blockingSuccess;
+        final Timer blockingError;
+        final Timer streamSuccess;
+        final Timer streamError;
+        final Counter promptTokens;
+        final Counter completionTokens;
+
+        SiteMeters(MeterRegistry registry, String site) {
+            this.blockingSuccess = timer(registry, site, "blocking", "success");
+            this.blockingError = timer(registry, site, "blocking", "error");
+            this.streamSuccess = timer(registry, site, "stream", "success");
+            this.streamError = timer(registry, site, "stream", "error");
+            this.promptTokens = tokens(registry, site, "prompt");
+            this.completionTokens = tokens(registry, site, "completion");
+        }
+
+        void recordUsage(Chat chat) {
+            if (chat == null || chat.getUsage() == null) {
+                return;
+            }
+            Integer prompt = chat.getUsage().getPromptTokens();
+            Integer completion = chat.getUsage().getCompletionTokens();
+            if (prompt != null) {
+                promptTokens.increment(prompt);
+            }
+            if (completion != null) {
+                completionTokens.increment(completion);
+            }
+        }
+
+        private static Timer timer(MeterRegistry registry, String site, String mode, String outcome) {
+            return Timer.builder("helpstudy.upstream.requests")
+                    .description("Latency of individual OpenAI requests")
+                    .tag("site", site)
+                    .tag("mode", mode)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(50))
+                    // Free-response questions may take the whole 120s read timeout
+                    .maximumExpectedValue(Duration.ofSeconds(150))
+                    .register(registry);
+        }
+
+        private static Counter tokens(MeterRegistry registry, String site, String type) {
+            return Counter.builder("helpstudy.upstream.tokens")
+                    .description("Tokens reported in OpenAI response usage")
+                    .baseUnit("tokens")
+                    .tag("site", site)
+                    .tag("type", type)
+                    .register(registry);
+        }
+    }
+}
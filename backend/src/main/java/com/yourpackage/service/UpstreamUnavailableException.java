@@ -0,0 +1,30 @@
+package com.yourpackage.service;
+
+/**
+ * Thrown without contacting the model when the circuit breaker for a call site
+ * is open, or when too many requests are already waiting to be sent. Callers
+ * should answer 503 and suggest retrying after {@link #getRetryAfterSeconds()}.
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+
+    private final CallSite callSite;
+    private final long retryAfterSeconds;
+
+    public UpstreamUnavailableException(CallSite callSite, long retryAfterSeconds) {
+        this(callSite, retryAfterSeconds, "circuit open");
+    }
+
+    public UpstreamUnavailableException(CallSite callSite, long retryAfterSeconds, String reason) {
+        super("Upstream model unavailable for " + callSite + "; " + reason);
+        this.callSite = callSite;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public CallSite getCallSite() {
+        return callSite;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,301 @@
+package com.yourpackage.tracing;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Timeline of one HTTP request: named spans for its stages (auth, rate-limit,
+ * prompt, each upstream call, post-processing) plus details such as raw model
+ * responses, which are kept by reference and only rendered if the trace is
+ * written out. Every request gets a trace so it can report a
+ * {@code Server-Timing} header; whether it is logged is decided at the end
+ * (see {@link TracingFilter}).
+ *
+ * <p>The trace of the request being handled is bound to the current thread.
+ * Work moved to another thread takes it along through {@link #wrap(Runnable)}
+ * (executors) or {@link #traced} (futures, whose continuations run bound to
+ * the caller's trace). Code running outside any request gets no-op spans.
+ */
+public final class RequestTrace {
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+    private static final int MAX_DETAILS = 8;
+
+    private final String id;
+    private final String method;
+    private final String path;
+    private final boolean sampled;
+    private final int maxSpans;
+    private final long startNanos = System.nanoTime();
+    private final long startMillis = System.currentTimeMillis();
+
+    private final List<Span> spans = new ArrayList<>();
+    private final Map<String, Object> details = new LinkedHashMap<>();
+    private int droppedSpans;
+    private volatile boolean failed;
+
+    RequestTrace(String id, String method, String path, boolean sampled, int maxSpans) {
+        this.id = id;
+        this.method = method;
+        this.path = path;
+        this.sampled = sampled;
+        this.maxSpans = maxSpans;
+    }
+
+    /**
+     * The trace bound to this thread, or null outside a request.
+     */
+    public static RequestTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Starts a span in the current trace; end it with {@link Span#close()} (or
+     * {@link Span#end(Throwable)} when it finishes on another thread).
+     */
+    public static Span start(String name) {
+        RequestTrace trace = CURRENT.get();
+        return trace == null ? Span.NOOP : trace.startSpan(name);
+    }
+
+    /**
+     * Attaches a value to the current trace, rendered with {@code toString()}
+     * only if the trace is sampled or the request fails.
+     */
+    public static void detail(String name, Object value) {
+        RequestTrace trace = CURRENT.get();
+        if (trace != null) {
+            synchronized (trace) {
+                if (trace.details.size() < MAX_DETAILS) {
+                    trace.details.put(name, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the current request as failed even if its status does not show it,
+     * e.g. a stream that ended with an error event.
+     */
+    public static void markFailed() {
+        RequestTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.failed = true;
+        }
+    }
+
+    /**
+     * Binds {@code trace} to this thread until the scope is closed; a null trace
+     * unbinds.
+     */
+    public static Scope bind(RequestTrace trace) {
+        RequestTrace previous = CURRENT.get();
+        CURRENT.set(trace);
+        return new Scope(previous);
+    }
+
+    /**
+     * Returns a task that runs bound to the current trace. Usable as a Spring
+     * {@code TaskDecorator}.
+     */
+    public static Runnable wrap(Runnable task) {
+        RequestTrace trace = CURRENT.get();
+        if (trace == null) {
+            return task;
+        }
+        return () -> {
+            try (Scope scope = bind(trace)) {
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * Runs an asynchronous call as a span of the current trace. The returned
+     * future completes with the call's result while bound to the trace, so
+     * continuations that run on the completing thread are attributed to this
+     * request too.
+     */
+    public static <T> CompletableFuture<T> traced(String name, Supplier<CompletableFuture<T>> call) {
+        RequestTrace trace = CURRENT.get();
+        if (trace == null) {
+            return call.get();
+        }
+        Span span = trace.startSpan(name);
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            span.end(e);
+            throw e;
+        }
+        CompletableFuture<T> bound = new CompletableFuture<>();
+        future.whenComplete((value, error) -> {
+            span.end(error);
+            try (Scope scope = bind(trace)) {
+                if (error == null) {
+                    bound.complete(value);
+                } else {
+                    bound.completeExceptionally(error);
+                }
+            }
+        });
+        bound.whenComplete((value, error) -> {
+            if (bound.isCancelled()) {
+                future.cancel(false);
+            }
+        });
+        return bound;
+    }
+
+    public Span startSpan(String name) {
+        Span span = new Span(name, System.nanoTime());
+        synchronized (this) {
+            if (spans.size() >= maxSpans) {
+                droppedSpans++;
+                return Span.NOOP;
+            }
+            spans.add(span);
+        }
+        return span;
+    }
+
+    String id() {
+        return id;
+    }
+
+    boolean isSampled() {
+        return sampled;
+    }
+
+    boolean isFailed() {
+        return failed;
+    }
+
+    void fail() {
+        failed = true;
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Finished spans and the time so far, as a {@code Server-Timing} header value.
+     */
+    synchronized String serverTiming() {
+        StringBuilder header = new StringBuilder(32 * (spans.size() + 2));
+        for (Span span : spans) {
+            long end = span.endNanos;
+            if (end != 0) {
+                header.append(span.name).append(";dur=").append(millis(end - span.startNanos)).append(", ");
+            }
+        }
+        header.append("total;dur=").append(millis(elapsedNanos()));
+        header.append(", trace;desc=\"").append(id).append('"');
+        return header.toString();
+    }
+
+    /**
+     * The trace as a log record; details are included only when asked for and
+     * cut to {@code maxDetailChars} each.
+     */
+    synchronized Map<String, Object> toRecord(int status, boolean withDetails, int maxDetailChars) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("traceId", id);
+        record.put("start", startMillis);
+        record.put("method", method);
+        record.put("path", path);
+        record.put("status", status);
+        record.put("durationMs", millis(elapsedNanos()));
+        record.put("sampled", sampled);
+        record.put("failed", failed);
+
+        List<Map<String, Object>> spanRecords = new ArrayList<>(spans.size());
+        for (Span span : spans) {
+            Map<String, Object> spanRecord = new LinkedHashMap<>();
+            spanRecord.put("name", span.name);
+            spanRecord.put("startMs", millis(span.startNanos - startNanos));
+            long end = span.endNanos;
+            spanRecord.put("durationMs", end == 0 ? null : millis(end - span.startNanos));
+            if (span.error) {
+                spanRecord.put("error", true);
+            }
+            spanRecords.add(spanRecord);
+        }
+        record.put("spans", spanRecords);
+        if (droppedSpans > 0) {
+            record.put("droppedSpans", droppedSpans);
+        }
+        if (withDetails && !details.isEmpty()) {
+            Map<String, String> rendered = new LinkedHashMap<>();
+            details.forEach((name, value) -> {
+                String text = String.valueOf(value);
+                rendered.put(name, text.length() > maxDetailChars ? text.substring(0, maxDetailChars) + "..." : text);
+            });
+            record.put("details", rendered);
+        }
+        return record;
+    }
+
+    // Milliseconds with one decimal, without going through String.format
+    private static double millis(long nanos) {
+        return Math.round(nanos / 100_000.0) / 10.0;
+    }
+
+    /**
+     * One timed stage. Only the first end counts.
+     */
+    public static final class Span implements AutoCloseable {
+
+        static final Span NOOP = new Span("", 0);
+
+        private final String name;
+        private final long startNanos;
+        private volatile long endNanos;
+        private volatile boolean error;
+
+        private Span(String name, long startNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+
+        public void end(Throwable failure) {
+            if (this == NOOP || endNanos != 0) {
+                return;
+            }
+            error = failure != null;
+            endNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            end(null);
+        }
+    }
+
+    /**
+     * Restores the previously bound trace when closed.
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final RequestTrace previous;
+
+        private Scope(RequestTrace previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
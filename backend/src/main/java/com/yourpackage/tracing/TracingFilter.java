@@ -0,0 +1,190 @@
+package com.yourpackage.tracing;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yourpackage.config.TracingProperties;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.web.util.OnCommittedResponseWrapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Starts a {@link RequestTrace} for every request, ahead of the security
+ * filters so authentication is part of it, and keeps it bound to the request's
+ * threads. Stage durations are sent in a {@code Server-Timing} header when the
+ * response is committed (for SSE that is when the stream opens, so only the
+ * admission stages are in it).
+ *
+ * <p>When the request completes its trace is written as one JSON line to the
+ * {@code helpstudy.trace} logger if it was sampled, failed (5xx or marked
+ * failed) or slower than the slow threshold; details such as raw model
+ * responses are only rendered for sampled and failed requests. Logging goes
+ * through the asynchronous appender in {@code logback-spring.xml}.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class TracingFilter extends OncePerRequestFilter {
+
+    private static final Logger traceLogger = LoggerFactory.getLogger("helpstudy.trace");
+    private static final Logger logger = LoggerFactory.getLogger(TracingFilter.class);
+    private static final String TRACE_ATTRIBUTE = RequestTrace.class.getName();
+    private static final String SERVER_TIMING = "Server-Timing";
+
+    private final TracingProperties properties;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final LongAdder traced = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public TracingFilter(TracingProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // Scrapes and health checks would only add noise
+        return !properties.isEnabled() || request.getServletPath().startsWith("/actuator/");
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        // The async dispatch writes the response, so it needs the trace bound too
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        RequestTrace trace = (RequestTrace) request.getAttribute(TRACE_ATTRIBUTE);
+        boolean initial = trace == null;
+        if (initial) {
+            boolean sampled = ThreadLocalRandom.current().nextDouble() < properties.getSampleRate();
+            trace = new RequestTrace(HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextLong()),
+                    request.getMethod(), request.getRequestURI(), sampled, Math.max(1, properties.getMaxSpans()));
+            request.setAttribute(TRACE_ATTRIBUTE, trace);
+            traced.increment();
+            if (properties.isServerTiming()) {
+                response = new ServerTimingResponse(response, trace);
+            }
+        }
+
+        try (RequestTrace.Scope scope = RequestTrace.bind(trace)) {
+            filterChain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            trace.fail();
+            throw e;
+        } finally {
+            if (properties.isServerTiming() && !response.isCommitted()) {
+                response.setHeader(SERVER_TIMING, trace.serverTiming());
+            }
+            if (initial) {
+                if (request.isAsyncStarted()) {
+                    request.getAsyncContext().addListener(new CompletionListener(trace, response));
+                } else {
+                    finish(trace, response.getStatus());
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("sampleRate", properties.getSampleRate());
+        stats.put("slowThresholdMillis", properties.getSlowThreshold().toMillis());
+        stats.put("traced", traced.sum());
+        stats.put("written", written.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    private void finish(RequestTrace trace, int status) {
+        boolean failure = trace.isFailed() || status >= 500;
+        boolean slow = trace.elapsedNanos() >= properties.getSlowThreshold().toNanos();
+        if (failure) {
+            failed.increment();
+        }
+        if (!trace.isSampled() && !failure && !slow) {
+            return;
+        }
+        written.increment();
+        try {
+            String record = objectMapper.writeValueAsString(
+                    trace.toRecord(status, trace.isSampled() || failure, properties.getMaxDetailChars()));
+            if (failure) {
+                traceLogger.warn(record);
+            } else {
+                traceLogger.info(record);
+            }
+        } catch (JsonProcessingException e) {
+            logger.warn("Could not serialize trace {}", trace.id(), e);
+        }
+    }
+
+    /**
+     * Writes the trace once the async part of the request (a future or an SSE
+     * stream) has completed.
+     */
+    private final class CompletionListener implements AsyncListener {
+        private final RequestTrace trace;
+        private final HttpServletResponse response;
+
+        CompletionListener(RequestTrace trace, HttpServletResponse response) {
+            this.trace = trace;
+            this.response = response;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            finish(trace, response.getStatus());
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            trace.fail();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            trace.fail();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    /**
+     * Adds the Server-Timing header just before the response is committed.
+     */
+    private static final class ServerTimingResponse extends OnCommittedResponseWrapper {
+        private final RequestTrace trace;
+
+        ServerTimingResponse(HttpServletResponse response, RequestTrace trace) {
+            super(response);
+            this.trace = trace;
+        }
+
+        @Override
+        protected void onResponseCommitted() {
+            ((HttpServletResponse) getResponse()).setHeader(SERVER_TIMING, trace.serverTiming());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.yourpackage.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuestionTest {
+
+    private static final Question.Metadata METADATA = new Question.Metadata("gpt-4o-mini", "QUESTION", 1_700_000_000_000L);
+
+    @Test
+    void multipleChoiceRoundTrips() {
+        Question question = Question.multipleChoice("Which is prime?", List.of("4", "6", "7", "ünïcode ∑"), 2,
+                "primes", "Math", METADATA);
+
+        Question decoded = Question.decode(question.encode());
+        assertEquals(Question.MULTIPLE_CHOICE, decoded.getType());
+        assertEquals("Which is prime?", decoded.getStem());
+        assertEquals(question.getOptions(), decoded.getOptions());
+        assertEquals(2, decoded.getCorrectIndex());
+        assertEquals("primes", decoded.getTopic());
+        assertEquals("Math", decoded.getSubject());
+        assertEquals(METADATA, decoded.getMetadata());
+        assertEquals(question.toText(), decoded.toText());
+    }
+
+    @Test
+    void unstructuredRoundTripsWithMissingFieldsAsEmpty() {
+        Question question = Question.unstructured(Question.FREE_RESPONSE, "Explain osmosis.", null, "Biology", null);
+
+        Question decoded = Question.decode(question.encode());
+        assertEquals(Question.FREE_RESPONSE, decoded.getType());
+        assertEquals("Explain osmosis.", decoded.getStem());
+        assertTrue(decoded.getOptions().isEmpty());
+        assertNull(decoded.getCorrectIndex());
+        assertEquals("", decoded.getTopic());
+        assertEquals(new Question.Metadata("", "", 0), decoded.getMetadata());
+    }
+
+    @Test
+    void lengthsAtVarintBoundariesRoundTrip() {
+        for (int length : new int[] {0, 1, 127, 128, 16_383, 16_384, 2_097_152}) {
+            String stem = "x".repeat(length);
+            Question question = Question.unstructured(Question.FREE_RESPONSE, stem, "t", "s", METADATA);
+            byte[] encoded = question.encode();
+
+            int lengthBytes = length < 128 ? 1 : length < 16_384 ? 2 : length < 2_097_152 ? 3 : 4;
+            // Header, stem, and four one-byte-length strings: "t", "s", the model and the source
+            int expected = 12 + lengthBytes + length + 2 + 2 + 1 + METADATA.model().length() + 1 + METADATA.source().length();
+            assertEquals(expected, encoded.length, "stem of " + length);
+            assertEquals(stem, Question.decode(encoded).getStem());
+        }
+    }
+
+    @Test
+    void malformedPayloadsAreRejected() {
+        byte[] encoded = Question.unstructured(Question.FREE_RESPONSE, "stem", "t", "s", METADATA).encode();
+        int stemLength = 12;
+
+        // Truncated anywhere
+        for (int cut : new int[] {0, 5, stemLength, stemLength + 3, encoded.length - 1}) {
+            byte[] truncated = Arrays.copyOf(encoded, cut);
+            assertThrows(IllegalArgumentException.class, () -> Question.decode(truncated), "cut at " + cut);
+        }
+
+        // A length longer than what follows
+        byte[] overrun = encoded.clone();
+        overrun[stemLength] = 0x7F;
+        assertThrows(IllegalArgumentException.class, () -> Question.decode(overrun));
+
+        // A varint that never ends, and one that overflows an int
+        byte[] endless = Arrays.copyOf(encoded, encoded.length + 8);
+        Arrays.fill(endless, stemLength, endless.length, (byte) 0xFF);
+        assertThrows(IllegalArgumentException.class, () -> Question.decode(endless));
+        byte[] overflow = encoded.clone();
+        overflow[stemLength] = (byte) 0xFF;
+        overflow[stemLength + 1] = (byte) 0xFF;
+        overflow[stemLength + 2] = (byte) 0xFF;
+        overflow[stemLength + 3] = (byte) 0xFF;
+        overflow[stemLength + 4] = 0x0F;
+        assertThrows(IllegalArgumentException.class, () -> Question.decode(overflow));
+
+        byte[] unknownVersion = encoded.clone();
+        unknownVersion[0] = 2;
+        assertThrows(IllegalArgumentException.class, () -> Question.decode(unknownVersion));
+    }
+
+    @Test
+    void correctIndexMustNameAnOption() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Question.multipleChoice("Q", List.of("a", "b"), 2, "t", "s", METADATA));
+        assertThrows(IllegalArgumentException.class,
+                () -> Question.multipleChoice("Q", List.of("a", "b"), -1, "t", "s", METADATA));
+    }
+}
@@ -0,0 +1,137 @@
+package com.yourpackage.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalSegmentTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsRoundTrip() throws IOException {
+        List<JournalRecord> written = List.of(
+                JournalRecord.history("user-1", 7, 1_700_000_000_000L, true, "What is 2 + 2?"),
+                JournalRecord.historyEvicted("user-2"),
+                JournalRecord.topic("user-1", "Calculus", 3, 1_700_000_000_123L, "derivatives"),
+                JournalRecord.topicCleared("user-1", "Calculus"),
+                JournalRecord.topicsEvicted("ünïcode-user"));
+        Path path = directory.resolve("0-0.seg");
+        try (JournalSegment segment = JournalSegment.create(path, SEGMENT_SIZE)) {
+            for (JournalRecord record : written) {
+                assertTrue(segment.tryAppend(record.encode()));
+            }
+            segment.force();
+        }
+
+        List<JournalRecord> read = new ArrayList<>();
+        assertTrue(JournalSegment.replay(path, read::add));
+        assertEquals(written, read);
+    }
+
+    @Test
+    void tornRecordEndsReplay() throws IOException {
+        JournalRecord first = JournalRecord.topic("user-1", "Biology", 0, 1L, "cells");
+        JournalRecord second = JournalRecord.topic("user-1", "Biology", 1, 2L, "genetics");
+        Path path = directory.resolve("0-0.seg");
+        int secondAt;
+        try (JournalSegment segment = JournalSegment.create(path, SEGMENT_SIZE)) {
+            segment.tryAppend(first.encode());
+            secondAt = segment.position();
+            segment.tryAppend(second.encode());
+            segment.force();
+        }
+        // Lose the tail of the second record's payload, as after a crash mid-write
+        int secondLength = JournalSegment.HEADER_BYTES + second.encode().length;
+        overwrite(path, secondAt + secondLength - 4, new byte[4]);
+
+        List<JournalRecord> read = new ArrayList<>();
+        assertFalse(JournalSegment.replay(path, read::add));
+        assertEquals(List.of(first), read);
+    }
+
+    @Test
+    void recordTruncatedByEndOfFileEndsReplay() throws IOException {
+        JournalRecord record = JournalRecord.topic("user-1", "Biology", 0, 1L, "cells");
+        Path path = directory.resolve("0-0.seg");
+        try (JournalSegment segment = JournalSegment.create(path, SEGMENT_SIZE)) {
+            segment.tryAppend(record.encode());
+            segment.force();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(JournalSegment.HEADER_BYTES + 10);
+        }
+
+        List<JournalRecord> read = new ArrayList<>();
+        assertFalse(JournalSegment.replay(path, read::add));
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    void unknownRecordTypeIsSkipped() throws IOException {
+        JournalRecord before = JournalRecord.topicCleared("user-1", "Physics");
+        JournalRecord after = JournalRecord.topicsEvicted("user-2");
+        byte[] unknown = JournalRecord.topicCleared("user-1", "Chemistry").encode();
+        unknown[0] = (byte) JournalRecord.Type.values().length;
+
+        Path path = directory.resolve("0-0.seg");
+        try (JournalSegment segment = JournalSegment.create(path, SEGMENT_SIZE)) {
+            segment.tryAppend(before.encode());
+            segment.tryAppend(unknown);
+            segment.tryAppend(after.encode());
+            segment.force();
+        }
+
+        List<JournalRecord> read = new ArrayList<>();
+        assertTrue(JournalSegment.replay(path, read::add));
+        assertEquals(List.of(before, after), read);
+    }
+
+    @Test
+    void closedSegmentIsUnmappedAndIgnoresLateFlushes() throws IOException {
+        JournalRecord record = JournalRecord.topicCleared("user-1", "Physics");
+        Path path = directory.resolve("0-0.seg");
+        JournalSegment segment = JournalSegment.create(path, SEGMENT_SIZE);
+        segment.tryAppend(record.encode());
+        segment.close();
+        // As when the flusher picked the segment just before a roll retired it
+        segment.force();
+        segment.close();
+
+        List<JournalRecord> read = new ArrayList<>();
+        assertTrue(JournalSegment.replay(path, read::add));
+        assertEquals(List.of(record), read);
+        Files.delete(path);
+        try (JournalSegment replacement = JournalSegment.create(path, SEGMENT_SIZE)) {
+            assertEquals(0, replacement.position());
+        }
+    }
+
+    @Test
+    void malformedPayloadDecodesToNull() {
+        byte[] payload = JournalRecord.topic("user-1", "Biology", 0, 1L, "cells").encode();
+        // Claims a longer user id than there are bytes left
+        ByteBuffer.wrap(payload).putInt(1 + 8 + 8 + 1, Integer.MAX_VALUE);
+        assertNull(JournalRecord.decode(ByteBuffer.wrap(payload)));
+        assertNull(JournalRecord.decode(ByteBuffer.wrap(new byte[] {0, 1, 2})));
+    }
+
+    private static void overwrite(Path path, int position, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+}
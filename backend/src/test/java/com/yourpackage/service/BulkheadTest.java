@@ -0,0 +1,158 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.LoadSheddingProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadTest {
+
+    private static final OperationClass OPERATION = OperationClass.EVALUATION;
+
+    @Test
+    void cancelledQueuedOperationIsNeverStarted() {
+        Bulkhead bulkhead = new Bulkhead(OPERATION, fixed(1));
+        CompletableFuture<String> running = new CompletableFuture<>();
+        bulkhead.submit(() -> running);
+
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<String> queued = bulkhead.submit(() -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture("late");
+        });
+        assertEquals(1, bulkhead.queued());
+
+        queued.cancel(false);
+        assertEquals(0, bulkhead.queued());
+        running.complete("done");
+        assertEquals(0, started.get());
+        assertEquals(0, bulkhead.inFlight());
+    }
+
+    @Test
+    void cancellingAStartedOperationCancelsItAndHoldsTheSlotUntilItStops() {
+        Bulkhead bulkhead = new Bulkhead(OPERATION, fixed(1));
+        StoppingFuture<String> call = new StoppingFuture<>();
+        CompletableFuture<String> result = bulkhead.submit(() -> call);
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<String> next = bulkhead.submit(() -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture("next");
+        });
+
+        result.cancel(false);
+        assertTrue(call.cancelRequested);
+        assertEquals(1, bulkhead.inFlight());
+        assertEquals(0, started.get());
+
+        call.completeExceptionally(new IllegalStateException("stopped"));
+        assertEquals(1, started.get());
+        assertEquals("next", next.join());
+        assertEquals(0, bulkhead.inFlight());
+        // A cancelled operation's latency is not fed into the limit
+        assertEquals(1L, bulkhead.stats().get("completed"));
+    }
+
+    @Test
+    void fullQueueIsRefused() {
+        LoadSheddingProperties.Limits limits = fixed(1);
+        limits.setMaxQueued(1);
+        Bulkhead bulkhead = new Bulkhead(OPERATION, limits);
+        bulkhead.submit(CompletableFuture::new);
+        bulkhead.submit(CompletableFuture::new);
+
+        CompletableFuture<Object> refused = bulkhead.submit(CompletableFuture::new);
+        ExecutionException error = assertThrows(ExecutionException.class, refused::get);
+        assertInstanceOf(OverloadedException.class, error.getCause());
+        assertEquals(1, bulkhead.rejectedFull());
+    }
+
+    @Test
+    void queuedOperationExpires() {
+        LoadSheddingProperties.Limits limits = fixed(1);
+        limits.setMaxQueueWait(Duration.ofMillis(20));
+        Bulkhead bulkhead = new Bulkhead(OPERATION, limits);
+        bulkhead.submit(CompletableFuture::new);
+
+        CompletableFuture<Object> queued = bulkhead.submit(CompletableFuture::new);
+        ExecutionException error = assertThrows(ExecutionException.class, () -> queued.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(OverloadedException.class, error.getCause());
+        assertEquals(1, bulkhead.expired());
+        assertEquals(0, bulkhead.queued());
+    }
+
+    @Test
+    void limitGrowsOnlyWhileHalfUsed() {
+        LoadSheddingProperties.Limits limits = adaptive(2);
+        Bulkhead bulkhead = new Bulkhead(OPERATION, limits);
+        for (int i = 0; i < 50; i++) {
+            bulkhead.submit(() -> CompletableFuture.completedFuture("fast")).join();
+        }
+        // One at a time: 2 -> 2.5 -> 2.9 -> 3.24, after which one in flight is under half of 3
+        assertEquals(3, bulkhead.limit());
+    }
+
+    @Test
+    void overloadSignalShrinksTheLimitAtMostOncePerInterval() {
+        LoadSheddingProperties.Limits limits = adaptive(10);
+        limits.setBackoffRatio(0.5);
+        Bulkhead bulkhead = new Bulkhead(OPERATION, limits);
+
+        bulkhead.submit(() -> CompletableFuture.failedFuture(new UpstreamUnavailableException(CallSite.EVALUATION, 1)));
+        assertEquals(5, bulkhead.limit());
+        bulkhead.submit(() -> CompletableFuture.failedFuture(new UpstreamUnavailableException(CallSite.EVALUATION, 1)));
+        assertEquals(5, bulkhead.limit());
+        assertEquals(2L, bulkhead.stats().get("slow"));
+    }
+
+    @Test
+    void limitStaysWithinBounds() {
+        LoadSheddingProperties.Limits limits = adaptive(4);
+        limits.setMinLimit(3);
+        limits.setBackoffRatio(0.1);
+        Bulkhead bulkhead = new Bulkhead(OPERATION, limits);
+        bulkhead.submit(() -> CompletableFuture.failedFuture(new UpstreamUnavailableException(CallSite.EVALUATION, 1)));
+        assertEquals(3, bulkhead.limit());
+
+        bulkhead.setLimit(1000);
+        assertEquals(limits.getMaxLimit(), bulkhead.limit());
+    }
+
+    private static LoadSheddingProperties.Limits fixed(int limit) {
+        LoadSheddingProperties.Limits limits = new LoadSheddingProperties.Limits();
+        limits.setInitialLimit(limit);
+        limits.setMinLimit(1);
+        limits.setMaxLimit(limit);
+        limits.setAdaptive(false);
+        return limits;
+    }
+
+    private static LoadSheddingProperties.Limits adaptive(int initialLimit) {
+        LoadSheddingProperties.Limits limits = new LoadSheddingProperties.Limits();
+        limits.setInitialLimit(initialLimit);
+        limits.setMinLimit(1);
+        limits.setMaxLimit(16);
+        limits.setAdaptive(true);
+        limits.setLatencyThreshold(Duration.ofSeconds(10));
+        return limits;
+    }
+
+    /**
+     * Like an HTTP call: cancelling asks it to stop, and it completes once it has.
+     */
+    private static final class StoppingFuture<T> extends CompletableFuture<T> {
+        volatile boolean cancelRequested;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelRequested = true;
+            return true;
+        }
+    }
+}
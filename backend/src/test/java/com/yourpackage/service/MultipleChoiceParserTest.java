@@ -0,0 +1,97 @@
+package com.yourpackage.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipleChoiceParserTest {
+
+    @Test
+    void parsesStemOptionsAndMarkedAnswer() {
+        MultipleChoiceParser.Parsed parsed = MultipleChoiceParser.parse("""
+                What is 2 + 2?
+                A) 3
+                B) 4***
+                C) 5
+                D) 22
+                """);
+
+        assertNotNull(parsed);
+        assertEquals("What is 2 + 2?", parsed.stem());
+        assertArrayEquals(new String[] {"3", "4", "5", "22"}, parsed.options());
+        assertEquals(1, parsed.correctIndex());
+    }
+
+    @Test
+    void acceptsEveryOptionPrefixStyle() {
+        String[] marked = {"B***) beta", "C*** . gamma", "D) *** delta", "A. alpha***"};
+        String[] plain = {"B) beta", "C. gamma", "D) delta", "A. alpha"};
+        for (int i = 0; i < marked.length; i++) {
+            StringBuilder text = new StringBuilder("Pick one.\n");
+            for (int j = 0; j < plain.length; j++) {
+                text.append(i == j ? marked[j] : plain[j]).append('\n');
+            }
+            MultipleChoiceParser.Parsed parsed = MultipleChoiceParser.parse(text.toString());
+
+            assertNotNull(parsed, marked[i]);
+            assertArrayEquals(new String[] {"beta", "gamma", "delta", "alpha"}, parsed.options());
+            assertEquals(i, parsed.correctIndex());
+        }
+    }
+
+    @Test
+    void stemKeepsInnerIndentationButNotItsOuterWhitespace() {
+        MultipleChoiceParser.Parsed parsed = MultipleChoiceParser.parse(
+                "\n   Evaluate:   \n      x = 1\n\nA) 1***\nB) 2\nC) 3\nD) 4\n\n");
+
+        assertNotNull(parsed);
+        assertEquals("Evaluate:\n      x = 1", parsed.stem());
+    }
+
+    @Test
+    void linesThatOnlyStartWithALetterStayInTheStem() {
+        MultipleChoiceParser.Parsed parsed = MultipleChoiceParser.parse("""
+                A train leaves at noon.
+                E) is not an option
+                A) 1 pm
+                B) 2 pm***
+                C) 3 pm
+                D) 4 pm
+                """);
+
+        assertNotNull(parsed);
+        assertEquals("A train leaves at noon.\nE) is not an option", parsed.stem());
+        assertEquals(1, parsed.correctIndex());
+    }
+
+    @Test
+    void rejectsMalformedQuestions() {
+        // Missing option
+        assertNull(MultipleChoiceParser.parse("Q\nA) 1***\nB) 2\nC) 3"));
+        // Fifth option
+        assertNull(MultipleChoiceParser.parse("Q\nA) 1***\nB) 2\nC) 3\nD) 4\nA) 5"));
+        // Duplicate letter
+        assertNull(MultipleChoiceParser.parse("Q\nA) 1***\nB) 2\nB) 3\nD) 4"));
+        // No marked answer
+        assertNull(MultipleChoiceParser.parse("Q\nA) 1\nB) 2\nC) 3\nD) 4"));
+        // Two marked answers
+        assertNull(MultipleChoiceParser.parse("Q\nA) 1***\nB) 2***\nC) 3\nD) 4"));
+        assertNull(MultipleChoiceParser.parse(""));
+    }
+
+    @Test
+    void shuffleKeepsTheCorrectOptionMarked() {
+        MultipleChoiceParser.Parsed parsed = MultipleChoiceParser.parse("Q\nA) one\nB) two\nC) three***\nD) four");
+        Set<String> seenFirst = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            MultipleChoiceParser.Parsed shuffled = parsed.shuffled();
+            assertEquals("three", shuffled.options()[shuffled.correctIndex()]);
+            assertEquals(Set.of("one", "two", "three", "four"), Set.of(shuffled.options()));
+            seenFirst.add(shuffled.options()[0]);
+        }
+        assertEquals(4, seenFirst.size());
+    }
+}
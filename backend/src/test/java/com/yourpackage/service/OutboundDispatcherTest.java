@@ -0,0 +1,155 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.OutboundProperties;
+import com.yourpackage.service.OutboundDispatcher.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundDispatcherTest {
+
+    private static final CallSite SITE = CallSite.QUESTION;
+
+    @Test
+    void interactiveRequestsGoAheadOfBackgroundOnesInArrivalOrder() {
+        OutboundDispatcher dispatcher = dispatcher(new OutboundProperties());
+        CompletableFuture<String> running = new CompletableFuture<>();
+        dispatcher.completion(SITE, Priority.INTERACTIVE, () -> running);
+
+        List<String> started = new CopyOnWriteArrayList<>();
+        dispatcher.completion(SITE, Priority.BACKGROUND, record(started, "refill"));
+        dispatcher.completion(SITE, Priority.INTERACTIVE, record(started, "first"));
+        dispatcher.completion(SITE, Priority.INTERACTIVE, record(started, "second"));
+        assertTrue(dispatcher.isSaturated());
+        assertTrue(started.isEmpty());
+
+        running.complete("done");
+        assertEquals(List.of("first", "second", "refill"), started);
+        assertFalse(dispatcher.isSaturated());
+        assertEquals(0, dispatcher.stats().get("inFlight"));
+    }
+
+    @Test
+    void fullQueueIsRefusedPerPriority() {
+        OutboundProperties properties = new OutboundProperties();
+        properties.setMaxBackgroundQueued(1);
+        OutboundDispatcher dispatcher = dispatcher(properties);
+        dispatcher.completion(SITE, Priority.INTERACTIVE, CompletableFuture::new);
+        dispatcher.completion(SITE, Priority.BACKGROUND, CompletableFuture::new);
+
+        CompletableFuture<Object> refused = dispatcher.completion(SITE, Priority.BACKGROUND, CompletableFuture::new);
+        ExecutionException error = assertThrows(ExecutionException.class, refused::get);
+        UpstreamUnavailableException unavailable = assertInstanceOf(UpstreamUnavailableException.class, error.getCause());
+        assertTrue(unavailable.getRetryAfterSeconds() >= 1);
+        assertFalse(dispatcher.completion(SITE, Priority.INTERACTIVE, CompletableFuture::new).isDone());
+        assertEquals(1L, priorityStats(dispatcher, "background").get("rejectedFull"));
+    }
+
+    @Test
+    void requestThatWaitedTooLongExpiresInsteadOfBeingSent() throws InterruptedException {
+        OutboundProperties properties = new OutboundProperties();
+        properties.setMaxQueueWait(Duration.ofMillis(20));
+        OutboundDispatcher dispatcher = dispatcher(properties);
+        CompletableFuture<String> running = new CompletableFuture<>();
+        dispatcher.completion(SITE, Priority.INTERACTIVE, () -> running);
+
+        List<String> started = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> stale = dispatcher.completion(SITE, Priority.INTERACTIVE, record(started, "stale"));
+        Thread.sleep(50);
+        CompletableFuture<String> fresh = dispatcher.completion(SITE, Priority.BACKGROUND, record(started, "fresh"));
+        running.complete("done");
+
+        ExecutionException error = assertThrows(ExecutionException.class, stale::get);
+        assertInstanceOf(UpstreamUnavailableException.class, error.getCause());
+        assertEquals("fresh", fresh.join());
+        assertEquals(List.of("fresh"), started);
+        assertEquals(1L, priorityStats(dispatcher, "interactive").get("expired"));
+    }
+
+    @Test
+    void cancelledQueuedRequestIsWithdrawnAndNeverSent() {
+        OutboundDispatcher dispatcher = dispatcher(new OutboundProperties());
+        CompletableFuture<String> running = new CompletableFuture<>();
+        dispatcher.completion(SITE, Priority.INTERACTIVE, () -> running);
+        List<String> started = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> queued = dispatcher.completion(SITE, Priority.INTERACTIVE, record(started, "lost"));
+
+        queued.cancel(false);
+        assertFalse(dispatcher.isSaturated());
+        running.complete("done");
+        assertTrue(started.isEmpty());
+        assertEquals(0, dispatcher.stats().get("inFlight"));
+    }
+
+    @Test
+    void cancellingASentRequestCancelsTheCallAndHoldsTheSlotUntilItStops() {
+        OutboundDispatcher dispatcher = dispatcher(new OutboundProperties());
+        StoppingFuture<String> call = new StoppingFuture<>();
+        CompletableFuture<String> sent = dispatcher.completion(SITE, Priority.INTERACTIVE, () -> call);
+        List<String> started = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> next = dispatcher.completion(SITE, Priority.INTERACTIVE, record(started, "next"));
+
+        sent.cancel(false);
+        assertTrue(call.cancelRequested);
+        assertTrue(started.isEmpty());
+
+        call.completeExceptionally(new IllegalStateException("stopped"));
+        assertEquals("next", next.join());
+        assertEquals(0, dispatcher.stats().get("inFlight"));
+    }
+
+    @Test
+    void streamHoldsItsSlotUntilClosed() {
+        OutboundDispatcher dispatcher = dispatcher(new OutboundProperties());
+        Stream<String> stream = dispatcher.stream(SITE, Priority.INTERACTIVE,
+                () -> CompletableFuture.completedFuture(Stream.of("a", "b"))).join();
+        List<String> started = new CopyOnWriteArrayList<>();
+        dispatcher.completion(SITE, Priority.INTERACTIVE, record(started, "next"));
+        assertEquals(1, dispatcher.stats().get("inFlight"));
+
+        stream.close();
+        assertEquals(List.of("next"), started);
+        assertEquals(0, dispatcher.stats().get("inFlight"));
+    }
+
+    private static OutboundDispatcher dispatcher(OutboundProperties properties) {
+        properties.setMaxInFlight(1);
+        return new OutboundDispatcher(properties, new SimpleMeterRegistry());
+    }
+
+    private static Supplier<CompletableFuture<String>> record(List<String> started, String name) {
+        return () -> {
+            started.add(name);
+            return CompletableFuture.completedFuture(name);
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> priorityStats(OutboundDispatcher dispatcher, String priority) {
+        Map<String, Object> priorities = (Map<String, Object>) dispatcher.stats().get("priorities");
+        return (Map<String, Object>) priorities.get(priority);
+    }
+
+    /**
+     * Like an HTTP call: cancelling asks it to stop, and it completes once it has.
+     */
+    private static final class StoppingFuture<T> extends CompletableFuture<T> {
+        volatile boolean cancelRequested;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelRequested = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.JournalProperties;
+import com.yourpackage.config.TopicMemoryProperties;
+import com.yourpackage.persistence.HistoryJournal;
+import com.yourpackage.persistence.JournalRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PromptMemoryServiceTest {
+
+    private static final String USER = "user-1";
+    private static final String SUBJECT = "Biology";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void compactedTopicsReplayOnceWithTheirOriginalTimes() throws IOException {
+        TopicMemoryProperties properties = new TopicMemoryProperties();
+        long twoHalfLivesAgo = System.currentTimeMillis() - 2 * properties.getCoverageHalfLife().toMillis();
+
+        HistoryJournal seed = journal();
+        seed.afterSingletonsInstantiated();
+        seed.append(JournalRecord.topic(USER, SUBJECT, 0, twoHalfLivesAgo, "cells"));
+        seed.close();
+
+        HistoryJournal journal = journal();
+        PromptMemoryService memory = new PromptMemoryService(properties, journal);
+        // Runs between the compaction's cut and the memory's snapshot, so the topic lands in both
+        journal.register(EnumSet.noneOf(JournalRecord.Type.class), record -> { },
+                sink -> memory.recordTopic(USER, SUBJECT, "evolution"));
+        memory.registerWithJournal();
+        journal.afterSingletonsInstantiated();
+        memory.recordTopic(USER, SUBJECT, "genetics");
+        journal.compact();
+        journal.close();
+
+        HistoryJournal restarted = journal();
+        PromptMemoryService replayed = new PromptMemoryService(properties, restarted);
+        replayed.registerWithJournal();
+        restarted.afterSingletonsInstantiated();
+        try {
+            assertEquals(List.of("cells", "genetics", "evolution"), replayed.getRecentTopics(USER, SUBJECT));
+            Map<String, Double> coverage = replayed.getCoverage(SUBJECT);
+            assertEquals(0.25, coverage.get("cells"), 0.01);
+            assertEquals(1.0, coverage.get("genetics"), 0.01);
+            assertEquals(1.0, coverage.get("evolution"), 0.01);
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test
+    void batchOfTopicsIsJournaledInOrder() {
+        TopicMemoryProperties properties = new TopicMemoryProperties();
+        HistoryJournal journal = journal();
+        PromptMemoryService memory = new PromptMemoryService(properties, journal);
+        memory.registerWithJournal();
+        journal.afterSingletonsInstantiated();
+        memory.recordTopic(USER, SUBJECT, "cells");
+        memory.recordTopics(USER, SUBJECT, List.of("genetics", "evolution", "ecology"));
+        assertEquals(4L, journal.stats().get("appends"));
+        journal.close();
+
+        HistoryJournal restarted = journal();
+        PromptMemoryService replayed = new PromptMemoryService(properties, restarted);
+        replayed.registerWithJournal();
+        restarted.afterSingletonsInstantiated();
+        try {
+            assertEquals(List.of("cells", "genetics", "evolution", "ecology"),
+                    replayed.getRecentTopics(USER, SUBJECT));
+        } finally {
+            restarted.close();
+        }
+    }
+
+    private HistoryJournal journal() {
+        JournalProperties properties = new JournalProperties();
+        properties.setDirectory(directory.toString());
+        properties.setSegmentSize(64 * 1024);
+        properties.setCompactionMinSegments(1);
+        properties.setCompactionInterval(Duration.ofHours(1));
+        return new HistoryJournal(properties);
+    }
+}
@@ -0,0 +1,90 @@
+package com.yourpackage.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitingServiceTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+    // 60 per hour: one request's worth of the bucket refills every minute
+    private static final long INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    void burstsUpToTheHourlyLimitThenWaitsOneInterval() {
+        RateLimitingService.Limiter limiter = new RateLimitingService.Limiter(60);
+        for (int i = 0; i < 60; i++) {
+            assertTrue(limiter.acquire("user", 1, 0).allowed());
+        }
+
+        RateLimitingService.Decision rejected = limiter.acquire("user", 1, 0);
+        assertFalse(rejected.allowed());
+        assertEquals(INTERVAL, rejected.retryAfterNanos());
+        assertEquals(60, rejected.retryAfterSeconds());
+        assertEquals(60L, limiter.stats().get("allowed"));
+        assertEquals(1L, limiter.stats().get("rejected"));
+    }
+
+    @Test
+    void windowSlidesOneRequestPerInterval() {
+        RateLimitingService.Limiter limiter = new RateLimitingService.Limiter(60);
+        assertTrue(limiter.acquire("user", 60, 0).allowed());
+
+        long now = INTERVAL - 1;
+        assertEquals(1, limiter.acquire("user", 1, now).retryAfterNanos());
+        now = INTERVAL;
+        assertTrue(limiter.acquire("user", 1, now).allowed());
+        assertFalse(limiter.acquire("user", 1, now).allowed());
+
+        // Half an hour later half the bucket has refilled, and no more
+        now += HOUR / 2;
+        assertTrue(limiter.acquire("user", 30, now).allowed());
+        assertFalse(limiter.acquire("user", 1, now).allowed());
+    }
+
+    @Test
+    void rejectedRequestIsNotCharged() {
+        RateLimitingService.Limiter limiter = new RateLimitingService.Limiter(60);
+        assertTrue(limiter.acquire("user", 50, 0).allowed());
+
+        RateLimitingService.Decision batch = limiter.acquire("user", 20, 0);
+        assertFalse(batch.allowed());
+        assertEquals(10 * INTERVAL, batch.retryAfterNanos());
+        assertTrue(limiter.acquire("user", 10, 0).allowed());
+    }
+
+    @Test
+    void usersHaveSeparateBuckets() {
+        RateLimitingService.Limiter limiter = new RateLimitingService.Limiter(10);
+        assertTrue(limiter.acquire("a", 10, 0).allowed());
+        assertFalse(limiter.acquire("a", 1, 0).allowed());
+        assertTrue(limiter.acquire("b", 10, 0).allowed());
+    }
+
+    @Test
+    void onlyRefilledBucketsAreEvicted() {
+        RateLimitingService.Limiter limiter = new RateLimitingService.Limiter(60);
+        limiter.acquire("idle", 1, 0);
+        limiter.acquire("busy", 60, 0);
+
+        limiter.evictIdle(INTERVAL);
+        assertEquals(1, limiter.stats().get("trackedUsers"));
+
+        // An evicted user starts over with a full bucket
+        assertTrue(limiter.acquire("idle", 60, INTERVAL).allowed());
+        limiter.evictIdle(HOUR);
+        assertEquals(1, limiter.stats().get("trackedUsers"));
+        limiter.evictIdle(2 * HOUR);
+        assertEquals(0, limiter.stats().get("trackedUsers"));
+    }
+
+    @Test
+    void retryAfterRoundsUpToWholeSeconds() {
+        assertEquals(1, new RateLimitingService.Decision(false, 1).retryAfterSeconds());
+        assertEquals(1, new RateLimitingService.Decision(false, TimeUnit.SECONDS.toNanos(1)).retryAfterSeconds());
+        assertEquals(2, new RateLimitingService.Decision(false, TimeUnit.SECONDS.toNanos(1) + 1).retryAfterSeconds());
+        assertEquals(0, new RateLimitingService.Decision(true, 0).retryAfterSeconds());
+    }
+}
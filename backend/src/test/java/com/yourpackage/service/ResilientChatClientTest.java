@@ -0,0 +1,281 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.OutboundProperties;
+import com.yourpackage.config.ResilienceProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientChatClientTest {
+
+    private static final CallSite SITE = CallSite.QUESTION;
+
+    @Test
+    void classifiesRetryableFailures() {
+        assertTrue(ResilientChatClient.isRetryable(new IOException("connection reset")));
+        assertTrue(ResilientChatClient.isRetryable(new TimeoutException()));
+        assertTrue(ResilientChatClient.isRetryable(new RuntimeException("Error: statusCode=429, body=slow down")));
+        assertTrue(ResilientChatClient.isRetryable(new RuntimeException("HTTP 503 Service Unavailable")));
+        assertTrue(ResilientChatClient.isRetryable(new RuntimeException("Response with status code 500")));
+        assertTrue(ResilientChatClient.isRetryable(
+                new RuntimeException("request failed", new IOException("stream was reset"))));
+
+        assertFalse(ResilientChatClient.isRetryable(new RuntimeException("Error: statusCode=400, body=bad")));
+        assertFalse(ResilientChatClient.isRetryable(new RuntimeException("statusCode=401")));
+        assertFalse(ResilientChatClient.isRetryable(new IllegalArgumentException("Unexpected token in JSON")));
+        assertFalse(ResilientChatClient.isRetryable(new RuntimeException((String) null)));
+    }
+
+    @Test
+    void unwrapsCompletionWrappers() {
+        IOException cause = new IOException("reset");
+        assertSame(cause, ResilientChatClient.unwrap(new CompletionException(new ExecutionException(cause))));
+    }
+
+    @Test
+    void retriesRetryableFailuresOnly() throws Exception {
+        ResilienceProperties.Policy policy = policy();
+        policy.setMaxAttempts(3);
+        policy.setMinimumCalls(100);
+        ResilientChatClient client = client(policy);
+
+        Calls<String> flaky = new Calls<>(
+                CompletableFuture.failedFuture(new RuntimeException("statusCode=503")),
+                CompletableFuture.failedFuture(new IOException("reset")),
+                CompletableFuture.completedFuture("answer"));
+        assertEquals("answer", client.execute(SITE, flaky, false).get(1, TimeUnit.SECONDS));
+        assertEquals(3, flaky.made.size());
+
+        Calls<String> rejected = new Calls<>(
+                CompletableFuture.failedFuture(new RuntimeException("statusCode=400")),
+                CompletableFuture.completedFuture("never"));
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> client.execute(SITE, rejected, false).get(1, TimeUnit.SECONDS));
+        assertEquals("statusCode=400", error.getCause().getMessage());
+        assertEquals(1, rejected.made.size());
+    }
+
+    @Test
+    void breakerOpensAndClosesAfterProbes() {
+        ResilienceProperties.Policy policy = policy();
+        policy.setHalfOpenProbes(2);
+        ResilientChatClient.CircuitBreaker breaker = new ResilientChatClient.CircuitBreaker(policy);
+        long openNanos = policy.getOpenDuration().toNanos();
+
+        breaker.onFailure(0);
+        assertEquals(ResilientChatClient.CircuitBreaker.State.CLOSED, breaker.state());
+        breaker.onFailure(0);
+        assertEquals(ResilientChatClient.CircuitBreaker.State.OPEN, breaker.state());
+        assertNull(breaker.tryAcquire(openNanos - 1));
+
+        ResilientChatClient.CircuitBreaker.Permit first = breaker.tryAcquire(openNanos);
+        ResilientChatClient.CircuitBreaker.Permit second = breaker.tryAcquire(openNanos);
+        assertEquals(ResilientChatClient.CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(breaker.tryAcquire(openNanos));
+
+        breaker.onSuccess();
+        assertEquals(ResilientChatClient.CircuitBreaker.State.HALF_OPEN, breaker.state());
+        breaker.onSuccess();
+        assertEquals(ResilientChatClient.CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void releasedProbeFromAnEarlierHalfOpenPeriodIsIgnored() {
+        ResilienceProperties.Policy policy = policy();
+        ResilientChatClient.CircuitBreaker breaker = new ResilientChatClient.CircuitBreaker(policy);
+        long openNanos = policy.getOpenDuration().toNanos();
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+
+        ResilientChatClient.CircuitBreaker.Permit stale = breaker.tryAcquire(openNanos);
+        breaker.onFailure(openNanos);
+        assertNotNull(breaker.tryAcquire(2 * openNanos));
+        breaker.release(stale);
+        assertNull(breaker.tryAcquire(2 * openNanos));
+    }
+
+    @Test
+    void cancelledProbeDoesNotWedgeTheBreaker() throws Exception {
+        ResilienceProperties.Policy policy = policy();
+        ResilientChatClient client = client(policy);
+        trip(client);
+        assertFalse(client.isAvailable(SITE));
+
+        Thread.sleep(policy.getOpenDuration().toMillis() + 20);
+        CompletableFuture<String> hanging = new CompletableFuture<>();
+        CompletableFuture<String> probe = client.execute(SITE, () -> hanging, false);
+        assertEquals("HALF_OPEN", circuit(client));
+        // The client went away while the probe was in flight
+        probe.cancel(false);
+        assertTrue(hanging.isCancelled());
+
+        CompletableFuture<String> next = client.execute(SITE, () -> CompletableFuture.completedFuture("ok"), false);
+        assertEquals("ok", next.get(1, TimeUnit.SECONDS));
+        assertEquals("CLOSED", circuit(client));
+    }
+
+    @Test
+    void probePastItsDeadlineReopensTheBreaker() throws Exception {
+        ResilienceProperties.Policy policy = policy();
+        policy.setDeadline(Duration.ofMillis(100));
+        ResilientChatClient client = client(policy);
+        trip(client);
+
+        Thread.sleep(policy.getOpenDuration().toMillis() + 20);
+        CompletableFuture<String> hanging = new CompletableFuture<>();
+        CompletableFuture<String> probe = client.execute(SITE, () -> hanging, false);
+        ExecutionException error = assertThrows(ExecutionException.class, () -> probe.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, error.getCause());
+        assertTrue(hanging.isCancelled());
+        assertEquals("OPEN", circuit(client));
+
+        Thread.sleep(policy.getOpenDuration().toMillis() + 20);
+        CompletableFuture<String> next = client.execute(SITE, () -> CompletableFuture.completedFuture("ok"), false);
+        assertEquals("ok", next.get(1, TimeUnit.SECONDS));
+        assertEquals("CLOSED", circuit(client));
+    }
+
+    @Test
+    void slowPrimaryIsHedgedAndCancelled() throws Exception {
+        ResilientChatClient client = client(hedgingPolicy());
+        warmLatencies(client);
+
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        Calls<String> calls = new Calls<>(primary, CompletableFuture.completedFuture("hedge"));
+        assertEquals("hedge", client.execute(SITE, calls, true).get(1, TimeUnit.SECONDS));
+        assertEquals(2, calls.made.size());
+        await(primary::isCancelled);
+        assertEquals(1L, siteStats(client).get("hedgeWins"));
+    }
+
+    @Test
+    void hedgeFailureWaitsForTheOtherCopy() throws Exception {
+        ResilientChatClient client = client(hedgingPolicy());
+        warmLatencies(client);
+
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+        Calls<String> calls = new Calls<>(primary, hedge);
+        CompletableFuture<String> result = client.execute(SITE, calls, true);
+        await(() -> calls.made.size() == 2);
+
+        primary.completeExceptionally(new RuntimeException("statusCode=500"));
+        assertFalse(result.isDone());
+        hedge.complete("hedge");
+        assertEquals("hedge", result.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void hedgeFailsOnlyWhenBothCopiesFail() throws Exception {
+        ResilientChatClient client = client(hedgingPolicy());
+        warmLatencies(client);
+
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<String> hedge = new CompletableFuture<>();
+        Calls<String> calls = new Calls<>(primary, hedge);
+        CompletableFuture<String> result = client.execute(SITE, calls, true);
+        await(() -> calls.made.size() == 2);
+
+        hedge.completeExceptionally(new RuntimeException("statusCode=502"));
+        assertFalse(result.isDone());
+        primary.completeExceptionally(new RuntimeException("statusCode=500"));
+        ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(1, TimeUnit.SECONDS));
+        assertEquals("statusCode=500", error.getCause().getMessage());
+    }
+
+    private static ResilienceProperties.Policy policy() {
+        ResilienceProperties.Policy policy = new ResilienceProperties.Policy();
+        policy.setMaxAttempts(1);
+        policy.setInitialBackoff(Duration.ofMillis(1));
+        policy.setMaxBackoff(Duration.ofMillis(5));
+        policy.setMinimumCalls(2);
+        policy.setSlidingWindowSize(2);
+        policy.setFailureRateThreshold(0.5);
+        policy.setOpenDuration(Duration.ofMillis(50));
+        policy.setHalfOpenProbes(1);
+        policy.setDeadline(Duration.ofSeconds(5));
+        return policy;
+    }
+
+    private static ResilienceProperties.Policy hedgingPolicy() {
+        ResilienceProperties.Policy policy = policy();
+        policy.setHedge(true);
+        policy.setHedgePercentile(0.5);
+        policy.setHedgeMinDelay(Duration.ofMillis(20));
+        policy.setMinimumCalls(100);
+        return policy;
+    }
+
+    private static ResilientChatClient client(ResilienceProperties.Policy policy) {
+        ResilienceProperties properties = new ResilienceProperties();
+        properties.setDefaults(policy);
+        OutboundDispatcher dispatcher = new OutboundDispatcher(new OutboundProperties(), new SimpleMeterRegistry());
+        return new ResilientChatClient(null, properties, null, dispatcher, new CancellableCalls());
+    }
+
+    private static void trip(ResilientChatClient client) {
+        for (int i = 0; i < 2; i++) {
+            client.execute(SITE, () -> CompletableFuture.failedFuture(new IOException("reset")), false);
+        }
+    }
+
+    private static void warmLatencies(ResilientChatClient client) throws Exception {
+        for (int i = 0; i < 20; i++) {
+            client.execute(SITE, () -> CompletableFuture.completedFuture("fast"), true).get(1, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static String circuit(ResilientChatClient client) {
+        return String.valueOf(siteStats(client).get("circuit"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> siteStats(ResilientChatClient client) {
+        Map<String, Object> sites = (Map<String, Object>) client.stats().get("callSites");
+        return (Map<String, Object>) sites.get("question");
+    }
+
+    /**
+     * Hands out the given futures in order, one per attempt.
+     */
+    private static final class Calls<T> implements Supplier<CompletableFuture<T>> {
+        private final List<CompletableFuture<T>> planned;
+        final List<CompletableFuture<T>> made = new CopyOnWriteArrayList<>();
+
+        @SafeVarargs
+        Calls(CompletableFuture<T>... planned) {
+            this.planned = List.of(planned);
+        }
+
+        @Override
+        public synchronized CompletableFuture<T> get() {
+            CompletableFuture<T> next = planned.get(made.size());
+            made.add(next);
+            return next;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.yourpackage.service;
+
+import com.yourpackage.config.TokenBudgetProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBudgetServiceTest {
+
+    // Four slices of 10ns: a 40ns window, so slice n expires at (n + 4) * 10
+    private static final int SLICES = 4;
+    private static final long SLICE_NANOS = 10;
+
+    @Test
+    void oldSlicesSlideOutOfTheWindow() {
+        TokenBudgetService.Window window = new TokenBudgetService.Window(SLICES);
+        window.add(0, 5);
+        window.add(1, 3);
+        assertEquals(8, window.used(3));
+        assertEquals(3, window.used(4));
+        assertEquals(0, window.used(5));
+        assertTrue(window.isIdle(5));
+
+        // A jump of more than a whole window clears every slice exactly once
+        window.add(6, 2);
+        window.add(20, 1);
+        assertEquals(1, window.used(23));
+        assertEquals(0, window.used(24));
+    }
+
+    @Test
+    void retryAfterIsWhenEnoughOfTheOldestSlicesHaveExpired() {
+        TokenBudgetService.Window window = new TokenBudgetService.Window(SLICES);
+        window.add(0, 5);
+        window.add(1, 3);
+        window.add(2, 2);
+        long now = 35;
+
+        // 4 more need slice 0 gone, at 40
+        assertEquals(5, window.nanosUntilFits(3, 4, 10, now, SLICE_NANOS));
+        // 7 more need slices 0 and 1 gone, at 50
+        assertEquals(15, window.nanosUntilFits(3, 7, 10, now, SLICE_NANOS));
+        assertFalse(window.tryReserve(4, 6, 10));
+        assertTrue(window.tryReserve(4, 5, 10));
+    }
+
+    @Test
+    void reservationsCountUntilReleasedAndCanNeverSlideOut() {
+        TokenBudgetService.Window window = new TokenBudgetService.Window(SLICES);
+        assertTrue(window.tryReserve(0, 10, 10));
+        assertFalse(window.tryReserve(0, 1, 10));
+        assertEquals(10, window.committed(0));
+        assertFalse(window.isIdle(100));
+
+        // Only releasing makes room, so the best guess is a whole window
+        assertEquals(SLICES * SLICE_NANOS, window.nanosUntilFits(0, 1, 10, 0, SLICE_NANOS));
+
+        window.release(10);
+        window.release(10);
+        assertEquals(0, window.reserved());
+        assertTrue(window.tryReserve(0, 10, 10));
+    }
+
+    @Test
+    void admissionChecksTheUserThenTheGlobalBudget() {
+        TokenBudgetProperties properties = new TokenBudgetProperties();
+        properties.setPerUserTokens(100);
+        properties.setGlobalTokens(150);
+        TokenBudgetService budget = new TokenBudgetService(properties);
+
+        TokenBudgetService.Admission first = budget.admit("a", 100);
+        assertTrue(first.admitted());
+        TokenBudgetService.Admission overUser = budget.admit("a", 1);
+        assertEquals(TokenBudgetService.Outcome.USER_EXHAUSTED, overUser.outcome());
+        assertTrue(overUser.retryAfterSeconds() >= 1);
+
+        TokenBudgetService.Admission overGlobal = budget.admit("b", 60);
+        assertEquals(TokenBudgetService.Outcome.GLOBAL_EXHAUSTED, overGlobal.outcome());
+        // The user's share of a globally refused request is handed back
+        first.release();
+        first.release();
+        assertTrue(budget.admit("b", 100).admitted());
+        assertEquals(1L, budget.stats().get("userRejections"));
+        assertEquals(1L, budget.stats().get("globalRejections"));
+        assertEquals(100L, budget.stats().get("globalReserved"));
+    }
+
+    @Test
+    void disabledBudgetAdmitsEverything() {
+        TokenBudgetProperties properties = new TokenBudgetProperties();
+        properties.setEnabled(false);
+        properties.setPerUserTokens(1);
+        TokenBudgetService budget = new TokenBudgetService(properties);
+
+        assertSame(TokenBudgetService.Admission.NONE, budget.admit("a", 1_000));
+        assertTrue(budget.allowsBackgroundWork());
+        assertFalse(budget.isGlobalExhausted());
+    }
+}
@@ -0,0 +1,105 @@
+package com.yourpackage.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopicExtractorTest {
+
+    @Test
+    void higherPriorityTopicWinsWhereverItAppears() throws IOException {
+        TopicExtractor extractor = load("""
+                [science]
+                photosynthesis
+                cell
+                """);
+
+        assertEquals("photosynthesis", extractor.match("science", "Every cell relies on photosynthesis."));
+        assertEquals("cell", extractor.match("science", "The Cell membrane"));
+        assertEquals("", extractor.match("science", "Nothing relevant here"));
+        assertEquals("", extractor.match("history", "Every cell"));
+    }
+
+    @Test
+    void overlappingPhrasesAreAllFound() throws IOException {
+        // The classic Aho-Corasick set: "she" ends inside "hers", which contains "he" and "her"
+        TopicExtractor extractor = load("""
+                [words]
+                hers
+                she
+                he
+                """);
+
+        // "she" matches first, but the scan goes on to the higher-priority "hers"
+        assertEquals("hers", extractor.match("words", "shers hers"));
+        assertEquals("she", extractor.match("words", "she, he"));
+        // All three end inside "ushers", none at a word start
+        assertEquals("", extractor.match("words", "ushers"));
+        assertEquals("he", extractor.match("words", "ushers he"));
+    }
+
+    @Test
+    void phrasesMustStartAtAWordBoundary() throws IOException {
+        TopicExtractor extractor = load("""
+                [science]
+                rna
+                [literature]
+                drama: drama, play
+                """);
+
+        assertEquals("", extractor.match("science", "internal"));
+        assertEquals("rna", extractor.match("science", "mRNA and (RNA) polymerase"));
+        assertEquals("", extractor.match("literature", "display"));
+        // Only the start is checked, so plurals and other endings still count
+        assertEquals("drama", extractor.match("literature", "The plays of 1600"));
+        assertEquals("drama", extractor.match("literature", "play"));
+    }
+
+    @Test
+    void multiWordAndNonAsciiPhrasesMatch() throws IOException {
+        TopicExtractor extractor = load("""
+                [literature]
+                romeo and juliet
+                les misérables
+                """);
+
+        assertEquals("romeo and juliet", extractor.match("literature", "In ROMEO AND JULIET, ..."));
+        assertEquals("les misérables", extractor.match("literature", "Hugo wrote Les Misérables."));
+        assertEquals("", extractor.match("literature", "romeo and julie"));
+        assertEquals(List.of("romeo and juliet", "les misérables"), extractor.labels("literature"));
+    }
+
+    @Test
+    void mostFrequentWordSkipsStopwordsAndShortWords() throws IOException {
+        TopicExtractor extractor = load("""
+                [stopwords]
+                which, about
+                """);
+
+        assertEquals("tides", extractor.mostFrequentWord("Tides, which about which about: tides! moon moon moon"));
+        // Ties go to the word that reached the count first
+        assertEquals("gravity", extractor.mostFrequentWord("orbits gravity gravity orbits"));
+        assertEquals("", extractor.mostFrequentWord("a an the"));
+    }
+
+    @Test
+    void bundledDictionaryLoads() {
+        TopicExtractor extractor = TopicExtractor.fromClasspath(TopicExtractor.DEFAULT_DICTIONARY);
+        assertEquals("hamlet", extractor.match("literature", "Compare Hamlet with the poem."));
+        assertFalse(extractor.labels("history").isEmpty());
+    }
+
+    @Test
+    void entryOutsideASectionIsRejected() {
+        assertThrows(IOException.class, () -> load("photosynthesis\n"));
+    }
+
+    private static TopicExtractor load(String dictionary) throws IOException {
+        return TopicExtractor.load(new ByteArrayInputStream(dictionary.getBytes(StandardCharsets.UTF_8)));
+    }
+}